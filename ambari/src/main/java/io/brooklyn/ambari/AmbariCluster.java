@@ -41,6 +41,7 @@ import com.google.common.reflect.TypeToken;
 
 import io.brooklyn.ambari.agent.AmbariAgent;
 import io.brooklyn.ambari.rest.AmbariApiException;
+import io.brooklyn.ambari.server.AmbariDatabase;
 import io.brooklyn.ambari.server.AmbariServer;
 import io.brooklyn.ambari.service.ExtraService;
 import io.brooklyn.ambari.service.ExtraServiceException;
@@ -118,6 +119,12 @@ public interface AmbariCluster extends BasicStartable {
             ConfigKeys.newConfigKey(new TypeToken<List<String>>() {
             }, "ambari.stack.urls", "stack definitions as tar.gz", new LinkedList<String>());
 
+    @SetFromFlag("stackRepositories")
+    ConfigKey<Map<String, String>> STACK_REPOSITORIES =
+            ConfigKeys.newConfigKey(new TypeToken<Map<String, String>>() {
+            }, "ambari.stack.repositories", "Base URLs of the repositories of the stack, keyed by <os>/<repository name> " +
+                    "(e.g. redhat6/HDP-2.3), applied in one batch before the cluster is deployed");
+
     @SetFromFlag("pauseForDeployment")
     ConfigKey<Boolean> PAUSE_FOR_DEPLOYMENT =
             ConfigKeys.newBooleanConfigKey(
@@ -132,6 +139,36 @@ public interface AmbariCluster extends BasicStartable {
     @SetFromFlag("serverHostGroup")
     ConfigKey<String> SERVER_HOST_GROUP = ConfigKeys.newStringConfigKey("ambari.server.hostgroup.name", "Host group name for the agent on the Ambari server", "server-group");
 
+    @SetFromFlag("databaseType")
+    ConfigKey<AmbariDatabase.Type> DATABASE_TYPE = ConfigKeys.newConfigKey(
+            AmbariDatabase.Type.class,
+            "ambari.database.type",
+            "Database of the Ambari server: the embedded one, or an external PostgreSQL or MySQL database. Unless the " +
+                    "server is given a database URL, the external database is provisioned as a sibling of the server",
+            AmbariDatabase.Type.EMBEDDED);
+
+    ConfigKey<EntitySpec<? extends SoftwareProcess>> DATABASE_SPEC = ConfigKeys.newConfigKey(
+            new TypeToken<EntitySpec<? extends SoftwareProcess>>() {},
+            "ambari.database.spec",
+            "Spec of the external database entity, replacing the default PostgreSQL or MySQL node; it must create the database " +
+                    "and user of the Ambari server, and publish its datastore URL");
+
+    ConfigKey<String> DATABASE_NAME = ConfigKeys.newStringConfigKey(
+            "ambari.database.name", "Name of the external database of the Ambari server", "ambari");
+
+    ConfigKey<String> DATABASE_USERNAME = ConfigKeys.newStringConfigKey(
+            "ambari.database.username", "User of the Ambari server in its external database", "ambari");
+
+    ConfigKey<String> DATABASE_PASSWORD = ConfigKeys.newStringConfigKey(
+            "ambari.database.password", "Password of the Ambari server in its external database; generated when not set");
+
+    @SetFromFlag("packageMirror")
+    ConfigKey<Boolean> PACKAGE_MIRROR_ENABLED = ConfigKeys.newBooleanConfigKey(
+            "ambari.packageMirror.enabled",
+            "Whether the Ambari server hosts a caching mirror of the Ambari and HDP repositories, from which the agents " +
+                    "fetch their packages instead of the public repositories",
+            Boolean.FALSE);
+
     AttributeSensor<Boolean> CLUSTER_SERVICES_INITIALISE_CALLED = Sensors.newBooleanSensor("ambari.cluster.servicesInitialiseCalled");
 
     AttributeSensor<Boolean> CLUSTER_SERVICES_INSTALLED = Sensors.newBooleanSensor("ambari.cluster.servicesInstalled");
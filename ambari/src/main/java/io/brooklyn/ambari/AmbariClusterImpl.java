@@ -21,6 +21,7 @@ package io.brooklyn.ambari;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.collect.Iterables.transform;
+import static org.apache.brooklyn.core.sensor.DependentConfiguration.attributeWhenReady;
 
 import java.util.Collection;
 import java.util.List;
@@ -30,6 +31,7 @@ import java.util.concurrent.ExecutionException;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
+import org.apache.brooklyn.api.entity.Entity;
 import org.apache.brooklyn.api.entity.EntityLocal;
 import org.apache.brooklyn.api.entity.EntitySpec;
 import org.apache.brooklyn.api.location.Location;
@@ -37,14 +39,17 @@ import org.apache.brooklyn.api.mgmt.Task;
 import org.apache.brooklyn.config.ConfigKey;
 import org.apache.brooklyn.core.entity.Attributes;
 import org.apache.brooklyn.core.entity.Entities;
+import org.apache.brooklyn.core.entity.EntityInternal;
 import org.apache.brooklyn.core.entity.lifecycle.ServiceStateLogic;
 import org.apache.brooklyn.core.mgmt.BrooklynTaskTags;
 import org.apache.brooklyn.enricher.stock.Enrichers;
+import org.apache.brooklyn.entity.database.DatastoreMixins;
 import org.apache.brooklyn.entity.software.base.SoftwareProcess;
 import org.apache.brooklyn.entity.stock.BasicStartableImpl;
 import org.apache.brooklyn.util.collections.MutableList;
 import org.apache.brooklyn.util.collections.MutableMap;
 import org.apache.brooklyn.util.core.task.Tasks;
+import org.apache.brooklyn.util.text.Identifiers;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.slf4j.LoggerFactory;
@@ -70,7 +75,9 @@ import io.brooklyn.ambari.rest.domain.RecommendationWrapper;
 import io.brooklyn.ambari.rest.domain.RecommendationWrappers;
 import io.brooklyn.ambari.rest.domain.Request;
 import io.brooklyn.ambari.rest.domain.Stack;
+import io.brooklyn.ambari.server.AmbariDatabase;
 import io.brooklyn.ambari.server.AmbariServer;
+import io.brooklyn.ambari.server.AmbariServerTuning;
 import io.brooklyn.ambari.service.ExtraService;
 import io.brooklyn.ambari.service.ExtraServiceException;
 
@@ -108,6 +115,9 @@ public class AmbariClusterImpl extends BasicStartableImpl implements AmbariClust
 
         isHostGroupsDeployment = Iterables.size(getHostGroups()) > 0;
 
+        if (getConfig(DATABASE_TYPE) != AmbariDatabase.Type.EMBEDDED && getConfig(DATABASE_PASSWORD) == null) {
+            config().set(DATABASE_PASSWORD, Identifiers.makeRandomId(16));
+        }
         addChild(createServerSpec(getConfig(SECURITY_GROUP)));
         if (!getConfig(SERVER_COMPONENTS).isEmpty()) {
             for (AmbariServer ambariServer : getAmbariServers()) {
@@ -121,6 +131,7 @@ public class AmbariClusterImpl extends BasicStartableImpl implements AmbariClust
         services = MutableList.copyOf(getConfig(HADOOP_SERVICES));
 
         calculateTotalAgents();
+        addDatabase();
         if (!isHostGroupsDeployment) {
             createClusterTopology();
             if (services.size() == 0) {
@@ -236,6 +247,9 @@ public class AmbariClusterImpl extends BasicStartableImpl implements AmbariClust
         // Set the flag to true so the deployment won't happen multiple times
         setAttribute(CLUSTER_SERVICES_INITIALISE_CALLED, true);
 
+        // All expected agents have registered: we only need to watch for membership drift from now on
+        getMasterAmbariServer().setRegisteredHostsFastPolling(false);
+
         // Wait for the Ambari server to be up
         getMasterAmbariServer().waitForServiceUp();
 
@@ -480,6 +494,31 @@ public class AmbariClusterImpl extends BasicStartableImpl implements AmbariClust
         setAttribute(EXPECTED_AGENTS, agentsToExpect);
     }
 
+    /**
+     * Provisions the external database of the master server as a sibling of it, unless the server is given the URL of
+     * an existing database. The database accepts the connections of the server pool, sized for the expected agents.
+     */
+    private void addDatabase() {
+        AmbariDatabase.Type type = getConfig(DATABASE_TYPE);
+        AmbariServer server = getMasterAmbariServer();
+        if (type == AmbariDatabase.Type.EMBEDDED || ((EntityInternal) server).getConfigMap().getConfigRaw(AmbariServer.DATABASE_URL, true).isPresent()) {
+            return;
+        }
+
+        EntitySpec<? extends SoftwareProcess> databaseSpec = getConfig(DATABASE_SPEC);
+        if (databaseSpec == null) {
+            int poolSize = AmbariServerTuning.of(server, getAttribute(EXPECTED_AGENTS)).getDbConnectionPoolMaxSize();
+            databaseSpec = AmbariDatabase.newDatabaseSpec(type, getConfig(DATABASE_NAME), getConfig(DATABASE_USERNAME),
+                    getConfig(DATABASE_PASSWORD), Math.max(100, poolSize + 10));
+        }
+        Object securityGroup = getConfig(SECURITY_GROUP);
+        if (securityGroup != null) {
+            databaseSpec = databaseSpec.configure(SoftwareProcess.PROVISIONING_PROPERTIES.subKey("securityGroups"), securityGroup);
+        }
+        Entity database = addChild(databaseSpec);
+        server.config().set(AmbariServer.DATABASE_URL, attributeWhenReady(database, DatastoreMixins.DATASTORE_URL));
+    }
+
     private Iterable<AmbariHostGroup> getHostGroups() {
         return Entities.descendants(this, AmbariHostGroup.class);
     }
@@ -18,21 +18,35 @@
  */
 package io.brooklyn.ambari;
 
-import org.apache.brooklyn.location.ssh.SshMachineLocation;
-
+import static java.lang.String.format;
 import static org.apache.brooklyn.util.ssh.BashCommands.alternatives;
 import static org.apache.brooklyn.util.ssh.BashCommands.chainGroup;
-import static org.apache.brooklyn.util.ssh.BashCommands.commandToDownloadUrlAs;
 import static org.apache.brooklyn.util.ssh.BashCommands.ifExecutableElse1;
 import static org.apache.brooklyn.util.ssh.BashCommands.installExecutable;
 import static org.apache.brooklyn.util.ssh.BashCommands.sudo;
 
-import org.apache.brooklyn.api.location.OsDetails;
+import java.util.List;
+
+import javax.annotation.Nullable;
+
+import org.apache.brooklyn.location.ssh.SshMachineLocation;
 import org.apache.brooklyn.util.ssh.BashCommands;
 
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
+
+import io.brooklyn.ambari.server.AmbariPackageMirror;
+
 
 public class AmbariInstallCommands {
 
+    /**
+     * Base URL of the public Hortonworks repositories, referenced by the repository lists and the stack definitions.
+     */
+    public static final String PUBLIC_REPOSITORY_URL = "http://public-repo-1.hortonworks.com";
+    private static final String UBUNTU_REPOSITORY_KEY = "B9733A7A07513CAD";
+
     private static final String CENTOS_REPO_LIST_LOCATION = "/etc/yum.repos.d/ambari.repo";
     private static final String CENTOS_7_AMBARI_REPO_LOCATION = "http://public-repo-1.hortonworks.com/ambari/centos7/%s/updates/%s/ambari.repo";
     private static final String CENTOS_6_AMBARI_REPO_LOCATION = "http://public-repo-1.hortonworks.com/ambari/centos6/%s/updates/%s/ambari.repo";
@@ -46,63 +60,177 @@ public class AmbariInstallCommands {
     private static final String UBUNTU_12_AMBARI_REPO_LOCATION = "http://public-repo-1.hortonworks.com/ambari/ubuntu12/%s/updates/%s/ambari.list";
 
     private String version;
+    private String mirrorUrl;
 
     public AmbariInstallCommands(String version) {
+        this(version, null);
+    }
+
+    /**
+     * @param mirrorUrl the URL of an {@link AmbariPackageMirror} to fetch the packages from, instead of the public
+     *                  repositories, or null to use the public repositories.
+     */
+    public AmbariInstallCommands(String version, @Nullable String mirrorUrl) {
         this.version = version;
+        this.mirrorUrl = Strings.emptyToNull(mirrorUrl);
     }
 
     public String installAmbariRequirements(SshMachineLocation machine) {
-        return BashCommands.chainGroup(BashCommands.INSTALL_CURL,
-                installExecutable("ntp"),
-                BashCommands.alternatives(sudo("service ntpd start"),
-                        sudo("service ntp start")),
-                createCommandToAddAmbariToRepositoriesList(machine));
+        return installAmbariRequirements(OsFingerprint.of(machine));
+    }
+
+    /**
+     * Returns the commands installing the requirements and setting up the Ambari repository for the given OS. When the
+     * OS is known, only the commands for its package manager are emitted; otherwise the package manager is probed at
+     * runtime.
+     */
+    @VisibleForTesting
+    String installAmbariRequirements(OsFingerprint os) {
+        List<String> commands = Lists.newArrayList();
+        if (os.getPackageManager() == OsFingerprint.PackageManager.APT) {
+            // The package lists of a fresh Ubuntu image are empty: nothing can be installed before they are fetched
+            commands.add(sudo("apt-get update"));
+        }
+        commands.add(installPackage(os, "curl"));
+        commands.add(installPackage(os, "ntp"));
+        commands.add(startNtp(os));
+        commands.add(createCommandToAddAmbariToRepositoriesList(os));
+        return BashCommands.chainGroup(commands);
+    }
+
+    private String installPackage(OsFingerprint os, String packageName) {
+        if (os.getPackageManager() == null) {
+            return installExecutable(packageName);
+        }
+        switch (os.getPackageManager()) {
+            case APT:
+                return format("which %s || %s", packageName, sudo(format("env DEBIAN_FRONTEND=noninteractive apt-get install -y %s", packageName)));
+            case YUM:
+                return format("which %s || %s", packageName, sudo(format("yum -y install %s", packageName)));
+            case ZYPPER:
+                return format("which %s || %s", packageName, sudo(format("zypper --non-interactive install %s", packageName)));
+            default:
+                throw new IllegalStateException("Unsupported package manager: " + os.getPackageManager());
+        }
     }
 
-    private String createCommandToAddAmbariToRepositoriesList(SshMachineLocation sshMachineLocation) {
-        return alternatives(setupAptRepo(sshMachineLocation), setupYumRepo(sshMachineLocation), setupZypperRepo());
+    public String startNtp(SshMachineLocation machine) {
+        return startNtp(OsFingerprint.of(machine));
     }
 
-    private String setupAptRepo(SshMachineLocation sshMachineLocation) {
-        final String osDetailsVersion = getOsVersion(sshMachineLocation);
+    private String startNtp(OsFingerprint os) {
+        if (os.getPackageManager() == null) {
+            return BashCommands.alternatives(sudo("service ntpd start"),
+                    sudo("service ntp start"));
+        }
+        return sudo(os.getPackageManager() == OsFingerprint.PackageManager.YUM ? "service ntpd start" : "service ntp start");
+    }
 
+    /**
+     * Returns a command succeeding only if the given package is installed at the version of these commands, and its
+     * files match the checksums recorded by the package manager. Configuration files are left out of the check, as
+     * they are expected to differ from the packaged ones.
+     * <p/>
+     * {@code dpkg --verify} exits with 1 when files differ, which is told apart from a failure to verify, e.g. with a
+     * dpkg too old to support it: a package which cannot be verified is not reported as installed.
+     */
+    public String checkInstalled(String packageName) {
+        return BashCommands.chain(
+                format("installed=$( ( rpm -q --qf '%%{VERSION}' %1$s || dpkg-query -W -f='${Version}' %1$s ) 2> /dev/null )", packageName),
+                format("case \"$installed\" in %1$s|%1$s[.-]*) true ;; *) false ;; esac", version),
+                format("if rpm -q %1$s > /dev/null 2>&1; then %2$s; " +
+                                "else verified=$( %3$s ); [ $? -le 1 ] && test -z \"$(printf '%%s\\n' \"$verified\" | grep -v ' c /')\"; fi",
+                        packageName,
+                        sudo(format("rpm -V --noconfig %s", packageName)),
+                        sudo(format("dpkg --verify %s", packageName))));
+    }
+
+    private String createCommandToAddAmbariToRepositoriesList(OsFingerprint os) {
+        if (os.getPackageManager() == null) {
+            return alternatives(ifExecutableElse1("apt-get", setupAptRepo(os)),
+                    ifExecutableElse1("yum", setupYumRepo(os)),
+                    ifExecutableElse1("zypper", setupZypperRepo()));
+        }
+        switch (os.getPackageManager()) {
+            case APT:
+                return setupAptRepo(os);
+            case YUM:
+                return setupYumRepo(os);
+            case ZYPPER:
+                return setupZypperRepo();
+            default:
+                throw new IllegalStateException("Unsupported package manager: " + os.getPackageManager());
+        }
+    }
+
+    private String setupAptRepo(OsFingerprint os) {
         String repoUrl;
-        if (osDetailsVersion.startsWith("14")) {
+        if (os.getVersion().startsWith("14")) {
             repoUrl = UBUNTU_14_AMBARI_REPO_LOCATION;
         } else {
             repoUrl = UBUNTU_12_AMBARI_REPO_LOCATION;
         }
 
-        return ifExecutableElse1("apt-get", chainGroup(sudo(commandToDownloadUrlAs(String.format(repoUrl, getMajorVersion(), version), UBUNTU_REPO_LIST_LOCATION)),
-                sudo("apt-key adv --recv-keys --keyserver keyserver.ubuntu.com B9733A7A07513CAD"),
-                sudo("apt-get update")));
+        return chainGroup(downloadRepositoryList(String.format(repoUrl, getMajorVersion(), version), UBUNTU_REPO_LIST_LOCATION),
+                importAptKey(),
+                sudo("apt-get update"));
     }
 
-    private String setupYumRepo(SshMachineLocation sshMachineLocation) {
-        final String osDetailsVersion = getOsVersion(sshMachineLocation);
-
+    private String setupYumRepo(OsFingerprint os) {
         String repoUrl;
-        if (osDetailsVersion.startsWith("7")) {
+        if (os.getVersion().startsWith("7")) {
             repoUrl = CENTOS_7_AMBARI_REPO_LOCATION;
-        } else if (osDetailsVersion.startsWith("6")) {
+        } else if (os.getVersion().startsWith("6")) {
             repoUrl = CENTOS_6_AMBARI_REPO_LOCATION;
         } else {
             repoUrl = CENTOS_5_AMBARI_REPO_LOCATION;
         }
 
-        return ifExecutableElse1("yum", sudo(commandToDownloadUrlAs(String.format(repoUrl, getMajorVersion(), version), CENTOS_REPO_LIST_LOCATION)));
+        return downloadRepositoryList(String.format(repoUrl, getMajorVersion(), version), CENTOS_REPO_LIST_LOCATION);
     }
 
     private String setupZypperRepo() {
-        return ifExecutableElse1("zypper", sudo(commandToDownloadUrlAs(String.format(SUSE_AMBARI_REPO_LOCATION, getMajorVersion(), version), SUSE_REPO_LIST_LOCATION)));
+        return downloadRepositoryList(String.format(SUSE_AMBARI_REPO_LOCATION, getMajorVersion(), version), SUSE_REPO_LIST_LOCATION);
+    }
+
+    /**
+     * Downloads a repository list to the given destination. With a mirror, the list is downloaded from the mirror and
+     * rewritten for the packages to be fetched from the mirror too.
+     */
+    @VisibleForTesting
+    String downloadRepositoryList(String url, String destination) {
+        if (mirrorUrl == null) {
+            return sudo(downloadUrlAs(url, destination));
+        }
+        return chainGroup(
+                sudo(downloadUrlAs(toMirrorUrl(url), destination)),
+                sudo(format("sed -i 's#%s#%s#g' %s", PUBLIC_REPOSITORY_URL, mirrorUrl, destination)));
+    }
+
+    /**
+     * Unlike {@link BashCommands#commandToDownloadUrlAs(String, String)}, does not install curl: the requirements
+     * install it once, for the package manager of the machine.
+     */
+    private String downloadUrlAs(String url, String destination) {
+        return format("curl -f -sS -L -k --retry 10 \"%s\" -o %s", url, destination);
+    }
+
+    private String importAptKey() {
+        if (mirrorUrl == null) {
+            return sudo(format("apt-key adv --recv-keys --keyserver keyserver.ubuntu.com %s", UBUNTU_REPOSITORY_KEY));
+        }
+        String keyUrl = format("%s%spks/lookup?op=get&search=0x%s", mirrorUrl, AmbariPackageMirror.KEYSERVER_PATH, UBUNTU_REPOSITORY_KEY);
+        return format("curl -sSfL '%s' | %s", keyUrl, sudo("apt-key add -"));
     }
 
-    private String getOsVersion(SshMachineLocation sshMachineLocation) {
-        if (sshMachineLocation == null) {
-            return "";
+    /**
+     * @return the given URL of the public repositories, relocated to the mirror if any.
+     */
+    public String toMirrorUrl(String url) {
+        if (mirrorUrl == null || !url.startsWith(PUBLIC_REPOSITORY_URL)) {
+            return url;
         }
-        OsDetails osDetails = sshMachineLocation.getOsDetails();
-        return osDetails != null ? osDetails.getVersion() : "";
+        return mirrorUrl + url.substring(PUBLIC_REPOSITORY_URL.length());
     }
 
     private String getMajorVersion() {
@@ -20,6 +20,8 @@
 package io.brooklyn.ambari;
 
 import org.apache.brooklyn.api.sensor.AttributeSensor;
+import org.apache.brooklyn.config.ConfigKey;
+import org.apache.brooklyn.core.config.ConfigKeys;
 import org.apache.brooklyn.core.sensor.Sensors;
 import org.apache.brooklyn.entity.java.UsesJava;
 import org.apache.brooklyn.entity.software.base.SoftwareProcess;
@@ -34,6 +36,16 @@ public interface AmbariNode extends SoftwareProcess, UsesJava {
             "entity.fqdn",
             "The fully qualified domain name of the entity.");
 
+    ConfigKey<Boolean> REUSE_PREINSTALLED = ConfigKeys.newBooleanConfigKey(
+            "ambari.install.reusePreinstalled",
+            "Whether to skip the installation of the Ambari packages when the image already contains them, at the " +
+                    "expected version and unmodified",
+            Boolean.TRUE);
+
+    AttributeSensor<Boolean> PREINSTALLED = Sensors.newBooleanSensor(
+            "ambari.install.preinstalled",
+            "Whether the Ambari packages were found already installed, and their installation skipped");
+
     /**
      * Sets the fully qualified domain name for this entity.
      *
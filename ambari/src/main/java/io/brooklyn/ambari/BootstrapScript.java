@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.brooklyn.ambari;
+
+import static java.lang.String.format;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import javax.annotation.Nullable;
+
+import org.apache.brooklyn.util.collections.MutableList;
+import org.apache.brooklyn.util.ssh.BashCommands;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.BaseEncoding;
+
+/**
+ * A script running several lifecycle phases, e.g. installing, customizing and launching, in a single SSH session.
+ * Each phase is announced on stdout and, if it fails, the script stops with an exit code identifying the phase, so
+ * that failures remain as diagnosable as when each phase runs in its own script.
+ */
+public class BootstrapScript {
+
+    private static final int FIRST_PHASE_EXIT_CODE = 100;
+
+    private final List<String> phases = MutableList.of();
+    private final List<String> lines = MutableList.of();
+
+    /**
+     * Adds a phase running the given commands, chained so that the phase fails at the first failing command.
+     */
+    public BootstrapScript phase(String name, String... commands) {
+        return phase(name, ImmutableList.copyOf(commands));
+    }
+
+    public BootstrapScript phase(String name, List<String> commands) {
+        int exitCode = FIRST_PHASE_EXIT_CODE + phases.size();
+        phases.add(name);
+        lines.add(format("echo \"Bootstrap phase: %s\"", name));
+        lines.add(format("%s || { echo \"Bootstrap phase failed: %s\" >&2 ; exit %d ; }", BashCommands.chainGroup(commands), name, exitCode));
+        return this;
+    }
+
+    public List<String> getLines() {
+        return ImmutableList.copyOf(lines);
+    }
+
+    /**
+     * @return the name of the phase that made the script exit with the given code, or null if the code does not
+     * identify a phase, e.g. when the script succeeded or could not be run at all.
+     */
+    @Nullable
+    public String getFailedPhase(int exitCode) {
+        int index = exitCode - FIRST_PHASE_EXIT_CODE;
+        return index >= 0 && index < phases.size() ? phases.get(index) : null;
+    }
+
+    /**
+     * Fails if the script did not complete successfully, naming the phase that failed.
+     *
+     * @param description what the script does, for the failure message.
+     * @param exitCode    the exit code of the script.
+     * @param stderr      the standard error of the script, included in the failure message.
+     * @throws IllegalStateException if the exit code is not zero.
+     */
+    public void checkResult(String description, int exitCode, String stderr) {
+        if (exitCode != 0) {
+            String phase = getFailedPhase(exitCode);
+            throw new IllegalStateException(format("%s failed %s (exit code %d): %s",
+                    description, phase != null ? "while " + phase : "to run", exitCode, stderr != null ? stderr.trim() : ""));
+        }
+    }
+
+    /**
+     * Returns a command writing the given content to a file. The content is embedded in the command itself, so the file
+     * does not need to be uploaded in a separate SSH session.
+     */
+    public static String writeFile(String content, String destination) {
+        String encoded = BaseEncoding.base64().encode(content.getBytes(StandardCharsets.UTF_8));
+        return format("echo '%s' | base64 -d > %s", encoded, destination);
+    }
+}
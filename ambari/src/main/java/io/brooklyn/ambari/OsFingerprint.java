@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.brooklyn.ambari;
+
+import java.util.Locale;
+import javax.annotation.Nullable;
+
+import org.apache.brooklyn.api.location.OsDetails;
+import org.apache.brooklyn.location.ssh.SshMachineLocation;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Objects;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * The package manager and version of the operating system of a machine, as far as the Ambari install commands are
+ * concerned. Detecting the OS details of a machine can take an SSH round trip, so fingerprints are cached per machine
+ * for as long as the machine is referenced.
+ */
+public final class OsFingerprint {
+
+    public enum PackageManager {
+        APT, YUM, ZYPPER
+    }
+
+    /**
+     * Fingerprint of a machine whose OS could not be identified: the install commands then probe for the package
+     * manager at runtime.
+     */
+    public static final OsFingerprint UNKNOWN = new OsFingerprint(null, "");
+
+    // Weak keys compare machines by identity, and let the fingerprints of released machines go
+    private static final Cache<SshMachineLocation, OsFingerprint> CACHE = CacheBuilder.newBuilder()
+            .weakKeys()
+            .build();
+
+    private final PackageManager packageManager;
+    private final String version;
+
+    private OsFingerprint(@Nullable PackageManager packageManager, String version) {
+        this.packageManager = packageManager;
+        this.version = version;
+    }
+
+    public static OsFingerprint of(@Nullable SshMachineLocation machine) {
+        if (machine == null) {
+            return UNKNOWN;
+        }
+        OsFingerprint fingerprint = CACHE.getIfPresent(machine);
+        if (fingerprint == null) {
+            fingerprint = of(machine.getOsDetails());
+            CACHE.put(machine, fingerprint);
+        }
+        return fingerprint;
+    }
+
+    @VisibleForTesting
+    static OsFingerprint of(@Nullable OsDetails osDetails) {
+        if (osDetails == null) {
+            return UNKNOWN;
+        }
+        String version = osDetails.getVersion() != null ? osDetails.getVersion() : "";
+        String name = osDetails.getName() != null ? osDetails.getName().toLowerCase(Locale.ENGLISH) : "";
+        if (name.contains("ubuntu") || name.contains("debian")) {
+            return new OsFingerprint(PackageManager.APT, version);
+        } else if (name.contains("centos") || name.contains("rhel") || name.contains("red hat") || name.contains("redhat")
+                || name.contains("fedora") || name.contains("amazon") || name.contains("oracle")) {
+            return new OsFingerprint(PackageManager.YUM, version);
+        } else if (name.contains("suse") || name.contains("sles")) {
+            return new OsFingerprint(PackageManager.ZYPPER, version);
+        }
+        return new OsFingerprint(null, version);
+    }
+
+    /**
+     * @return the package manager of the OS, or null if unknown.
+     */
+    @Nullable
+    public PackageManager getPackageManager() {
+        return packageManager;
+    }
+
+    /**
+     * @return the version of the OS, or an empty string if unknown.
+     */
+    public String getVersion() {
+        return version;
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+                .add("packageManager", packageManager)
+                .add("version", version)
+                .toString();
+    }
+}
@@ -30,6 +30,7 @@ import org.apache.brooklyn.core.config.ConfigKeys;
 import org.apache.brooklyn.core.sensor.Sensors;
 import org.apache.brooklyn.util.core.flags.SetFromFlag;
 import org.apache.brooklyn.util.javalang.JavaClassNames;
+import org.apache.brooklyn.util.time.Duration;
 
 import com.google.common.reflect.TypeToken;
 
@@ -48,6 +49,80 @@ public interface AmbariAgent extends AmbariNode {
     ConfigKey<String> AMBARI_SERVER_FQDN = ConfigKeys.newStringConfigKey(
             "ambari.server.fqdn", "Fully Qualified Domain Name of ambari server that agent should register to");
 
+    enum InstallStrategy {
+        /**
+         * Brooklyn installs the agent over SSH.
+         */
+        SSH,
+        /**
+         * The Ambari server installs the agent over SSH, through its bootstrap API, using the SSH credentials of the
+         * agent's machine. Brooklyn only sets the hostname and the configuration of the agent.
+         */
+        SERVER_BOOTSTRAP
+    }
+
+    ConfigKey<InstallStrategy> INSTALL_STRATEGY = ConfigKeys.newConfigKey(
+            InstallStrategy.class,
+            "ambari.agent.installStrategy",
+            "How the agent is installed: by Brooklyn over SSH, or by the Ambari server through its bootstrap API",
+            InstallStrategy.SSH);
+
+    ConfigKey<Boolean> SINGLE_SHOT_BOOTSTRAP = ConfigKeys.newBooleanConfigKey(
+            "ambari.agent.singleShotBootstrap",
+            "Whether to install, configure and start the agent in a single SSH session, rather than one per lifecycle phase; " +
+                    "only applies to the SSH install strategy",
+            Boolean.FALSE);
+
+    ConfigKey<String> PACKAGE_MIRROR_URL = ConfigKeys.newStringConfigKey(
+            "ambari.agent.packageMirrorUrl", "URL of the package mirror to install the Ambari packages from, instead of the public repositories");
+
+    // Tunables of the agent, rendered into ambari-agent.ini. When set on an AmbariHostGroup, they apply to its agents only.
+
+    ConfigKey<String> LOG_LEVEL = ConfigKeys.newStringConfigKey(
+            "ambari.agent.logLevel", "Log level of the agent, either DEBUG or INFO", "INFO");
+
+    ConfigKey<Boolean> PARALLEL_EXECUTION = ConfigKeys.newBooleanConfigKey(
+            "ambari.agent.parallelExecution",
+            "Whether the agent executes the commands for the different components of its host in parallel, rather than one at a time",
+            Boolean.FALSE);
+
+    ConfigKey<Integer> COMMAND_MAX_RETRIES = ConfigKeys.newIntegerConfigKey(
+            "ambari.agent.command.maxRetries", "Number of times the agent retries a failed command", 2);
+
+    ConfigKey<Duration> COMMAND_SLEEP_BETWEEN_RETRIES = ConfigKeys.newConfigKey(
+            Duration.class,
+            "ambari.agent.command.sleepBetweenRetries",
+            "Time the agent waits before retrying a failed command; rounded to the second",
+            Duration.ONE_SECOND);
+
+    ConfigKey<Boolean> TOLERATE_DOWNLOAD_FAILURES = ConfigKeys.newBooleanConfigKey(
+            "ambari.agent.tolerateDownloadFailures",
+            "Whether the agent carries on with its cached stack scripts when it fails to download them from the server",
+            Boolean.TRUE);
+
+    ConfigKey<Duration> DATA_CLEANUP_INTERVAL = ConfigKeys.newConfigKey(
+            Duration.class,
+            "ambari.agent.dataCleanup.interval", "Interval between two cleanups of the data directory of the agent",
+            Duration.ONE_DAY);
+
+    ConfigKey<Duration> DATA_CLEANUP_MAX_AGE = ConfigKeys.newConfigKey(
+            Duration.class,
+            "ambari.agent.dataCleanup.maxAge", "Age from which the files of the data directory of the agent are cleaned up",
+            Duration.days(30));
+
+    ConfigKey<Integer> DATA_CLEANUP_MAX_SIZE_MB = ConfigKeys.newIntegerConfigKey(
+            "ambari.agent.dataCleanup.maxSizeMb", "Size, in megabytes, above which the data directory of the agent is cleaned up", 100);
+
+    ConfigKey<Duration> HEARTBEAT_STATE_INTERVAL = ConfigKeys.newConfigKey(
+            Duration.class,
+            "ambari.agent.heartbeat.stateInterval",
+            "Interval between two reports of the full state of the host in the heartbeats of the agent; rounded to the second",
+            Duration.seconds(6));
+
+    ConfigKey<Integer> HEARTBEAT_LOG_LINES_COUNT = ConfigKeys.newIntegerConfigKey(
+            "ambari.agent.heartbeat.logLinesCount",
+            "Number of lines of the command output sent back in the heartbeats of the agent; zero for unlimited",
+            300);
 
     AttributeSensor<List<String>> COMPONENTS = Sensors.newSensor(
             new TypeToken<List<String>>() {},
@@ -30,6 +30,7 @@ import org.apache.brooklyn.entity.software.base.SoftwareProcessImpl;
 import org.apache.brooklyn.util.core.config.ConfigBag;
 
 import io.brooklyn.ambari.AmbariCluster;
+import io.brooklyn.ambari.server.AmbariServer;
 
 public class AmbariAgentImpl extends SoftwareProcessImpl implements AmbariAgent {
     @Override
@@ -84,6 +85,10 @@ public class AmbariAgentImpl extends SoftwareProcessImpl implements AmbariAgent
         if (configBag != null) {
             agentSpec.configure(configBag.getAllConfig());
         }
+        if (Boolean.TRUE.equals(ambariCluster.getConfig(AmbariCluster.PACKAGE_MIRROR_ENABLED))) {
+            agentSpec.configure(PACKAGE_MIRROR_URL,
+                    attributeWhenReady(ambariCluster.getMasterAmbariServer(), AmbariServer.PACKAGE_MIRROR_URL));
+        }
         Object securityGroup = ambariCluster.getConfig(AmbariCluster.SECURITY_GROUP);
         if (securityGroup != null) {
             agentSpec.configure(SoftwareProcess.PROVISIONING_PROPERTIES.subKey("securityGroups"), securityGroup);
@@ -0,0 +1,85 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.brooklyn.ambari.agent;
+
+import org.apache.brooklyn.api.entity.Entity;
+import org.apache.brooklyn.util.time.Duration;
+
+/**
+ * The tunables of an {@link AmbariAgent}, formatted as expected in ambari-agent.ini. Exposed to the configuration
+ * template as {@code settings}.
+ */
+public class AmbariAgentSettings {
+
+    private final Entity entity;
+
+    public AmbariAgentSettings(Entity entity) {
+        this.entity = entity;
+    }
+
+    public String getLogLevel() {
+        return entity.getConfig(AmbariAgent.LOG_LEVEL);
+    }
+
+    public String getParallelExecution() {
+        return flag(entity.getConfig(AmbariAgent.PARALLEL_EXECUTION));
+    }
+
+    public String getCommandMaxRetries() {
+        return String.valueOf(entity.getConfig(AmbariAgent.COMMAND_MAX_RETRIES));
+    }
+
+    public String getCommandSleepBetweenRetries() {
+        return seconds(entity.getConfig(AmbariAgent.COMMAND_SLEEP_BETWEEN_RETRIES));
+    }
+
+    public String getTolerateDownloadFailures() {
+        return String.valueOf(Boolean.TRUE.equals(entity.getConfig(AmbariAgent.TOLERATE_DOWNLOAD_FAILURES)));
+    }
+
+    public String getDataCleanupInterval() {
+        return seconds(entity.getConfig(AmbariAgent.DATA_CLEANUP_INTERVAL));
+    }
+
+    public String getDataCleanupMaxAge() {
+        return seconds(entity.getConfig(AmbariAgent.DATA_CLEANUP_MAX_AGE));
+    }
+
+    public String getDataCleanupMaxSizeMb() {
+        return String.valueOf(entity.getConfig(AmbariAgent.DATA_CLEANUP_MAX_SIZE_MB));
+    }
+
+    public String getHeartbeatStateInterval() {
+        return seconds(entity.getConfig(AmbariAgent.HEARTBEAT_STATE_INTERVAL));
+    }
+
+    public String getHeartbeatLogLinesCount() {
+        return String.valueOf(entity.getConfig(AmbariAgent.HEARTBEAT_LOG_LINES_COUNT));
+    }
+
+    // The agent parses its boolean settings as integers
+    private static String flag(Boolean value) {
+        return Boolean.TRUE.equals(value) ? "1" : "0";
+    }
+
+    private static String seconds(Duration duration) {
+        return String.valueOf(Math.round(duration.toMilliseconds() / 1000.0));
+    }
+}
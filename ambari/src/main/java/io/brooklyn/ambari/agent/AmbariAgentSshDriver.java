@@ -22,24 +22,44 @@ import static java.lang.String.format;
 import static org.apache.brooklyn.util.ssh.BashCommands.installPackage;
 import static org.apache.brooklyn.util.ssh.BashCommands.sudo;
 
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+
 import org.apache.brooklyn.api.entity.EntityLocal;
+import org.apache.brooklyn.core.entity.Entities;
+import org.apache.brooklyn.core.location.LocationConfigKeys;
 import org.apache.brooklyn.entity.java.JavaSoftwareProcessSshDriver;
 import org.apache.brooklyn.entity.software.base.SoftwareProcess;
+import org.apache.brooklyn.entity.software.base.lifecycle.ScriptHelper;
 import org.apache.brooklyn.location.ssh.SshMachineLocation;
 import org.apache.brooklyn.util.collections.MutableMap;
+import org.apache.brooklyn.util.os.Os;
 import org.apache.brooklyn.util.ssh.BashCommands;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
 
 import io.brooklyn.ambari.AmbariCluster;
+import io.brooklyn.ambari.AmbariConfigAndSensors;
 import io.brooklyn.ambari.AmbariInstallCommands;
+import io.brooklyn.ambari.AmbariNode;
+import io.brooklyn.ambari.BootstrapScript;
 import io.brooklyn.ambari.server.AmbariServer;
 
 public class AmbariAgentSshDriver extends JavaSoftwareProcessSshDriver implements AmbariAgentDriver {
     public static final Logger log = LoggerFactory.getLogger(AmbariAgentSshDriver.class);
-    private final AmbariInstallCommands defaultAmbariInstallHelper = new AmbariInstallCommands(entity.getConfig(SoftwareProcess.SUGGESTED_VERSION));
+    private static final String TMP_CONFIG_FILE_LOCATION = "/tmp/ambari-agent.ini";
+    private static final String CONFIG_FILE_LOCATION = "/etc/ambari-agent/conf/ambari-agent.ini";
+    private static final String PREINSTALLED_MARKER = "AMBARI_AGENT_PREINSTALLED";
+
+    /**
+     * Whether the last install was a single-shot bootstrap, which already customized and launched the agent.
+     */
+    private volatile boolean bootstrapped;
 
     public AmbariAgentSshDriver(EntityLocal entity, SshMachineLocation machine) {
         super(entity, machine);
@@ -78,12 +98,25 @@ public class AmbariAgentSshDriver extends JavaSoftwareProcessSshDriver implement
                 : parentFQDN;
 
         getEntity().setFqdn(fqdn);
-        ImmutableList<String> commands =
-                ImmutableList.<String>builder()
-                        .add(defaultAmbariInstallHelper.installAmbariRequirements(getMachine()))
-                        .addAll(BashCommands.setHostname(fqdn))
-                        .add(installPackage("ambari-agent"))
-                        .build();
+
+        if (entity.getConfig(AmbariAgent.INSTALL_STRATEGY) == AmbariAgent.InstallStrategy.SERVER_BOOTSTRAP) {
+            installThroughServer(fqdn);
+            return;
+        }
+        if (Boolean.TRUE.equals(entity.getConfig(AmbariAgent.SINGLE_SHOT_BOOTSTRAP))) {
+            bootstrap(fqdn);
+            return;
+        }
+
+        String version = entity.getConfig(SoftwareProcess.SUGGESTED_VERSION);
+        List<String> commands;
+        if (isPreInstalled(new AmbariInstallCommands(version))) {
+            log.info("{} found ambari-agent {} already installed on {}: skipping its installation", new Object[]{entity, version, getMachine()});
+            commands = getPreInstalledCommands(new AmbariInstallCommands(version), fqdn);
+        } else {
+            // Blocks until the package mirror of the server, if any, is up
+            commands = getInstallCommands(new AmbariInstallCommands(version, entity.getConfig(AmbariAgent.PACKAGE_MIRROR_URL)), fqdn);
+        }
 
         newScript(INSTALLING).body
                 .append(commands)
@@ -91,23 +124,141 @@ public class AmbariAgentSshDriver extends JavaSoftwareProcessSshDriver implement
                 .execute();
     }
 
+    private List<String> getInstallCommands(AmbariInstallCommands ambariInstallHelper, String fqdn) {
+        return ImmutableList.<String>builder()
+                .add(ambariInstallHelper.installAmbariRequirements(getMachine()))
+                .addAll(BashCommands.setHostname(fqdn))
+                .add(installPackage("ambari-agent"))
+                .build();
+    }
+
+    private List<String> getPreInstalledCommands(AmbariInstallCommands ambariInstallHelper, String fqdn) {
+        return ImmutableList.<String>builder()
+                .add(ambariInstallHelper.startNtp(getMachine()))
+                .addAll(BashCommands.setHostname(fqdn))
+                .build();
+    }
+
+    private boolean isPreInstalled(AmbariInstallCommands ambariInstallHelper) {
+        boolean preInstalled = Boolean.TRUE.equals(entity.getConfig(AmbariNode.REUSE_PREINSTALLED))
+                && newScript("checking pre-installed ambari-agent").body
+                        .append(ambariInstallHelper.checkInstalled("ambari-agent"))
+                        .execute() == 0;
+        entity.setAttribute(AmbariNode.PREINSTALLED, preInstalled);
+        return preInstalled;
+    }
+
+    /**
+     * Sets the hostname, then has the Ambari server install and start the agent through its bootstrap API.
+     */
+    private void installThroughServer(String fqdn) {
+        newScript(INSTALLING).body
+                .append(BashCommands.setHostname(fqdn))
+                .failOnNonZeroResultCode()
+                .execute();
+
+        AmbariServer server = Iterables.getFirst(Iterables.filter(Entities.ancestors(entity), AmbariCluster.class), null).getMasterAmbariServer();
+        String address = entity.getAttribute(entity.getConfig(AmbariConfigAndSensors.ETC_HOST_ADDRESS));
+        if (address == null) {
+            address = getMachine().getAddress().getHostAddress();
+        }
+        log.info("{} installing ambari-agent on {} through the bootstrap API of {}", new Object[]{entity, address, server});
+        server.bootstrapAgent(address, getMachine().getUser(), getPrivateKey());
+        entity.setAttribute(AmbariNode.PREINSTALLED, false);
+    }
+
+    private String getPrivateKey() {
+        String privateKey = getMachine().getConfig(LocationConfigKeys.PRIVATE_KEY_DATA);
+        if (privateKey != null) {
+            return privateKey;
+        }
+        String privateKeyFiles = getMachine().getConfig(LocationConfigKeys.PRIVATE_KEY_FILE);
+        if (privateKeyFiles != null) {
+            for (String privateKeyFile : privateKeyFiles.split(File.pathSeparator)) {
+                File file = new File(Os.tidyPath(privateKeyFile));
+                if (file.exists()) {
+                    return resource.getResourceAsString(file.getAbsolutePath());
+                }
+            }
+        }
+        throw new IllegalStateException(String.format("No private key for %s on %s: the Ambari server needs one to install the agent through its bootstrap API", entity, getMachine()));
+    }
+
+    /**
+     * Installs, customizes and launches the agent in a single SSH session. The configuration file is rendered locally
+     * and embedded in the script, and the detection of a pre-installed agent is done by the script itself.
+     * {@link #customize()} and {@link #launch()} then have nothing left to do.
+     */
+    private void bootstrap(String fqdn) {
+        String version = entity.getConfig(SoftwareProcess.SUGGESTED_VERSION);
+        // Blocks until the package mirror of the server, if any, is up, even if the agent turns out to be pre-installed
+        AmbariInstallCommands ambariInstallHelper = new AmbariInstallCommands(version, entity.getConfig(AmbariAgent.PACKAGE_MIRROR_URL));
+
+        String install = BashCommands.chainGroup(getInstallCommands(ambariInstallHelper, fqdn));
+        if (Boolean.TRUE.equals(entity.getConfig(AmbariNode.REUSE_PREINSTALLED))) {
+            install = format("if %s ; then echo %s ; %s ; else %s ; fi",
+                    ambariInstallHelper.checkInstalled("ambari-agent"),
+                    PREINSTALLED_MARKER,
+                    BashCommands.chainGroup(getPreInstalledCommands(ambariInstallHelper, fqdn)),
+                    install);
+        }
+
+        BootstrapScript bootstrap = new BootstrapScript()
+                .phase(INSTALLING, install)
+                .phase(CUSTOMIZING, getCustomizeCommands(
+                        BootstrapScript.writeFile(processTemplate(getTemplateConfigurationUrl(), getTemplateSubstitutions()), TMP_CONFIG_FILE_LOCATION)))
+                .phase(LAUNCHING, getLaunchCommand());
+        ScriptHelper script = newScript("bootstrapping").body
+                .append(bootstrap.getLines())
+                .gatherOutput();
+        int result = script.execute();
+
+        entity.setAttribute(AmbariNode.PREINSTALLED, script.getResultStdout().contains(PREINSTALLED_MARKER));
+        bootstrap.checkResult(String.format("Bootstrap of %s on %s", entity, getMachine()), result, script.getResultStderr());
+        bootstrapped = true;
+    }
+
     @Override
     public void customize() {
-        String tmpConfigFileLoc = "/tmp/ambari-agent.ini";
-        String destinationConfigFile = "/etc/ambari-agent/conf/ambari-agent.ini";
+        if (bootstrapped) {
+            return;
+        }
 
-        copyTemplate(getTemplateConfigurationUrl(), tmpConfigFileLoc);
+        copyTemplate(getTemplateConfigurationUrl(), TMP_CONFIG_FILE_LOCATION, false, getTemplateSubstitutions());
 
         newScript(CUSTOMIZING)
-                .body.append(sudo(format("mv %s %s", tmpConfigFileLoc, destinationConfigFile)))
+                .body.append(getCustomizeCommands())
                 .failOnNonZeroResultCode()
                 .execute();
 
     }
 
+    private List<String> getCustomizeCommands(String... preceding) {
+        return ImmutableList.<String>builder()
+                .add(preceding)
+                .add(sudo(format("mv %s %s", TMP_CONFIG_FILE_LOCATION, CONFIG_FILE_LOCATION)))
+                .build();
+    }
+
     @Override
     public void launch() {
-        newScript(LAUNCHING).body.append(sudo("ambari-agent start")).failOnNonZeroResultCode().execute();
+        if (bootstrapped) {
+            // Only skipped once: later launches, e.g. on restart, start the agent
+            bootstrapped = false;
+            return;
+        }
+        newScript(LAUNCHING).body.append(getLaunchCommand()).failOnNonZeroResultCode().execute();
+    }
+
+    private String getLaunchCommand() {
+        // The bootstrap API already started the agent, with its own configuration
+        return entity.getConfig(AmbariAgent.INSTALL_STRATEGY) == AmbariAgent.InstallStrategy.SERVER_BOOTSTRAP
+                ? sudo("ambari-agent restart")
+                : sudo("ambari-agent start");
+    }
+
+    private Map<String, Object> getTemplateSubstitutions() {
+        return ImmutableMap.<String, Object>of("settings", new AmbariAgentSettings(entity));
     }
 
     String getTemplateConfigurationUrl() {
@@ -47,10 +47,14 @@ public final class RegisteredHostEventListener implements SensorEventListener<Li
 
     @Override
     public void onEvent(SensorEvent<List<String>> event) {
+        // Once the deployment has been triggered, registration events are only used for membership drift checks
+        if (Boolean.TRUE.equals(entity.getAttribute(AmbariCluster.CLUSTER_SERVICES_INITIALISE_CALLED))) {
+            return;
+        }
+
         List<String> hosts = event.getValue();
         Integer initialClusterSize = entity.getAttribute(AmbariCluster.EXPECTED_AGENTS);
-        Boolean initialised = entity.getAttribute(AmbariCluster.CLUSTER_SERVICES_INITIALISE_CALLED);
-        if (hosts != null && hosts.size() == initialClusterSize && !Boolean.TRUE.equals(initialised)) {
+        if (hosts != null && initialClusterSize != null && hosts.size() == initialClusterSize) {
             try {
                 if (pauseOnDeployment) {
                     entity.getMutableEntityType().addEffector(createDeployClusterEffector());
@@ -31,6 +31,10 @@ import org.apache.brooklyn.util.core.flags.SetFromFlag;
 
 import com.google.common.reflect.TypeToken;
 
+/**
+ * A group of Ambari agents sharing the same components. The {@link io.brooklyn.ambari.agent.AmbariAgent} config keys,
+ * such as the agent tunables, can be set on a host group to override those of the cluster for its agents only.
+ */
 @ImplementedBy(AmbariHostGroupImpl.class)
 public interface AmbariHostGroup extends DynamicCluster {
 
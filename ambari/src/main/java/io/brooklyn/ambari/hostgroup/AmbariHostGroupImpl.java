@@ -73,13 +73,29 @@ public class AmbariHostGroupImpl extends DynamicClusterImpl implements AmbariHos
 
     @Override
     public Collection<Entity> resizeByDelta(int delta) {
-        Collection<Entity> entities = super.resizeByDelta(delta);
-
-        if (delta != 0) {
-            EtcHostsManager.setHostsOnMachines(getAmbariCluster().getAmbariNodes(), getConfig(AmbariCluster.ETC_HOST_ADDRESS));
+        // Once the cluster is deployed, registered hosts are only polled at low frequency. Resume full-rate polling
+        // for the time of the resize so new agents are picked up promptly.
+        AmbariCluster ambariCluster = getAmbariCluster();
+        boolean resizingDeployedCluster = delta != 0
+                && ambariCluster != null
+                && Boolean.TRUE.equals(ambariCluster.getAttribute(AmbariCluster.CLUSTER_SERVICES_INITIALISE_CALLED));
+        if (resizingDeployedCluster) {
+            ambariCluster.getMasterAmbariServer().setRegisteredHostsFastPolling(true);
         }
 
-        return entities;
+        try {
+            Collection<Entity> entities = super.resizeByDelta(delta);
+
+            if (delta != 0) {
+                EtcHostsManager.setHostsOnMachines(ambariCluster.getAmbariNodes(), getConfig(AmbariCluster.ETC_HOST_ADDRESS));
+            }
+
+            return entities;
+        } finally {
+            if (resizingDeployedCluster) {
+                ambariCluster.getMasterAmbariServer().setRegisteredHostsFastPolling(false);
+            }
+        }
     }
 
     private EntitySpec<? extends AmbariAgent> ambariAgentSpec() {
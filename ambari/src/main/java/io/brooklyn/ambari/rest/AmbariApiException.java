@@ -21,6 +21,7 @@ package io.brooklyn.ambari.rest;
 import java.text.MessageFormat;
 
 import retrofit.RetrofitError;
+import retrofit.client.Response;
 import retrofit.mime.TypedByteArray;
 
 public class AmbariApiException extends IllegalStateException {
@@ -28,8 +29,33 @@ public class AmbariApiException extends IllegalStateException {
     private static final long serialVersionUID = -4818661501394443750L;
 
     static final String ERROR_MESSAGE = "Error from the Ambari REST API - HTTP/{0} [{1}]:\n{2}";
+    static final String NO_RESPONSE_MESSAGE = "Error calling the Ambari REST API [{0}]: {1}";
+    static final int MAX_BODY_LENGTH = 1024;
 
     public AmbariApiException(RetrofitError retrofitError) {
-        super(MessageFormat.format(ERROR_MESSAGE, retrofitError.getResponse().getStatus(), retrofitError.getUrl(), new String(((TypedByteArray) retrofitError.getResponse().getBody()).getBytes())));
+        super(toMessage(retrofitError), retrofitError);
+    }
+
+    public AmbariApiException(String message) {
+        super(message);
+    }
+
+    private static String toMessage(RetrofitError retrofitError) {
+        Response response = retrofitError.getResponse();
+        if (response == null) {
+            // Network error: the request did not reach the server, or its response could not be read
+            return MessageFormat.format(NO_RESPONSE_MESSAGE, retrofitError.getUrl(), retrofitError.getMessage());
+        }
+        String body = response.getBody() instanceof TypedByteArray ? new String(((TypedByteArray) response.getBody()).getBytes()) : "";
+        return MessageFormat.format(ERROR_MESSAGE, response.getStatus(), retrofitError.getUrl(), truncate(body));
+    }
+
+    /**
+     * Error bodies may echo large payloads back: only their beginning is kept, the wire log having the details.
+     */
+    static String truncate(String body) {
+        return body.length() > MAX_BODY_LENGTH
+                ? body.substring(0, MAX_BODY_LENGTH) + "... [" + (body.length() - MAX_BODY_LENGTH) + " more characters]"
+                : body;
     }
 }
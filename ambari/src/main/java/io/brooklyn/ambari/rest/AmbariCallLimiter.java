@@ -0,0 +1,252 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.brooklyn.ambari.rest;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.brooklyn.util.time.Duration;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Ticker;
+
+/**
+ * Limits the calls made to one Ambari server, so that bursts of effectors, extra services and polls do not push it
+ * into latency collapse. Two limits apply to every call:
+ * <ul>
+ *     <li>an adaptive concurrency limit, following an AIMD scheme: it grows by one call per "round" of calls completed
+ *     within the latency target, and is halved whenever a call is slower than the target or the server looks
+ *     overloaded;</li>
+ *     <li>an optional token-bucket rate limit, allowing bursts up to a given number of calls.</li>
+ * </ul>
+ * Calls waiting for a slot are served by {@link Priority}: background calls only get a slot when no critical call is
+ * waiting for one.
+ */
+public class AmbariCallLimiter {
+
+    public enum Priority {
+        /** Calls a deployment or an effector is waiting on. */
+        CRITICAL,
+        /** Polls and other calls that can be delayed. */
+        BACKGROUND
+    }
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+    private final int minLimit;
+    private final int maxLimit;
+    private final long latencyTargetNanos;
+    private final TokenBucket tokenBucket;
+
+    private double limit;
+    private int inFlight;
+    private int criticalWaiting;
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    protected AmbariCallLimiter(Builder builder) {
+        this.minLimit = builder.minLimit;
+        this.maxLimit = builder.maxLimit;
+        this.limit = builder.initialLimit;
+        this.latencyTargetNanos = builder.latencyTarget.toNanoseconds();
+        this.tokenBucket = builder.callsPerSecond > 0 ? new TokenBucket(builder.callsPerSecond, builder.burst, builder.ticker) : null;
+    }
+
+    /**
+     * Blocks until the call can be made. Every successful acquisition must be followed by a call to
+     * {@link #release(long, boolean)}.
+     */
+    public void acquire(Priority priority) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            if (priority == Priority.CRITICAL) {
+                criticalWaiting++;
+            }
+            try {
+                while (inFlight >= (int) limit || (priority == Priority.BACKGROUND && criticalWaiting > 0)) {
+                    released.await();
+                }
+            } finally {
+                if (priority == Priority.CRITICAL) {
+                    criticalWaiting--;
+                }
+            }
+            inFlight++;
+        } finally {
+            lock.unlock();
+        }
+
+        if (tokenBucket != null) {
+            try {
+                tokenBucket.take();
+            } catch (InterruptedException e) {
+                releaseSlot(false, false);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Releases the slot of a completed call, and adapts the concurrency limit to its outcome.
+     *
+     * @param latencyNanos the time the call took.
+     * @param overloaded   whether the call failed in a way showing the server is overloaded, e.g. a 503 or a timeout.
+     */
+    public void release(long latencyNanos, boolean overloaded) {
+        releaseSlot(true, overloaded || latencyNanos > latencyTargetNanos);
+    }
+
+    private void releaseSlot(boolean adapt, boolean decrease) {
+        lock.lock();
+        try {
+            inFlight--;
+            if (adapt) {
+                limit = decrease ? Math.max(minLimit, limit / 2) : Math.min(maxLimit, limit + 1 / limit);
+            }
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the current concurrency limit.
+     */
+    public int getLimit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of calls currently holding a slot.
+     */
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static class TokenBucket {
+
+        private final double tokensPerNano;
+        private final double capacity;
+        private final Ticker ticker;
+        private double tokens;
+        private long lastRefill;
+
+        TokenBucket(double callsPerSecond, int burst, Ticker ticker) {
+            this.tokensPerNano = callsPerSecond / TimeUnit.SECONDS.toNanos(1);
+            this.capacity = burst;
+            this.ticker = ticker;
+            this.tokens = burst;
+            this.lastRefill = ticker.read();
+        }
+
+        void take() throws InterruptedException {
+            long waitNanos = reserve();
+            if (waitNanos > 0) {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            }
+        }
+
+        /**
+         * Takes a token, possibly in advance, and returns how long to wait for it to be available. Taking tokens in
+         * advance keeps the waiting calls in order without holding a lock while they wait.
+         */
+        private synchronized long reserve() {
+            long now = ticker.read();
+            tokens = Math.min(capacity, tokens + (now - lastRefill) * tokensPerNano);
+            lastRefill = now;
+            tokens -= 1;
+            return tokens >= 0 ? 0 : (long) (-tokens / tokensPerNano);
+        }
+    }
+
+    public static class Builder {
+
+        private int initialLimit = 4;
+        private int minLimit = 1;
+        private int maxLimit = 16;
+        private Duration latencyTarget = Duration.TEN_SECONDS;
+        private double callsPerSecond = 0;
+        private int burst = 1;
+        private Ticker ticker = Ticker.systemTicker();
+
+        public Builder initialLimit(int initialLimit) {
+            this.initialLimit = initialLimit;
+            return this;
+        }
+
+        public Builder minLimit(int minLimit) {
+            this.minLimit = minLimit;
+            return this;
+        }
+
+        public Builder maxLimit(int maxLimit) {
+            this.maxLimit = maxLimit;
+            return this;
+        }
+
+        /**
+         * Sets the latency above which a call is considered a sign of overload.
+         */
+        public Builder latencyTarget(Duration latencyTarget) {
+            this.latencyTarget = latencyTarget;
+            return this;
+        }
+
+        /**
+         * Sets the sustained rate of calls allowed, and the number of calls that can be made at once before the rate
+         * applies. A rate of zero or less disables the rate limit.
+         */
+        public Builder rate(double callsPerSecond, int burst) {
+            this.callsPerSecond = callsPerSecond;
+            this.burst = burst;
+            return this;
+        }
+
+        public Builder ticker(Ticker ticker) {
+            this.ticker = ticker;
+            return this;
+        }
+
+        public AmbariCallLimiter build() {
+            Preconditions.checkArgument(this.minLimit > 0, "Min limit must be positive: %s", this.minLimit);
+            Preconditions.checkArgument(this.maxLimit >= this.minLimit, "Max limit must be at least %s: %s", this.minLimit, this.maxLimit);
+            Preconditions.checkNotNull(this.latencyTarget, "Latency target must not be null");
+            Preconditions.checkArgument(this.burst > 0, "Burst must be positive: %s", this.burst);
+            Preconditions.checkNotNull(this.ticker, "Ticker must not be null");
+
+            this.initialLimit = Math.max(this.minLimit, Math.min(this.maxLimit, this.initialLimit));
+
+            return new AmbariCallLimiter(this);
+        }
+    }
+}
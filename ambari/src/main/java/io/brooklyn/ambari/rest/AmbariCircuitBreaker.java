@@ -0,0 +1,292 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.brooklyn.ambari.rest;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.brooklyn.util.time.Duration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Ticker;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Stops calls to an Ambari server that keeps failing, so that callers fail fast instead of piling up on a server
+ * that is overloaded or restarting.
+ * <ul>
+ *     <li>{@link State#CLOSED}: calls go through. The breaker opens after a number of consecutive failed calls;</li>
+ *     <li>{@link State#OPEN}: calls are rejected immediately. The breaker becomes half-open after a while, even if no
+ *     call is made in the meantime, so that its {@link Listener} sees it recover;</li>
+ *     <li>{@link State#HALF_OPEN}: a single probe call goes through, the others are rejected. The breaker closes if the
+ *     probe succeeds, and opens again otherwise.</li>
+ * </ul>
+ */
+public class AmbariCircuitBreaker {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AmbariCircuitBreaker.class);
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    /**
+     * Notified of every change of state of a breaker.
+     */
+    public interface Listener {
+        void onStateChange(State state);
+    }
+
+    private final int failureThreshold;
+    private final long openDurationNanos;
+    private final Ticker ticker;
+    private final Listener listener;
+    private final ScheduledExecutorService scheduler;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private long openings;
+    private boolean probeInFlight;
+    private final Queue<State> pendingNotifications = new ArrayDeque<State>();
+    private boolean notifying;
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    protected AmbariCircuitBreaker(Builder builder) {
+        this.failureThreshold = builder.failureThreshold;
+        this.openDurationNanos = builder.openDuration.toNanoseconds();
+        this.ticker = builder.ticker;
+        this.listener = builder.listener;
+        this.scheduler = builder.scheduler;
+    }
+
+    /**
+     * @return the current state of the breaker. An open breaker becomes half-open once its open duration elapsed.
+     */
+    public State getState() {
+        State current;
+        synchronized (this) {
+            halfOpenIfElapsed();
+            current = state;
+        }
+        deliverNotifications();
+        return current;
+    }
+
+    /**
+     * Checks that a call can be made. A successful check must be followed by a call to {@link #record(boolean)},
+     * or to {@link #cancel()} if the call is not made.
+     *
+     * @throws AmbariApiException if the breaker is open, or half-open with its probe call in flight.
+     */
+    public void acquire(String call) {
+        try {
+            synchronized (this) {
+                halfOpenIfElapsed();
+                if (state == State.HALF_OPEN && !probeInFlight) {
+                    probeInFlight = true;
+                } else if (state != State.CLOSED) {
+                    throw new AmbariApiException(String.format("Call %s rejected: the circuit breaker of the Ambari REST API is %s", call, state));
+                }
+            }
+        } finally {
+            deliverNotifications();
+        }
+    }
+
+    /**
+     * Records the outcome of a call allowed by {@link #acquire(String)}.
+     *
+     * @param failed whether the call failed in a way showing the server is unavailable, e.g. a network error or a
+     *               503.
+     */
+    public void record(boolean failed) {
+        synchronized (this) {
+            if (state == State.HALF_OPEN) {
+                probeInFlight = false;
+                if (failed) {
+                    open();
+                } else {
+                    close();
+                }
+            } else if (state == State.CLOSED) {
+                consecutiveFailures = failed ? consecutiveFailures + 1 : 0;
+                if (consecutiveFailures >= failureThreshold) {
+                    open();
+                }
+            }
+        }
+        deliverNotifications();
+    }
+
+    /**
+     * Releases a call allowed by {@link #acquire(String)} which was not made, without recording any outcome.
+     */
+    public synchronized void cancel() {
+        if (state == State.HALF_OPEN) {
+            probeInFlight = false;
+        }
+    }
+
+    private void halfOpenIfElapsed() {
+        if (state == State.OPEN && ticker.read() - openedAt >= openDurationNanos) {
+            changeState(State.HALF_OPEN);
+        }
+    }
+
+    private void open() {
+        changeState(State.OPEN);
+        openedAt = ticker.read();
+        openings++;
+        consecutiveFailures = 0;
+        scheduleHalfOpen(openings);
+    }
+
+    private void close() {
+        changeState(State.CLOSED);
+        consecutiveFailures = 0;
+    }
+
+    /**
+     * Makes the breaker half-open once its open duration elapsed, whether or not a call comes in by then. Otherwise
+     * the breaker would stay open, as seen by the listener, until the next call.
+     */
+    private void scheduleHalfOpen(final long opening) {
+        scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (AmbariCircuitBreaker.this) {
+                    // Skip if a call already made the breaker half-open, or if it was reopened since
+                    if (state != State.OPEN || openings != opening) {
+                        return;
+                    }
+                    changeState(State.HALF_OPEN);
+                }
+                deliverNotifications();
+            }
+        }, openDurationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Changes the state, and queues the notification of the listener. Must be called holding the lock, so that the
+     * notifications are queued in the order of the changes.
+     */
+    private void changeState(State newState) {
+        state = newState;
+        if (listener != null) {
+            pendingNotifications.add(newState);
+        }
+    }
+
+    /**
+     * Notifies the listener of the queued changes, outside the lock. One thread at a time delivers them, in order, so
+     * the listener always ends up with the last state.
+     */
+    private void deliverNotifications() {
+        while (true) {
+            State next;
+            synchronized (this) {
+                if (notifying || pendingNotifications.isEmpty()) {
+                    return;
+                }
+                notifying = true;
+                next = pendingNotifications.remove();
+            }
+            try {
+                listener.onStateChange(next);
+            } catch (RuntimeException e) {
+                LOG.warn("Listener of the circuit breaker failed on its change to " + next, e);
+            } finally {
+                synchronized (this) {
+                    notifying = false;
+                }
+            }
+        }
+    }
+
+    /**
+     * Shared by the breakers not given a scheduler: its tasks only change the state of a breaker.
+     */
+    private static final ScheduledExecutorService DEFAULT_SCHEDULER = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("ambari-circuit-breaker-%d").setDaemon(true).build());
+
+    public static class Builder {
+
+        private int failureThreshold = 5;
+        private Duration openDuration = Duration.THIRTY_SECONDS;
+        private Ticker ticker = Ticker.systemTicker();
+        private Listener listener;
+        private ScheduledExecutorService scheduler = DEFAULT_SCHEDULER;
+
+        /**
+         * Sets the number of consecutive failed calls opening the breaker.
+         */
+        public Builder failureThreshold(int failureThreshold) {
+            this.failureThreshold = failureThreshold;
+            return this;
+        }
+
+        /**
+         * Sets how long the breaker stays open before letting a probe call through.
+         */
+        public Builder openDuration(Duration openDuration) {
+            this.openDuration = openDuration;
+            return this;
+        }
+
+        public Builder ticker(Ticker ticker) {
+            this.ticker = ticker;
+            return this;
+        }
+
+        public Builder listener(Listener listener) {
+            this.listener = listener;
+            return this;
+        }
+
+        /**
+         * Sets the scheduler making the breaker half-open once its open duration elapsed. Defaults to a single daemon
+         * thread shared by all the breakers.
+         */
+        public Builder scheduler(ScheduledExecutorService scheduler) {
+            this.scheduler = scheduler;
+            return this;
+        }
+
+        public AmbariCircuitBreaker build() {
+            Preconditions.checkArgument(this.failureThreshold > 0, "Failure threshold must be positive: %s", this.failureThreshold);
+            Preconditions.checkNotNull(this.openDuration, "Open duration must not be null");
+            Preconditions.checkNotNull(this.ticker, "Ticker must not be null");
+            Preconditions.checkNotNull(this.scheduler, "Scheduler must not be null");
+
+            return new AmbariCircuitBreaker(this);
+        }
+    }
+}
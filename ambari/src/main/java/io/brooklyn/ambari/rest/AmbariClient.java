@@ -0,0 +1,479 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.brooklyn.ambari.rest;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+
+import org.apache.brooklyn.util.exceptions.Exceptions;
+import org.apache.brooklyn.util.time.Duration;
+import org.apache.brooklyn.util.time.Time;
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableFutureTask;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import io.brooklyn.ambari.rest.endpoint.BlueprintEndpoint;
+import io.brooklyn.ambari.rest.endpoint.BootstrapEndpoint;
+import io.brooklyn.ambari.rest.endpoint.ClusterEndpoint;
+import io.brooklyn.ambari.rest.endpoint.ConfigurationEnpoint;
+import io.brooklyn.ambari.rest.endpoint.HostEndpoint;
+import io.brooklyn.ambari.rest.endpoint.RequestEndpoint;
+import io.brooklyn.ambari.rest.endpoint.ServiceEndpoint;
+import io.brooklyn.ambari.rest.endpoint.StackEndpoint;
+import retrofit.RestAdapter;
+import retrofit.RetrofitError;
+import retrofit.client.Client;
+
+/**
+ * Typed client for the Ambari REST API. The Retrofit proxies of every endpoint are built once, when the client is
+ * created, and wrapped so that all the calls go through the same path, which:
+ * <ul>
+ *     <li>retries the failed calls that are safe to retry, as decided by an {@link AmbariRetryPolicy};</li>
+ *     <li>maps every {@link RetrofitError} to an {@link AmbariApiException};</li>
+ *     <li>records the number of calls, errors and time spent per endpoint method in {@link AmbariClientMetrics};</li>
+ *     <li>limits the concurrency and rate of the calls with an {@link AmbariCallLimiter}, the endpoints of
+ *     {@link #withPriority(AmbariCallLimiter.Priority)} taking precedence or giving way to the others;</li>
+ *     <li>fails fast while the server is unavailable, with an {@link AmbariCircuitBreaker}.</li>
+ * </ul>
+ * The endpoints are blocking. Independent calls can be run concurrently with {@link #submit(Callable)}, or grouped in
+ * a {@link Batch} to be joined.
+ */
+public class AmbariClient {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AmbariClient.class);
+
+    private static final List<Class<?>> ENDPOINTS = ImmutableList.<Class<?>>of(BlueprintEndpoint.class, BootstrapEndpoint.class, ClusterEndpoint.class,
+            ConfigurationEnpoint.class, HostEndpoint.class, RequestEndpoint.class, ServiceEndpoint.class, StackEndpoint.class);
+
+    private final Map<AmbariCallLimiter.Priority, Map<Class<?>, Object>> lanes;
+    private final AmbariCallLimiter.Priority priority;
+    private final AmbariClientMetrics metrics;
+    private final AmbariCallLimiter limiter;
+    private final AmbariCircuitBreaker circuitBreaker;
+    private final WireLog wireLog;
+    private final AmbariRetryPolicy retryPolicy;
+    private final Executor executor;
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    protected AmbariClient(Builder builder) {
+        this.priority = AmbariCallLimiter.Priority.CRITICAL;
+        this.metrics = builder.metrics;
+        this.limiter = builder.limiter;
+        this.circuitBreaker = builder.circuitBreaker;
+        this.wireLog = builder.wireLog;
+        this.retryPolicy = builder.retryPolicy;
+        this.executor = builder.executor;
+
+        RestAdapter.Builder restAdapterBuilder = new RestAdapter.Builder()
+                .setEndpoint(builder.endpoint)
+                .setRequestInterceptor(new AmbariRequestInterceptor(builder.credentials))
+                .setConverter(AmbariGson.converter())
+                .setLogLevel(builder.logLevel);
+        // The wire log sits above the compression, so it records the bodies uncompressed
+        restAdapterBuilder.setClient(builder.wireLog.wrap(new GzipClient(builder.client != null ? builder.client : GzipClient.defaultClient(),
+                builder.gzipResponses, builder.gzipRequests, builder.gzipRequestThreshold)));
+        RestAdapter restAdapter = restAdapterBuilder.build();
+
+        ImmutableMap.Builder<AmbariCallLimiter.Priority, Map<Class<?>, Object>> lanesBuilder = ImmutableMap.builder();
+        for (AmbariCallLimiter.Priority lane : AmbariCallLimiter.Priority.values()) {
+            ImmutableMap.Builder<Class<?>, Object> endpointsBuilder = ImmutableMap.builder();
+            for (Class<?> endpoint : ENDPOINTS) {
+                endpointsBuilder.put(endpoint, wrap(endpoint, restAdapter.create(endpoint), lane));
+            }
+            lanesBuilder.put(lane, endpointsBuilder.build());
+        }
+        this.lanes = lanesBuilder.build();
+    }
+
+    private AmbariClient(AmbariClient client, AmbariCallLimiter.Priority priority) {
+        this.lanes = client.lanes;
+        this.priority = priority;
+        this.metrics = client.metrics;
+        this.limiter = client.limiter;
+        this.circuitBreaker = client.circuitBreaker;
+        this.wireLog = client.wireLog;
+        this.retryPolicy = client.retryPolicy;
+        this.executor = client.executor;
+    }
+
+    /**
+     * @return a view of this client whose endpoints make their calls with the given priority. The views share the
+     * limiter, metrics and executor of this client.
+     */
+    public AmbariClient withPriority(AmbariCallLimiter.Priority priority) {
+        return priority == this.priority ? this : new AmbariClient(this, priority);
+    }
+
+    public BlueprintEndpoint blueprints() {
+        return endpoint(BlueprintEndpoint.class);
+    }
+
+    public BootstrapEndpoint bootstraps() {
+        return endpoint(BootstrapEndpoint.class);
+    }
+
+    public ClusterEndpoint clusters() {
+        return endpoint(ClusterEndpoint.class);
+    }
+
+    public ConfigurationEnpoint configurations() {
+        return endpoint(ConfigurationEnpoint.class);
+    }
+
+    public HostEndpoint hosts() {
+        return endpoint(HostEndpoint.class);
+    }
+
+    public RequestEndpoint requests() {
+        return endpoint(RequestEndpoint.class);
+    }
+
+    public ServiceEndpoint services() {
+        return endpoint(ServiceEndpoint.class);
+    }
+
+    public StackEndpoint stacks() {
+        return endpoint(StackEndpoint.class);
+    }
+
+    /**
+     * @return the pre-built proxy of the given endpoint.
+     * @throws IllegalArgumentException if the given type is not a known Ambari endpoint.
+     */
+    public <T> T endpoint(Class<T> type) {
+        Object endpoint = lanes.get(priority).get(type);
+        Preconditions.checkArgument(endpoint != null, "Unknown Ambari endpoint: %s", type);
+        return type.cast(endpoint);
+    }
+
+    public AmbariClientMetrics getMetrics() {
+        return metrics;
+    }
+
+    public AmbariCallLimiter getLimiter() {
+        return limiter;
+    }
+
+    public AmbariCircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    public WireLog getWireLog() {
+        return wireLog;
+    }
+
+    /**
+     * Runs the given calls to the endpoints asynchronously, on the executor of this client.
+     *
+     * @return the future result of the calls.
+     */
+    public <T> ListenableFuture<T> submit(Callable<T> call) {
+        ListenableFutureTask<T> task = ListenableFutureTask.create(call);
+        executor.execute(task);
+        return task;
+    }
+
+    /**
+     * @return a new, empty, batch of concurrent calls.
+     */
+    public Batch batch() {
+        return new Batch();
+    }
+
+    /**
+     * A group of independent calls, run concurrently and joined together.
+     */
+    public class Batch {
+
+        private final List<ListenableFuture<?>> futures = Lists.newArrayList();
+
+        private Batch() {
+        }
+
+        public <T> ListenableFuture<T> submit(Callable<T> call) {
+            ListenableFuture<T> future = AmbariClient.this.submit(call);
+            futures.add(future);
+            return future;
+        }
+
+        /**
+         * Waits for all the calls of this batch to complete, whether they succeed or not, so none is left running.
+         *
+         * @return the results of the calls, in submission order.
+         * @throws AmbariApiException or any other runtime exception thrown by the first call, in submission order,
+         * which failed.
+         */
+        public List<Object> join() {
+            List<Object> results = Lists.newArrayListWithCapacity(futures.size());
+            Throwable failure = null;
+            for (ListenableFuture<?> future : futures) {
+                try {
+                    results.add(future.get());
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause();
+                    }
+                } catch (InterruptedException e) {
+                    throw Exceptions.propagate(e);
+                }
+            }
+            if (failure != null) {
+                throw Exceptions.propagate(failure);
+            }
+            return results;
+        }
+    }
+
+    private Object wrap(Class<?> type, Object delegate, AmbariCallLimiter.Priority lane) {
+        return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, new EndpointInvocationHandler(type, delegate, lane));
+    }
+
+    private class EndpointInvocationHandler implements InvocationHandler {
+
+        private final Object delegate;
+        private final String prefix;
+        private final AmbariCallLimiter.Priority lane;
+        private final Map<Method, AmbariRetryPolicy.Idempotency> idempotencies;
+
+        EndpointInvocationHandler(Class<?> type, Object delegate, AmbariCallLimiter.Priority lane) {
+            this.delegate = delegate;
+            this.prefix = type.getSimpleName() + ".";
+            this.lane = lane;
+
+            ImmutableMap.Builder<Method, AmbariRetryPolicy.Idempotency> idempotenciesBuilder = ImmutableMap.builder();
+            for (Method method : type.getMethods()) {
+                idempotenciesBuilder.put(method, AmbariRetryPolicy.classify(method));
+            }
+            this.idempotencies = idempotenciesBuilder.build();
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getDeclaringClass() == Object.class) {
+                return method.invoke(delegate, args);
+            }
+
+            final String call = prefix + method.getName();
+            // The breaker sees one outcome per call, once its retries are over, while the limiter adapts to every attempt
+            circuitBreaker.acquire(call);
+            boolean attempted = false;
+            boolean overloaded = false;
+            try {
+                Duration backOff = null;
+                for (int attempt = 1; ; attempt++) {
+                    if (backOff != null) {
+                        // Wait without holding a slot of the limiter
+                        Time.sleep(backOff);
+                    }
+                    try {
+                        limiter.acquire(lane);
+                    } catch (InterruptedException e) {
+                        throw Exceptions.propagate(e);
+                    }
+                    attempted = true;
+                    overloaded = false;
+                    final long start = System.nanoTime();
+                    try {
+                        Object result = method.invoke(delegate, args);
+                        metrics.record(call, System.nanoTime() - start, true);
+                        return result;
+                    } catch (InvocationTargetException e) {
+                        metrics.record(call, System.nanoTime() - start, false);
+                        if (!(e.getCause() instanceof RetrofitError)) {
+                            throw e.getCause();
+                        }
+                        RetrofitError retrofitError = (RetrofitError) e.getCause();
+                        overloaded = isOverloaded(retrofitError);
+                        if (retryPolicy.shouldRetry(idempotencies.get(method), retrofitError, attempt)) {
+                            backOff = retryPolicy.delayBeforeRetry(attempt);
+                            metrics.recordRetry(call);
+                            LOG.debug("Attempt {} to call {} failed, retrying in {}: {}", new Object[] {attempt, call, backOff, retrofitError.getMessage()});
+                            continue;
+                        }
+                        throw new AmbariApiException(retrofitError);
+                    } finally {
+                        limiter.release(System.nanoTime() - start, overloaded);
+                    }
+                }
+            } finally {
+                if (attempted) {
+                    circuitBreaker.record(overloaded);
+                } else {
+                    circuitBreaker.cancel();
+                }
+            }
+        }
+
+        private boolean isOverloaded(RetrofitError retrofitError) {
+            if (retrofitError.getKind() == RetrofitError.Kind.NETWORK) {
+                return true;
+            }
+            // 429 Too Many Requests, 503 Service Unavailable and 504 Gateway Timeout
+            int status = retrofitError.getResponse() != null ? retrofitError.getResponse().getStatus() : 0;
+            return status == 429 || status == 503 || status == 504;
+        }
+    }
+
+    public static class Builder {
+
+        private String endpoint;
+        private UsernamePasswordCredentials credentials;
+        private Client client;
+        private boolean gzipResponses = true;
+        private boolean gzipRequests = false;
+        private long gzipRequestThreshold = 16 * 1024;
+        private RestAdapter.LogLevel logLevel;
+        private WireLog wireLog;
+        private AmbariClientMetrics metrics;
+        private AmbariCallLimiter limiter;
+        private AmbariCircuitBreaker circuitBreaker;
+        private AmbariRetryPolicy retryPolicy;
+        private Executor executor;
+
+        public Builder endpoint(String endpoint) {
+            this.endpoint = endpoint;
+            return this;
+        }
+
+        public Builder credentials(UsernamePasswordCredentials credentials) {
+            this.credentials = credentials;
+            return this;
+        }
+
+        /**
+         * Sets the HTTP client used to execute the requests, typically a mock in tests. Defaults to the Retrofit one.
+         */
+        public Builder client(Client client) {
+            this.client = client;
+            return this;
+        }
+
+        /**
+         * Sets whether responses are negotiated compressed, and whether request bodies of at least the given number of
+         * bytes are sent compressed. Defaults to compressed responses and uncompressed requests.
+         */
+        public Builder gzip(boolean responses, boolean requests, long requestThreshold) {
+            this.gzipResponses = responses;
+            this.gzipRequests = requests;
+            this.gzipRequestThreshold = requestThreshold;
+            return this;
+        }
+
+        /**
+         * Sets the log of the recent exchanges with the server. Defaults to the last 100 exchanges, sampling 10% of the
+         * successful ones, with bodies truncated to 2048 bytes.
+         */
+        public Builder wireLog(WireLog wireLog) {
+            this.wireLog = wireLog;
+            return this;
+        }
+
+        /**
+         * Sets the level of the Retrofit log, which logs every call. Defaults to {@link RestAdapter.LogLevel#NONE}: use
+         * the {@link #wireLog(WireLog) wire log} to keep diagnostics at a bounded cost.
+         */
+        public Builder logLevel(RestAdapter.LogLevel logLevel) {
+            this.logLevel = logLevel;
+            return this;
+        }
+
+        public Builder metrics(AmbariClientMetrics metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
+        /**
+         * Sets the limiter of the calls made to the server. Defaults to an adaptive concurrency limit, without rate
+         * limit.
+         */
+        public Builder limiter(AmbariCallLimiter limiter) {
+            this.limiter = limiter;
+            return this;
+        }
+
+        public Builder circuitBreaker(AmbariCircuitBreaker circuitBreaker) {
+            this.circuitBreaker = circuitBreaker;
+            return this;
+        }
+
+        public Builder retryPolicy(AmbariRetryPolicy retryPolicy) {
+            this.retryPolicy = retryPolicy;
+            return this;
+        }
+
+        /**
+         * Sets the executor running the calls submitted with {@link AmbariClient#submit(Callable)}. Defaults to
+         * running them in the calling thread.
+         */
+        public Builder executor(Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        public AmbariClient build() {
+            Preconditions.checkNotNull(this.endpoint, "Endpoint must not be null");
+            Preconditions.checkNotNull(this.credentials, "Credentials must not be null");
+
+            if (this.logLevel == null) {
+                this.logLevel = RestAdapter.LogLevel.NONE;
+            }
+            if (this.wireLog == null) {
+                this.wireLog = new WireLog(100, 0.1, 2048);
+            }
+            // The bootstrap requests carry the SSH private key of the hosts
+            this.wireLog.skipBodies(BootstrapEndpoint.PATH);
+            if (this.metrics == null) {
+                this.metrics = new AmbariClientMetrics();
+            }
+            if (this.retryPolicy == null) {
+                this.retryPolicy = AmbariRetryPolicy.builder().build();
+            }
+            if (this.limiter == null) {
+                this.limiter = AmbariCallLimiter.builder().build();
+            }
+            if (this.circuitBreaker == null) {
+                this.circuitBreaker = AmbariCircuitBreaker.builder().build();
+            }
+            if (this.executor == null) {
+                this.executor = MoreExecutors.sameThreadExecutor();
+            }
+
+            return new AmbariClient(this);
+        }
+    }
+}
@@ -0,0 +1,241 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.brooklyn.ambari.rest;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.brooklyn.util.time.Duration;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Ordering;
+
+/**
+ * Counts the calls made through an {@link AmbariClient}, per endpoint method. Calls are identified by the simple name
+ * of the endpoint interface and the method name, e.g. {@code StackEndpoint.getRecommendations}. Every attempt is
+ * recorded, so a retried call counts several times, and each retry is counted as well.
+ * <p>
+ * The latencies of the most recent attempts of each call are kept in a fixed-size window, from which the
+ * {@link CallStatistics statistics} compute percentiles and throughput. Other sources of calls to the Ambari server,
+ * such as the sensor feeds, can record their polls here too, under a name of their own.
+ */
+public class AmbariClientMetrics implements AmbariClientMetricsMXBean {
+
+    public static final int DEFAULT_WINDOW_SIZE = 1024;
+
+    /**
+     * Throughput is measured over this period, or over the window if it fills up more quickly.
+     */
+    private static final long THROUGHPUT_PERIOD_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final ConcurrentMap<String, Counters> counters = new ConcurrentHashMap<String, Counters>();
+    private final int windowSize;
+    private final Ticker ticker;
+
+    public AmbariClientMetrics() {
+        this(DEFAULT_WINDOW_SIZE, Ticker.systemTicker());
+    }
+
+    @VisibleForTesting
+    AmbariClientMetrics(int windowSize, Ticker ticker) {
+        this.windowSize = windowSize;
+        this.ticker = ticker;
+    }
+
+    public void record(String call, long durationNanos, boolean success) {
+        Counters callCounters = counters(call);
+        callCounters.calls.incrementAndGet();
+        callCounters.totalNanos.addAndGet(durationNanos);
+        if (!success) {
+            callCounters.errors.incrementAndGet();
+        }
+        callCounters.window.add(ticker.read(), durationNanos);
+    }
+
+    /**
+     * Records a failed call whose latency is unknown, e.g. because it never got a response. It counts as a call and an
+     * error, but is left out of the latency percentiles.
+     */
+    public void recordFailure(String call) {
+        Counters callCounters = counters(call);
+        callCounters.calls.incrementAndGet();
+        callCounters.errors.incrementAndGet();
+    }
+
+    public void recordRetry(String call) {
+        counters(call).retries.incrementAndGet();
+    }
+
+    private Counters counters(String call) {
+        Counters callCounters = counters.get(call);
+        if (callCounters == null) {
+            Counters newCounters = new Counters(windowSize);
+            callCounters = counters.putIfAbsent(call, newCounters);
+            if (callCounters == null) {
+                callCounters = newCounters;
+            }
+        }
+        return callCounters;
+    }
+
+    /**
+     * @return the calls recorded so far.
+     */
+    public Set<String> getCalls() {
+        return ImmutableSet.copyOf(counters.keySet());
+    }
+
+    public long getCallCount(String call) {
+        Counters callCounters = counters.get(call);
+        return callCounters != null ? callCounters.calls.get() : 0;
+    }
+
+    public long getRetryCount(String call) {
+        Counters callCounters = counters.get(call);
+        return callCounters != null ? callCounters.retries.get() : 0;
+    }
+
+    public long getErrorCount(String call) {
+        Counters callCounters = counters.get(call);
+        return callCounters != null ? callCounters.errors.get() : 0;
+    }
+
+    /**
+     * @return the cumulated duration of all the recorded attempts of the given call.
+     */
+    public Duration getTotalDuration(String call) {
+        Counters callCounters = counters.get(call);
+        return Duration.of(callCounters != null ? callCounters.totalNanos.get() : 0, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return the statistics of the given call, all zero if it has not been recorded.
+     */
+    public CallStatistics getStatistics(String call) {
+        Counters callCounters = counters.get(call);
+        if (callCounters == null) {
+            return new CallStatistics(call, 0, 0, 0, 0, 0, 0, 0);
+        }
+        return callCounters.statistics(call, ticker.read());
+    }
+
+    /**
+     * @return the statistics of all the calls recorded so far, sorted by call.
+     */
+    @Override
+    public List<CallStatistics> getStatistics() {
+        ImmutableList.Builder<CallStatistics> statistics = ImmutableList.builder();
+        for (String call : Ordering.natural().sortedCopy(counters.keySet())) {
+            statistics.add(getStatistics(call));
+        }
+        return statistics.build();
+    }
+
+    private static class Counters {
+        private final AtomicLong calls = new AtomicLong();
+        private final AtomicLong errors = new AtomicLong();
+        private final AtomicLong retries = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final Window window;
+
+        private Counters(int windowSize) {
+            window = new Window(windowSize);
+        }
+
+        private CallStatistics statistics(String call, long now) {
+            long[] latencies;
+            double throughput;
+            synchronized (window) {
+                latencies = window.latencies();
+                throughput = window.throughput(now);
+            }
+            Arrays.sort(latencies);
+            return new CallStatistics(call, calls.get(), errors.get(), retries.get(),
+                    percentile(latencies, 0.50), percentile(latencies, 0.95), percentile(latencies, 0.99), throughput);
+        }
+    }
+
+    /**
+     * Nearest-rank percentile of sorted latencies, in milliseconds.
+     */
+    @VisibleForTesting
+    static double percentile(long[] sortedLatencies, double fraction) {
+        if (sortedLatencies.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(fraction * sortedLatencies.length);
+        return sortedLatencies[Math.max(rank, 1) - 1] / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * Ring buffer of the completion times and latencies of the most recent attempts of a call.
+     */
+    private static class Window {
+        private final long[] times;
+        private final long[] latencies;
+        private int next;
+        private int size;
+
+        private Window(int capacity) {
+            times = new long[capacity];
+            latencies = new long[capacity];
+        }
+
+        private synchronized void add(long time, long latency) {
+            times[next] = time;
+            latencies[next] = latency;
+            next = (next + 1) % times.length;
+            size = Math.min(size + 1, times.length);
+        }
+
+        private synchronized long[] latencies() {
+            return Arrays.copyOf(latencies, size);
+        }
+
+        /**
+         * @return the number of attempts per second completed during the last throughput period or, if the window does
+         * not reach that far back, since the oldest attempt it holds.
+         */
+        private synchronized double throughput(long now) {
+            long since = now - THROUGHPUT_PERIOD_NANOS;
+            int count = 0;
+            for (int i = 0; i < size; i++) {
+                if (times[i] - since > 0) {
+                    count++;
+                }
+            }
+            if (size == times.length && count == size) {
+                // The oldest attempt only marks the start of the measured period
+                since = times[next];
+                count--;
+            }
+            long elapsed = now - since;
+            return elapsed > 0 ? count * (double) TimeUnit.SECONDS.toNanos(1) / elapsed : 0;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.brooklyn.ambari.rest;
+
+import com.google.gson.Gson;
+
+import retrofit.converter.Converter;
+import retrofit.converter.GsonConverter;
+
+/**
+ * Holds the {@link Gson} instance shared by every Ambari REST client. Gson caches the adapters it builds for the
+ * domain objects per instance: sharing it keeps them from being re-created for each {@link retrofit.RestAdapter}.
+ */
+public final class AmbariGson {
+
+    private static final Gson GSON = new Gson();
+
+    private static final Converter CONVERTER = new GsonConverter(GSON);
+
+    private AmbariGson() {
+    }
+
+    /**
+     * @return the shared {@link Gson} instance.
+     */
+    public static Gson get() {
+        return GSON;
+    }
+
+    /**
+     * @return a Retrofit {@link Converter} backed by the shared {@link Gson} instance.
+     */
+    public static Converter converter() {
+        return CONVERTER;
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.brooklyn.ambari.rest;
+
+import java.lang.reflect.Method;
+import java.net.ConnectException;
+import java.net.UnknownHostException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.brooklyn.util.time.Duration;
+
+import com.google.common.base.Preconditions;
+
+import retrofit.RetrofitError;
+import retrofit.http.DELETE;
+import retrofit.http.GET;
+import retrofit.http.HEAD;
+import retrofit.http.PUT;
+
+/**
+ * Decides which failed calls to the Ambari REST API are retried, and how long to wait before the next attempt.
+ * <p/>
+ * Endpoint methods are classified once, by HTTP method:
+ * <ul>
+ *     <li>{@link Idempotency#IDEMPOTENT} methods ({@link GET}, {@link HEAD}, {@link PUT} and {@link DELETE}, unless
+ *     annotated {@link NonIdempotent}) are retried on any network error and on transient server errors (HTTP 429,
+ *     502, 503 and 504);</li>
+ *     <li>{@link Idempotency#NON_IDEMPOTENT} methods ({@link retrofit.http.POST}, others, and the ones annotated
+ *     {@link NonIdempotent}) are only retried when
+ *     the request is known not to have been applied: the connection could not be established, or the server
+ *     rejected the request with HTTP 429 or 503.</li>
+ * </ul>
+ * The delay before each retry grows exponentially with the attempt number, up to a maximum, and is randomised over
+ * the whole interval ("full jitter") so that calls which failed together do not retry together.
+ */
+public class AmbariRetryPolicy {
+
+    public enum Idempotency {
+        IDEMPOTENT,
+        NON_IDEMPOTENT
+    }
+
+    private final int maxAttempts;
+    private final long baseDelayNanos;
+    private final long maxDelayNanos;
+    private final Random random;
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    protected AmbariRetryPolicy(Builder builder) {
+        this.maxAttempts = builder.maxAttempts;
+        this.baseDelayNanos = builder.baseDelay.toNanoseconds();
+        this.maxDelayNanos = builder.maxDelay.toNanoseconds();
+        this.random = builder.random;
+    }
+
+    public static Idempotency classify(Method method) {
+        return !method.isAnnotationPresent(NonIdempotent.class) && (method.isAnnotationPresent(GET.class) || method.isAnnotationPresent(HEAD.class)
+                || method.isAnnotationPresent(PUT.class) || method.isAnnotationPresent(DELETE.class))
+                ? Idempotency.IDEMPOTENT
+                : Idempotency.NON_IDEMPOTENT;
+    }
+
+    /**
+     * @param idempotency the classification of the endpoint method called.
+     * @param error       the error of the failed attempt.
+     * @param attempt     the number of the failed attempt, starting at 1.
+     * @return true if the call should be attempted again.
+     */
+    public boolean shouldRetry(Idempotency idempotency, RetrofitError error, int attempt) {
+        if (attempt >= maxAttempts) {
+            return false;
+        }
+        int status = error.getResponse() != null ? error.getResponse().getStatus() : 0;
+        switch (error.getKind()) {
+            case NETWORK:
+                return idempotency == Idempotency.IDEMPOTENT || isNotSent(error);
+            case HTTP:
+                return status == 429 || status == 503
+                        || (idempotency == Idempotency.IDEMPOTENT && (status == 502 || status == 504));
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * @param attempt the number of the failed attempt, starting at 1.
+     * @return the delay to wait before the next attempt.
+     */
+    public Duration delayBeforeRetry(int attempt) {
+        int shift = Math.min(attempt - 1, 62);
+        long cap = baseDelayNanos > (maxDelayNanos >> shift) ? maxDelayNanos : baseDelayNanos << shift;
+        synchronized (random) {
+            return Duration.of((long) (random.nextDouble() * cap), TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private static boolean isNotSent(RetrofitError error) {
+        return error.getCause() instanceof ConnectException || error.getCause() instanceof UnknownHostException;
+    }
+
+    public static class Builder {
+
+        private int maxAttempts = 5;
+        private Duration baseDelay = Duration.millis(500);
+        private Duration maxDelay = Duration.TEN_SECONDS;
+        private Random random;
+
+        public Builder maxAttempts(int maxAttempts) {
+            this.maxAttempts = maxAttempts;
+            return this;
+        }
+
+        public Builder baseDelay(Duration baseDelay) {
+            this.baseDelay = baseDelay;
+            return this;
+        }
+
+        public Builder maxDelay(Duration maxDelay) {
+            this.maxDelay = maxDelay;
+            return this;
+        }
+
+        public Builder random(Random random) {
+            this.random = random;
+            return this;
+        }
+
+        public AmbariRetryPolicy build() {
+            Preconditions.checkArgument(this.maxAttempts > 0, "Max attempts must be positive: %s", this.maxAttempts);
+            Preconditions.checkNotNull(this.baseDelay, "Base delay must not be null");
+            Preconditions.checkNotNull(this.maxDelay, "Max delay must not be null");
+
+            if (this.random == null) {
+                this.random = new Random();
+            }
+
+            return new AmbariRetryPolicy(this);
+        }
+    }
+}
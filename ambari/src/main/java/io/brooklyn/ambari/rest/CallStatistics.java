@@ -0,0 +1,127 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.brooklyn.ambari.rest;
+
+import java.beans.ConstructorProperties;
+import java.util.Map;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Snapshot of the {@link AmbariClientMetrics} of a call. Latencies are in milliseconds and computed over the most
+ * recent attempts only, whereas the counts cover all the attempts since the client was created.
+ */
+public class CallStatistics {
+
+    private final String call;
+    private final long count;
+    private final long errors;
+    private final long retries;
+    private final double p50;
+    private final double p95;
+    private final double p99;
+    private final double throughput;
+
+    @ConstructorProperties({"call", "count", "errors", "retries", "p50", "p95", "p99", "throughput"})
+    public CallStatistics(String call, long count, long errors, long retries, double p50, double p95, double p99, double throughput) {
+        this.call = call;
+        this.count = count;
+        this.errors = errors;
+        this.retries = retries;
+        this.p50 = p50;
+        this.p95 = p95;
+        this.p99 = p99;
+        this.throughput = throughput;
+    }
+
+    public String getCall() {
+        return call;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getErrors() {
+        return errors;
+    }
+
+    public long getRetries() {
+        return retries;
+    }
+
+    /**
+     * @return the median latency, in milliseconds.
+     */
+    public double getP50() {
+        return p50;
+    }
+
+    /**
+     * @return the 95th percentile latency, in milliseconds.
+     */
+    public double getP95() {
+        return p95;
+    }
+
+    /**
+     * @return the 99th percentile latency, in milliseconds.
+     */
+    public double getP99() {
+        return p99;
+    }
+
+    /**
+     * @return the number of attempts per second, over the last minute.
+     */
+    public double getThroughput() {
+        return throughput;
+    }
+
+    /**
+     * @return the statistics as a map, keyed by property name, suitable for publishing as a sensor value.
+     */
+    public Map<String, Object> toMap() {
+        return ImmutableMap.<String, Object>builder()
+                .put("count", count)
+                .put("errors", errors)
+                .put("retries", retries)
+                .put("p50", p50)
+                .put("p95", p95)
+                .put("p99", p99)
+                .put("throughput", throughput)
+                .build();
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+                .add("call", call)
+                .add("count", count)
+                .add("errors", errors)
+                .add("retries", retries)
+                .add("p50", p50)
+                .add("p95", p95)
+                .add("p99", p99)
+                .add("throughput", throughput)
+                .toString();
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.brooklyn.ambari.rest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.net.HttpHeaders;
+
+import retrofit.client.Client;
+import retrofit.client.Header;
+import retrofit.client.OkClient;
+import retrofit.client.Request;
+import retrofit.client.Response;
+import retrofit.client.UrlConnectionClient;
+import retrofit.mime.TypedByteArray;
+import retrofit.mime.TypedInput;
+
+/**
+ * Decorates a Retrofit {@link Client} to compress the traffic with the Ambari server:
+ * <ul>
+ *     <li>responses are negotiated with {@code Accept-Encoding: gzip}, and decompressed when the server sent them
+ *     compressed;</li>
+ *     <li>request bodies of at least a given size are optionally sent compressed, with {@code Content-Encoding: gzip}.
+ *     This is off by default, as the server must be configured to accept compressed requests.</li>
+ * </ul>
+ */
+public class GzipClient implements Client {
+
+    private static final String GZIP = "gzip";
+
+    private final Client delegate;
+    private final boolean compressResponses;
+    private final boolean compressRequests;
+    private final long requestThreshold;
+
+    public GzipClient(Client delegate, boolean compressResponses, boolean compressRequests, long requestThreshold) {
+        Preconditions.checkNotNull(delegate, "Client must not be null");
+        this.delegate = delegate;
+        this.compressResponses = compressResponses;
+        this.compressRequests = compressRequests;
+        this.requestThreshold = requestThreshold;
+    }
+
+    /**
+     * @return the client Retrofit would use by default: OkHttp if it is available, {@link java.net.HttpURLConnection}
+     * otherwise.
+     */
+    public static Client defaultClient() {
+        try {
+            Class.forName("com.squareup.okhttp.OkHttpClient");
+            return new OkClient();
+        } catch (ClassNotFoundException e) {
+            return new UrlConnectionClient();
+        }
+    }
+
+    @Override
+    public Response execute(Request request) throws IOException {
+        Response response = delegate.execute(compress(request));
+        return compressResponses ? decompress(response) : response;
+    }
+
+    private Request compress(Request request) throws IOException {
+        ImmutableList.Builder<Header> headers = ImmutableList.<Header>builder().addAll(request.getHeaders());
+        if (compressResponses) {
+            // Setting the header disables the transparent gzip of OkHttp, so responses are always decompressed here
+            headers.add(new Header(HttpHeaders.ACCEPT_ENCODING, GZIP));
+        }
+
+        if (!compressRequests || request.getBody() == null || request.getBody().length() < requestThreshold) {
+            return new Request(request.getMethod(), request.getUrl(), headers.build(), request.getBody());
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream gzip = new GZIPOutputStream(bytes)) {
+            request.getBody().writeTo(gzip);
+        }
+        headers.add(new Header(HttpHeaders.CONTENT_ENCODING, GZIP));
+        return new Request(request.getMethod(), request.getUrl(), headers.build(), new TypedByteArray(request.getBody().mimeType(), bytes.toByteArray()));
+    }
+
+    private Response decompress(Response response) {
+        if (response.getBody() == null || !GZIP.equalsIgnoreCase(getHeader(response.getHeaders(), HttpHeaders.CONTENT_ENCODING))) {
+            return response;
+        }
+
+        ImmutableList.Builder<Header> headers = ImmutableList.builder();
+        for (Header header : response.getHeaders()) {
+            // The body changes, so its encoding and length do not apply anymore
+            if (!StringUtils.equalsIgnoreCase(header.getName(), HttpHeaders.CONTENT_ENCODING)
+                    && !StringUtils.equalsIgnoreCase(header.getName(), HttpHeaders.CONTENT_LENGTH)) {
+                headers.add(header);
+            }
+        }
+        return new Response(response.getUrl(), response.getStatus(), response.getReason(), headers.build(), new GzipTypedInput(response.getBody()));
+    }
+
+    private static String getHeader(List<Header> headers, String name) {
+        for (Header header : headers) {
+            if (StringUtils.equalsIgnoreCase(header.getName(), name)) {
+                return header.getValue();
+            }
+        }
+        return null;
+    }
+
+    private static class GzipTypedInput implements TypedInput {
+
+        private final TypedInput compressed;
+
+        GzipTypedInput(TypedInput compressed) {
+            this.compressed = compressed;
+        }
+
+        @Override
+        public String mimeType() {
+            return compressed.mimeType();
+        }
+
+        @Override
+        public long length() {
+            return -1;
+        }
+
+        @Override
+        public InputStream in() throws IOException {
+            return new GZIPInputStream(compressed.in());
+        }
+    }
+}
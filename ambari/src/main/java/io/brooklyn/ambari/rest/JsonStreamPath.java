@@ -0,0 +1,178 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.brooklyn.ambari.rest;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import javax.annotation.Nullable;
+
+import org.apache.brooklyn.util.collections.MutableList;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.gson.JsonIOException;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
+
+/**
+ * A pre-compiled, JsonPath-like expression evaluated directly on a JSON stream. Only the values matching the path are
+ * materialised, everything else is skipped by the underlying {@link JsonReader}. This avoids building a full tree and
+ * re-parsing it, which matters for large Ambari responses.
+ * <p/>
+ * Supported expressions are dot-separated field names, where a field can be suffixed by {@code [*]} to iterate over
+ * all items of an array, e.g. {@code $.items[*].Hosts.host_name}.
+ */
+public final class JsonStreamPath {
+
+    private static final String ANY_ITEM = "[*]";
+
+    private final String expression;
+    private final List<String> segments;
+
+    private JsonStreamPath(String expression, List<String> segments) {
+        this.expression = expression;
+        this.segments = segments;
+    }
+
+    public static JsonStreamPath compile(String expression) {
+        Preconditions.checkNotNull(expression, "Expression must not be null");
+        Preconditions.checkArgument(expression.startsWith("$."), "Expression must start with \"$.\": %s", expression);
+
+        ImmutableList.Builder<String> builder = ImmutableList.builder();
+        for (String field : expression.substring(2).split("\\.")) {
+            Preconditions.checkArgument(!field.isEmpty(), "Expression must not contain empty fields: %s", expression);
+            if (field.endsWith(ANY_ITEM)) {
+                builder.add(field.substring(0, field.length() - ANY_ITEM.length()));
+                builder.add(ANY_ITEM);
+            } else {
+                builder.add(field);
+            }
+        }
+        return new JsonStreamPath(expression, builder.build());
+    }
+
+    /**
+     * Returns all the scalar values matching this path, as strings. Values that are not scalars are ignored.
+     *
+     * @param json the raw JSON content, encoded in UTF-8.
+     * @return the list of matching values, empty if nothing matched.
+     */
+    public List<String> read(byte[] json) {
+        return read(new ByteArrayInputStream(json));
+    }
+
+    /**
+     * Returns all the scalar values matching this path, as strings, reading the JSON content as it comes. The stream
+     * is read up to the end of the JSON content, and closed.
+     *
+     * @param json the raw JSON content, encoded in UTF-8.
+     * @return the list of matching values, empty if nothing matched.
+     */
+    public List<String> read(InputStream json) {
+        return read(new InputStreamReader(json, StandardCharsets.UTF_8));
+    }
+
+    public List<String> read(Reader json) {
+        List<String> values = MutableList.of();
+        try (JsonReader reader = new JsonReader(json)) {
+            collect(reader, 0, values);
+        } catch (MalformedJsonException | IllegalStateException e) {
+            throw new JsonSyntaxException(e);
+        } catch (IOException e) {
+            throw new JsonIOException(e);
+        }
+        return values;
+    }
+
+    /**
+     * Returns the first scalar value matching this path, as a string.
+     *
+     * @param json the raw JSON content, encoded in UTF-8.
+     * @return the first matching value, or null if nothing matched.
+     */
+    @Nullable
+    public String readFirst(byte[] json) {
+        return Iterables.getFirst(read(json), null);
+    }
+
+    /**
+     * Returns the first scalar value matching this path, as a string, reading the JSON content as it comes.
+     *
+     * @param json the raw JSON content, encoded in UTF-8.
+     * @return the first matching value, or null if nothing matched.
+     */
+    @Nullable
+    public String readFirst(InputStream json) {
+        return Iterables.getFirst(read(json), null);
+    }
+
+    private void collect(JsonReader reader, int depth, List<String> values) throws IOException {
+        JsonToken token = reader.peek();
+
+        if (depth == segments.size()) {
+            if (token == JsonToken.STRING || token == JsonToken.NUMBER || token == JsonToken.BOOLEAN) {
+                values.add(token == JsonToken.BOOLEAN ? String.valueOf(reader.nextBoolean()) : reader.nextString());
+            } else {
+                reader.skipValue();
+            }
+            return;
+        }
+
+        String segment = segments.get(depth);
+        if (ANY_ITEM.equals(segment)) {
+            if (token != JsonToken.BEGIN_ARRAY) {
+                reader.skipValue();
+                return;
+            }
+            reader.beginArray();
+            while (reader.hasNext()) {
+                collect(reader, depth + 1, values);
+            }
+            reader.endArray();
+        } else {
+            if (token != JsonToken.BEGIN_OBJECT) {
+                reader.skipValue();
+                return;
+            }
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (segment.equals(reader.nextName())) {
+                    collect(reader, depth + 1, values);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return expression;
+    }
+}
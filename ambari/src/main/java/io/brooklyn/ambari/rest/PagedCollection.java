@@ -0,0 +1,188 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.brooklyn.ambari.rest;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import javax.annotation.Nullable;
+
+import org.apache.brooklyn.util.stream.Streams;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.AbstractIterator;
+import com.google.gson.JsonIOException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import io.brooklyn.ambari.rest.domain.Blueprint;
+import io.brooklyn.ambari.rest.domain.HostComponent;
+import io.brooklyn.ambari.rest.domain.Request;
+import io.brooklyn.ambari.rest.domain.Service;
+import io.brooklyn.ambari.rest.endpoint.BlueprintEndpoint;
+import io.brooklyn.ambari.rest.endpoint.HostEndpoint;
+import io.brooklyn.ambari.rest.endpoint.RequestEndpoint;
+import io.brooklyn.ambari.rest.endpoint.ServiceEndpoint;
+import retrofit.client.Response;
+
+/**
+ * Iterates over a large Ambari collection, page by page, by using the {@code from} and {@code page_size} query
+ * parameters of the REST API. Each page is streamed: items are deserialised one at a time from the response body, so
+ * at most one item and one page buffer are held in memory, whatever the size of the collection.
+ * <p/>
+ * Each call to {@link #iterator()} starts a new iteration from the first item. An iterator that is not exhausted keeps
+ * its current page's connection open until it is garbage collected, so prefer iterating to the end.
+ *
+ * @param <T> the type of items in the collection.
+ */
+public abstract class PagedCollection<T> implements Iterable<T> {
+
+    public static final int DEFAULT_PAGE_SIZE = 100;
+
+    private final Class<T> itemType;
+    private final int pageSize;
+
+    protected PagedCollection(Class<T> itemType, int pageSize) {
+        Preconditions.checkNotNull(itemType, "Item type must not be null");
+        Preconditions.checkArgument(pageSize > 0, "Page size must be positive: %s", pageSize);
+        this.itemType = itemType;
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Fetches the page of the collection starting at the given offset. The response body must not have been buffered,
+     * i.e. the endpoint method must be annotated with {@link retrofit.http.Streaming}.
+     *
+     * @param from     the offset of the first item of the page.
+     * @param pageSize the maximum number of items in the page.
+     * @return the raw response of the Ambari REST API.
+     */
+    protected abstract Response fetchPage(int from, int pageSize);
+
+    @Override
+    public Iterator<T> iterator() {
+        return new PageIterator();
+    }
+
+    public static Iterable<Request> requests(final RequestEndpoint endpoint, final String cluster, @Nullable final String fields, int pageSize) {
+        return new PagedCollection<Request>(Request.class, pageSize) {
+            @Override
+            protected Response fetchPage(int from, int pageSize) {
+                return endpoint.getRequestsPage(cluster, fields, from, pageSize);
+            }
+        };
+    }
+
+    public static Iterable<HostComponent> hostComponents(final HostEndpoint endpoint, final String cluster, final String host, @Nullable final String fields, int pageSize) {
+        return new PagedCollection<HostComponent>(HostComponent.class, pageSize) {
+            @Override
+            protected Response fetchPage(int from, int pageSize) {
+                return endpoint.getHostComponentsPage(cluster, host, fields, from, pageSize);
+            }
+        };
+    }
+
+    public static Iterable<Service> services(final ServiceEndpoint endpoint, final String cluster, @Nullable final String fields, int pageSize) {
+        return new PagedCollection<Service>(Service.class, pageSize) {
+            @Override
+            protected Response fetchPage(int from, int pageSize) {
+                return endpoint.getServicesPage(cluster, fields, from, pageSize);
+            }
+        };
+    }
+
+    public static Iterable<Blueprint> blueprints(final BlueprintEndpoint endpoint, @Nullable final String fields, int pageSize) {
+        return new PagedCollection<Blueprint>(Blueprint.class, pageSize) {
+            @Override
+            protected Response fetchPage(int from, int pageSize) {
+                return endpoint.getBlueprintsPage(fields, from, pageSize);
+            }
+        };
+    }
+
+    private class PageIterator extends AbstractIterator<T> {
+
+        private JsonReader reader;
+        private int from = 0;
+        private int itemsInPage = 0;
+        private boolean lastPage = false;
+
+        @Override
+        protected T computeNext() {
+            try {
+                while (true) {
+                    if (reader == null) {
+                        if (lastPage || !openPage()) {
+                            return endOfData();
+                        }
+                    }
+                    if (reader.hasNext()) {
+                        itemsInPage++;
+                        return AmbariGson.get().fromJson(reader, itemType);
+                    }
+
+                    // A page shorter than requested is the last one, no need to ask for an empty page
+                    closePage();
+                    lastPage = itemsInPage < pageSize;
+                    from += itemsInPage;
+                    itemsInPage = 0;
+                }
+            } catch (IOException e) {
+                closePage();
+                throw new JsonIOException(e);
+            } catch (RuntimeException e) {
+                closePage();
+                throw e;
+            }
+        }
+
+        /**
+         * Fetches the next page and positions the reader on its first item.
+         *
+         * @return false if the page has no items.
+         */
+        private boolean openPage() throws IOException {
+            Response response = fetchPage(from, pageSize);
+            if (response.getBody() == null) {
+                return false;
+            }
+
+            reader = new JsonReader(new InputStreamReader(response.getBody().in(), StandardCharsets.UTF_8));
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if ("items".equals(reader.nextName()) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                    reader.beginArray();
+                    return true;
+                }
+                reader.skipValue();
+            }
+            closePage();
+            return false;
+        }
+
+        private void closePage() {
+            if (reader != null) {
+                Streams.closeQuietly(reader);
+                reader = null;
+            }
+        }
+    }
+}
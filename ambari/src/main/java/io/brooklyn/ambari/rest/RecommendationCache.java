@@ -0,0 +1,169 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.brooklyn.ambari.rest;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.brooklyn.util.exceptions.Exceptions;
+import org.apache.brooklyn.util.time.Duration;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+import io.brooklyn.ambari.rest.domain.RecommendationWrappers;
+
+/**
+ * Caches the layout recommendations of an Ambari server, which are expensive to compute server-side and only depend
+ * on the stack definitions of the server, the stack and its version, the services to install and the hardware and
+ * operating system of the hosts. A cache must therefore only hold the recommendations of a single server.
+ * <p/>
+ * Recommendations are keyed by a normalised shape: the stack name and version, the set of services and the signature
+ * of each host, in order. A cached recommendation is reused for other hosts of the same shape by substituting the
+ * host names, position by position in the list of hosts given. Every call returns a new copy, which callers are free
+ * to modify.
+ */
+public class RecommendationCache {
+
+    private final Cache<Key, Entry> cache;
+
+    public RecommendationCache(long maximumSize, Duration expireAfterWrite) {
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite.toMilliseconds(), TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    /**
+     * Returns the recommendations for the given hosts and services, calling the given loader only if no
+     * recommendation of the same shape is cached.
+     *
+     * @param hostSignatures the hardware and operating system of each of the given hosts, in the same order, such as
+     *                       {@code centos6/x86_64/4 cpus/16331712 kB}.
+     */
+    public RecommendationWrappers get(String stackName, String stackVersion, List<String> hosts, List<String> hostSignatures,
+                                      List<String> services, final Callable<RecommendationWrappers> loader) {
+        Preconditions.checkNotNull(hosts, "Hosts must not be null");
+        Preconditions.checkNotNull(services, "Services must not be null");
+        Preconditions.checkArgument(hostSignatures.size() == hosts.size(), "Expected %s host signatures, got %s", hosts.size(), hostSignatures.size());
+
+        final List<String> requestedHosts = ImmutableList.copyOf(hosts);
+        Entry entry;
+        try {
+            entry = cache.get(new Key(stackName, stackVersion, services, hostSignatures), new Callable<Entry>() {
+                @Override
+                public Entry call() throws Exception {
+                    return new Entry(AmbariGson.get().toJsonTree(loader.call()), requestedHosts);
+                }
+            });
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            throw Exceptions.propagate(e.getCause());
+        }
+
+        Map<String, String> hostNames = Maps.newHashMap();
+        for (int i = 0; i < requestedHosts.size(); i++) {
+            hostNames.put(entry.hosts.get(i), requestedHosts.get(i));
+        }
+        return AmbariGson.get().fromJson(rebind(entry.json, hostNames), RecommendationWrappers.class);
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    /**
+     * @return a copy of the given JSON element, with every string equal to a key of the given map replaced by its value.
+     */
+    private static JsonElement rebind(JsonElement element, Map<String, String> hostNames) {
+        if (element.isJsonObject()) {
+            JsonObject copy = new JsonObject();
+            for (Map.Entry<String, JsonElement> member : element.getAsJsonObject().entrySet()) {
+                copy.add(member.getKey(), rebind(member.getValue(), hostNames));
+            }
+            return copy;
+        }
+        if (element.isJsonArray()) {
+            JsonArray copy = new JsonArray();
+            for (JsonElement item : element.getAsJsonArray()) {
+                copy.add(rebind(item, hostNames));
+            }
+            return copy;
+        }
+        if (element.isJsonPrimitive() && element.getAsJsonPrimitive().isString() && hostNames.containsKey(element.getAsString())) {
+            return new JsonPrimitive(hostNames.get(element.getAsString()));
+        }
+        // Null and other primitives are immutable, so they can be shared
+        return element;
+    }
+
+    private static class Entry {
+        private final JsonElement json;
+        private final List<String> hosts;
+
+        Entry(JsonElement json, List<String> hosts) {
+            this.json = json;
+            this.hosts = hosts;
+        }
+    }
+
+    private static class Key {
+        private final String stackName;
+        private final String stackVersion;
+        private final Set<String> services;
+        private final List<String> hostSignatures;
+
+        Key(String stackName, String stackVersion, List<String> services, List<String> hostSignatures) {
+            this.stackName = stackName;
+            this.stackVersion = stackVersion;
+            this.services = ImmutableSortedSet.copyOf(services);
+            this.hostSignatures = ImmutableList.copyOf(hostSignatures);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return Objects.equal(stackName, key.stackName)
+                    && Objects.equal(stackVersion, key.stackVersion)
+                    && Objects.equal(services, key.services)
+                    && Objects.equal(hostSignatures, key.hostSignatures);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(stackName, stackVersion, services, hostSignatures);
+        }
+    }
+}
@@ -33,13 +33,13 @@ import org.apache.http.client.HttpClient;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
-import com.jayway.jsonpath.JsonPath;
 
 import io.brooklyn.ambari.rest.domain.Request;
 
 public class RequestCheckRunnable implements Runnable {
 
     private static final List<String> VALID_STATES = ImmutableList.of("IN_PROGRESS", "COMPLETED");
+    private static final JsonStreamPath REQUEST_STATUS_PATH = JsonStreamPath.compile("$.Requests.request_status");
 
     private final Builder builder;
 
@@ -53,13 +53,17 @@ public class RequestCheckRunnable implements Runnable {
 
     @Override
     public void run() {
+        // Only the status is checked, so restrict the fields returned by Ambari to keep the payload small
+        final String href = builder.request.getHref();
+        final URI statusUri = URI.create(href + (href.contains("?") ? "&" : "?") + "fields=Requests/request_status");
+
         boolean done = Repeater.create(String.format("Request %s status check", builder.request.toString()))
                 .every(Duration.ONE_SECOND)
                 .until(new Callable<Boolean>() {
                     @Override
                     public Boolean call() throws Exception {
-                        final String json = HttpTool.httpGet(builder.httpClient, URI.create(builder.request.getHref()), builder.headers).getContentAsString();
-                        final String status = JsonPath.read(json, "$.Requests.request_status");
+                        final byte[] json = HttpTool.httpGet(builder.httpClient, statusUri, builder.headers).getContent();
+                        final String status = REQUEST_STATUS_PATH.readFirst(json);
                         if (!VALID_STATES.contains(status)) {
                             throw new RuntimeException(builder.errorMessage);
                         }
@@ -0,0 +1,377 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.brooklyn.ambari.rest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.brooklyn.util.time.Duration;
+import org.apache.brooklyn.util.time.Time;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+
+import retrofit.client.Client;
+import retrofit.client.Request;
+import retrofit.client.Response;
+import retrofit.mime.TypedInput;
+
+/**
+ * Keeps the most recent exchanges with an Ambari server in a bounded, in-memory ring buffer, for diagnostics.
+ * <p/>
+ * Failed exchanges, i.e. HTTP errors and network errors, are always kept, while successful ones are sampled at a
+ * given rate. Only the first bytes of the request and response bodies are kept: the response body is copied as the
+ * caller reads it, so it is neither buffered nor read twice. Exchanges which are not sampled cost nothing but a random
+ * draw.
+ * <p/>
+ * The values of the JSON string fields whose name matches {@link #maskFields(Pattern) the masked fields}, by default
+ * {@link #DEFAULT_MASKED_FIELDS} (passwords, secrets and keys), are masked in the recorded bodies. The request bodies
+ * of the {@link #skipBodies(String) skipped paths} are not recorded at all.
+ */
+public class WireLog {
+
+    public static final Pattern DEFAULT_MASKED_FIELDS = Pattern.compile("(?i).*(password|passwd|secret|credential|ssh_?key|private_?key).*");
+    public static final String MASK = "****";
+
+    // A JSON string field; the closing quote of the value is optional, as bodies may be truncated
+    private static final Pattern JSON_STRING_FIELD = Pattern.compile("\"((?:[^\"\\\\]|\\\\.)*)\"(\\s*:\\s*)\"(?:[^\"\\\\]|\\\\.)*\"?");
+
+    private final int capacity;
+    private final double sampleRate;
+    private final int maxBodySize;
+    private final Random random;
+    private final Deque<Exchange> exchanges;
+    private final Set<String> skippedPaths = new CopyOnWriteArraySet<String>();
+    private volatile Pattern maskedFields = DEFAULT_MASKED_FIELDS;
+
+    public WireLog(int capacity, double sampleRate, int maxBodySize) {
+        this(capacity, sampleRate, maxBodySize, new Random());
+    }
+
+    WireLog(int capacity, double sampleRate, int maxBodySize, Random random) {
+        Preconditions.checkArgument(capacity >= 0, "Capacity must not be negative: %s", capacity);
+        Preconditions.checkArgument(maxBodySize >= 0, "Max body size must not be negative: %s", maxBodySize);
+        this.capacity = capacity;
+        this.sampleRate = sampleRate;
+        this.maxBodySize = maxBodySize;
+        this.random = random;
+        this.exchanges = new ArrayDeque<Exchange>(capacity);
+    }
+
+    /**
+     * Masks the values of the JSON string fields whose name matches the given pattern, instead of
+     * {@link #DEFAULT_MASKED_FIELDS}.
+     *
+     * @return this log.
+     */
+    public WireLog maskFields(Pattern maskedFields) {
+        this.maskedFields = Preconditions.checkNotNull(maskedFields, "maskedFields");
+        return this;
+    }
+
+    /**
+     * Does not record the request bodies sent to the URLs whose path starts with the given one, such as
+     * {@code /api/v1/bootstrap}, whose body carries an SSH private key.
+     *
+     * @return this log.
+     */
+    public WireLog skipBodies(String pathPrefix) {
+        skippedPaths.add(pathPrefix);
+        return this;
+    }
+
+    /**
+     * @return a client recording the exchanges made through the given one in this log.
+     */
+    public Client wrap(final Client delegate) {
+        return new Client() {
+            @Override
+            public Response execute(Request request) throws IOException {
+                long start = System.nanoTime();
+                Response response;
+                try {
+                    response = delegate.execute(request);
+                } catch (IOException | RuntimeException e) {
+                    if (capacity > 0) {
+                        add(new Exchange(request, null, e, System.nanoTime() - start));
+                    }
+                    throw e;
+                }
+                if (capacity == 0 || (response.getStatus() < 400 && !sampled())) {
+                    return response;
+                }
+                Exchange exchange = new Exchange(request, response, null, System.nanoTime() - start);
+                add(exchange);
+                return response.getBody() == null ? response : new Response(response.getUrl(), response.getStatus(), response.getReason(),
+                        response.getHeaders(), new RecordingTypedInput(response.getBody(), exchange.responseBody));
+            }
+        };
+    }
+
+    /**
+     * @return the recorded exchanges, oldest first.
+     */
+    public List<Exchange> getExchanges() {
+        synchronized (exchanges) {
+            return ImmutableList.copyOf(exchanges);
+        }
+    }
+
+    /**
+     * @return a human readable dump of the recorded exchanges, oldest first.
+     */
+    public String dump() {
+        StringBuilder dump = new StringBuilder();
+        for (Exchange exchange : getExchanges()) {
+            dump.append(exchange).append('\n');
+        }
+        return dump.toString();
+    }
+
+    /**
+     * @return the given body, with the values of the masked fields replaced by {@link #MASK}.
+     */
+    String redact(String body) {
+        Pattern fields = maskedFields;
+        Matcher matcher = JSON_STRING_FIELD.matcher(body);
+        StringBuffer redacted = null;
+        while (matcher.find()) {
+            if (fields.matcher(matcher.group(1)).matches()) {
+                if (redacted == null) {
+                    redacted = new StringBuffer(body.length());
+                }
+                matcher.appendReplacement(redacted, Matcher.quoteReplacement("\"" + matcher.group(1) + "\"" + matcher.group(2) + "\"" + MASK + "\""));
+            }
+        }
+        if (redacted == null) {
+            return body;
+        }
+        matcher.appendTail(redacted);
+        return redacted.toString();
+    }
+
+    private boolean isSkipped(String url) {
+        String path = URI.create(url).getRawPath();
+        for (String skippedPath : skippedPaths) {
+            if (path != null && path.startsWith(skippedPath)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean sampled() {
+        synchronized (random) {
+            return random.nextDouble() < sampleRate;
+        }
+    }
+
+    private void add(Exchange exchange) {
+        synchronized (exchanges) {
+            if (exchanges.size() == capacity) {
+                exchanges.removeFirst();
+            }
+            exchanges.addLast(exchange);
+        }
+    }
+
+    private static final int REDACTION_MARGIN = 256;
+    private static final byte[] SKIPPED_BODY = "[not recorded]".getBytes(StandardCharsets.UTF_8);
+
+    public class Exchange {
+
+        private final long timestamp = System.currentTimeMillis();
+        private final String method;
+        private final String url;
+        private final String outcome;
+        private final Duration duration;
+        private final BoundedBuffer requestBody = new BoundedBuffer(maxBodySize);
+        private final BoundedBuffer responseBody = new BoundedBuffer(maxBodySize);
+
+        Exchange(Request request, Response response, Exception error, long durationNanos) {
+            this.method = request.getMethod();
+            this.url = request.getUrl();
+            this.outcome = response != null ? response.getStatus() + " " + response.getReason() : error.toString();
+            this.duration = Duration.of(durationNanos, TimeUnit.NANOSECONDS);
+            if (request.getBody() != null) {
+                if (isSkipped(url)) {
+                    requestBody.write(SKIPPED_BODY, 0, SKIPPED_BODY.length);
+                } else {
+                    // Only the kept prefix is redacted; the margin lets a masked field cut by the truncation still be
+                    // recognised, even though masking it makes the prefix longer
+                    BoundedBuffer body = new BoundedBuffer(maxBodySize + REDACTION_MARGIN);
+                    try {
+                        request.getBody().writeTo(body);
+                    } catch (IOException e) {
+                        // The body is kept only for diagnostics: ignore the failure, and keep what could be copied
+                    }
+                    byte[] redacted = redact(body.getKept()).getBytes(StandardCharsets.UTF_8);
+                    requestBody.write(redacted, 0, redacted.length);
+                    requestBody.setSize(body.getSize());
+                }
+            }
+        }
+
+        public String getMethod() {
+            return method;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        public String getOutcome() {
+            return outcome;
+        }
+
+        public String getRequestBody() {
+            return requestBody.toString();
+        }
+
+        public String getResponseBody() {
+            return redact(responseBody.toString());
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder exchange = new StringBuilder()
+                    .append(Time.makeDateString(timestamp)).append(' ').append(method).append(' ').append(url)
+                    .append(" -> ").append(outcome).append(" (").append(duration).append(")\n");
+            if (!requestBody.isEmpty()) {
+                exchange.append("> ").append(requestBody).append('\n');
+            }
+            if (!responseBody.isEmpty()) {
+                exchange.append("< ").append(getResponseBody()).append('\n');
+            }
+            return exchange.toString();
+        }
+    }
+
+    /**
+     * Keeps the first bytes written to it, and counts the others.
+     */
+    private static class BoundedBuffer extends OutputStream {
+
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final int maxSize;
+        private long size;
+
+        BoundedBuffer(int maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        public synchronized void write(int b) {
+            if (size++ < maxSize) {
+                bytes.write(b);
+            }
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) {
+            int kept = (int) Math.max(0, Math.min(len, maxSize - size));
+            bytes.write(b, off, kept);
+            size += len;
+        }
+
+        synchronized boolean isEmpty() {
+            return size == 0;
+        }
+
+        synchronized long getSize() {
+            return size;
+        }
+
+        /**
+         * Sets the number of bytes written, when the kept ones were rewritten from another buffer.
+         */
+        synchronized void setSize(long size) {
+            this.size = Math.max(this.size, size);
+        }
+
+        synchronized String getKept() {
+            return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public synchronized String toString() {
+            String kept = getKept();
+            return size > maxSize ? kept + "... [" + size + " bytes]" : kept;
+        }
+    }
+
+    private static class RecordingTypedInput implements TypedInput {
+
+        private final TypedInput delegate;
+        private final BoundedBuffer buffer;
+
+        RecordingTypedInput(TypedInput delegate, BoundedBuffer buffer) {
+            this.delegate = delegate;
+            this.buffer = buffer;
+        }
+
+        @Override
+        public String mimeType() {
+            return delegate.mimeType();
+        }
+
+        @Override
+        public long length() {
+            return delegate.length();
+        }
+
+        @Override
+        public InputStream in() throws IOException {
+            return new FilterInputStream(delegate.in()) {
+                @Override
+                public int read() throws IOException {
+                    int b = super.read();
+                    if (b >= 0) {
+                        buffer.write(b);
+                    }
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    int read = super.read(b, off, len);
+                    if (read > 0) {
+                        buffer.write(b, off, read);
+                    }
+                    return read;
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.brooklyn.ambari.rest.domain;
+
+import java.util.List;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.apache.brooklyn.util.collections.MutableList;
+
+import com.google.gson.annotations.SerializedName;
+
+/**
+ * A request of the Ambari bootstrap API, which installs and starts agents on hosts over SSH from the server.
+ */
+public class Bootstrap {
+
+    public static final String STATUS_RUNNING = "RUNNING";
+    public static final String HOST_STATUS_DONE = "DONE";
+
+    @SerializedName("requestId")
+    private long requestId;
+
+    @SerializedName("status")
+    private String status;
+
+    @SerializedName("log")
+    private String log;
+
+    @SerializedName("hostsStatus")
+    private List<HostStatus> hostsStatus;
+
+    public Bootstrap() {
+        this.hostsStatus = MutableList.of();
+    }
+
+    public long getRequestId() {
+        return requestId;
+    }
+
+    /**
+     * @return the status of the request, e.g. {@code OK} once accepted, then {@code RUNNING}, {@code SUCCESS} or
+     * {@code ERROR}.
+     */
+    @Nullable
+    public String getStatus() {
+        return status;
+    }
+
+    @Nullable
+    public String getLog() {
+        return log;
+    }
+
+    @Nonnull
+    public List<HostStatus> getHostsStatus() {
+        return hostsStatus;
+    }
+
+    public static class HostStatus {
+
+        @SerializedName("hostName")
+        private String hostName;
+
+        @SerializedName("status")
+        private String status;
+
+        @SerializedName("statusCode")
+        private String statusCode;
+
+        @SerializedName("statusAction")
+        private String statusAction;
+
+        @SerializedName("log")
+        private String log;
+
+        public HostStatus() {
+        }
+
+        public HostStatus(String hostName, String status, String log) {
+            this.hostName = hostName;
+            this.status = status;
+            this.log = log;
+        }
+
+        @Nullable
+        public String getHostName() {
+            return hostName;
+        }
+
+        /**
+         * @return the status of the host, {@code RUNNING}, {@code DONE} or {@code FAILED}.
+         */
+        @Nullable
+        public String getStatus() {
+            return status;
+        }
+
+        @Nullable
+        public String getStatusCode() {
+            return statusCode;
+        }
+
+        @Nullable
+        public String getStatusAction() {
+            return statusAction;
+        }
+
+        @Nullable
+        public String getLog() {
+            return log;
+        }
+    }
+}
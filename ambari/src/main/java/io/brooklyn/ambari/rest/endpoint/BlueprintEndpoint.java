@@ -28,12 +28,32 @@ import retrofit.http.Body;
 import retrofit.http.GET;
 import retrofit.http.POST;
 import retrofit.http.Path;
+import retrofit.http.Query;
+import retrofit.http.QueryMap;
+import retrofit.http.Streaming;
 
 public interface BlueprintEndpoint {
 
     @GET("/api/v1/blueprints")
     Blueprints getBlueprints();
 
+    /**
+     * Same as {@link #getBlueprints()} but restricts the response to the given fields and resources matching the given predicates.
+     *
+     * @param fields     comma-separated list of fields to return, e.g. {@code Blueprints/blueprint_name}, or null for all fields.
+     * @param predicates map of predicates the returned resources must match, e.g. {@code Blueprints/stack_name=HDP}. May be empty.
+     */
+    @GET("/api/v1/blueprints")
+    Blueprints getBlueprints(@Query(value = "fields", encodeValue = false) String fields, @QueryMap Map<String, String> predicates);
+
+    /**
+     * Returns a single page of blueprints, with its body left unbuffered. Use
+     * {@link io.brooklyn.ambari.rest.PagedCollection#blueprints(BlueprintEndpoint, String, int)} to iterate over all of them.
+     */
+    @Streaming
+    @GET("/api/v1/blueprints")
+    Response getBlueprintsPage(@Query(value = "fields", encodeValue = false) String fields, @Query("from") int from, @Query("page_size") int pageSize);
+
     @GET("/api/v1/blueprints/{blueprint}")
     Blueprint getBlueprint(@Path("blueprint") String blueprint);
 
@@ -0,0 +1,45 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.brooklyn.ambari.rest.endpoint;
+
+import java.util.Map;
+
+import io.brooklyn.ambari.rest.domain.Bootstrap;
+import retrofit.http.Body;
+import retrofit.http.GET;
+import retrofit.http.POST;
+import retrofit.http.Path;
+
+public interface BootstrapEndpoint {
+
+    String PATH = "/api/v1/bootstrap";
+
+    /**
+     * Asks the server to install and start agents on the given hosts, over SSH.
+     *
+     * @param body the bootstrap request, with the {@code hosts}, the SSH {@code user} and private {@code sshKey}.
+     * @return the accepted request, whose id identifies it in {@link #getBootstrap(long)}.
+     */
+    @POST(PATH)
+    Bootstrap bootstrap(@Body Map body);
+
+    @GET(PATH + "/{id}")
+    Bootstrap getBootstrap(@Path("id") long id);
+}
@@ -21,6 +21,7 @@ package io.brooklyn.ambari.rest.endpoint;
 
 import java.util.Map;
 
+import io.brooklyn.ambari.rest.NonIdempotent;
 import io.brooklyn.ambari.rest.domain.Configurations;
 import retrofit.client.Response;
 import retrofit.http.Body;
@@ -34,6 +35,10 @@ public interface ConfigurationEnpoint {
     @GET("/api/v1/clusters/{cluster}/configurations")
     Configurations getConfigurations(@Path("cluster") String cluster, @Query("type") String type, @Query("tag") String tag);
 
+    /**
+     * Creates a configuration with a new tag: sending it again is rejected, as the tag already exists.
+     */
+    @NonIdempotent
     @PUT("/api/v1/clusters/{cluster}")
     Response createConfiguration(@Path("cluster") String cluster, @Body Map body);
 }
@@ -19,20 +19,58 @@
 
 package io.brooklyn.ambari.rest.endpoint;
 
+import java.util.Map;
+
+import com.google.gson.JsonObject;
+
 import io.brooklyn.ambari.rest.domain.HostComponents;
 import retrofit.client.Response;
 import retrofit.http.GET;
 import retrofit.http.POST;
 import retrofit.http.Path;
+import retrofit.http.Query;
+import retrofit.http.QueryMap;
+import retrofit.http.Streaming;
 
 public interface HostEndpoint {
 
+    /**
+     * Returns the hosts registered with the server, restricted to the given fields, e.g.
+     * {@code Hosts/host_name,Hosts/cpu_count,Hosts/total_mem}.
+     */
+    @GET("/api/v1/hosts")
+    JsonObject getHosts(@Query(value = "fields", encodeValue = false) String fields);
+
+    /**
+     * Same as {@link #getHosts(String)} but leaves the body to the caller, e.g. to pick values out of it with a
+     * {@link io.brooklyn.ambari.rest.JsonStreamPath}.
+     */
+    @GET("/api/v1/hosts")
+    Response getHostsBody(@Query(value = "fields", encodeValue = false) String fields);
+
     @POST("/api/v1/clusters/{cluster}/hosts/{host}")
     Response addHost(@Path("cluster") String cluster, @Path("host") String host);
 
     @GET("/api/v1/clusters/{cluster}/hosts/{host}/host_components")
     HostComponents getHostComponents(@Path("cluster") String cluster, @Path("host") String host);
 
+    /**
+     * Same as {@link #getHostComponents(String, String)} but restricts the response to the given fields and resources matching the given predicates.
+     *
+     * @param fields     comma-separated list of fields to return, e.g. {@code HostRoles/component_name,HostRoles/state}, or null for all fields.
+     * @param predicates map of predicates the returned resources must match, e.g. {@code HostRoles/state=INSTALLED}. May be empty.
+     */
+    @GET("/api/v1/clusters/{cluster}/hosts/{host}/host_components")
+    HostComponents getHostComponents(@Path("cluster") String cluster, @Path("host") String host, @Query(value = "fields", encodeValue = false) String fields, @QueryMap Map<String, String> predicates);
+
+    /**
+     * Returns a single page of host components, with its body left unbuffered. Use
+     * {@link io.brooklyn.ambari.rest.PagedCollection#hostComponents(HostEndpoint, String, String, String, int)} to iterate over all of them.
+     */
+    @Streaming
+    @GET("/api/v1/clusters/{cluster}/hosts/{host}/host_components")
+    Response getHostComponentsPage(@Path("cluster") String cluster, @Path("host") String host, @Query(value = "fields", encodeValue = false) String fields, @Query("from") int from, @Query("page_size") int pageSize);
+
     @POST("/api/v1/clusters/{cluster}/hosts/{host}/host_components/{component}")
     Response createHostComponent(@Path("cluster") String cluster, @Path("host") String host, @Path("component") String component);
 }
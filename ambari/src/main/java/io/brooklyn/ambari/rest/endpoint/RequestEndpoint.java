@@ -19,16 +19,46 @@
 
 package io.brooklyn.ambari.rest.endpoint;
 
+import java.util.Map;
+
 import io.brooklyn.ambari.rest.domain.Request;
 import io.brooklyn.ambari.rest.domain.Requests;
+import retrofit.client.Response;
 import retrofit.http.GET;
 import retrofit.http.Path;
+import retrofit.http.Query;
+import retrofit.http.QueryMap;
+import retrofit.http.Streaming;
 
 public interface RequestEndpoint {
 
     @GET("/api/v1/clusters/{cluster}/requests")
     Requests getRequests(@Path("cluster") String cluster);
 
+    /**
+     * Same as {@link #getRequests(String)} but restricts the response to the given fields and resources matching the given predicates.
+     *
+     * @param fields     comma-separated list of fields to return, e.g. {@code Requests/id,Requests/request_status}, or null for all fields.
+     * @param predicates map of predicates the returned resources must match, e.g. {@code Requests/request_status=FAILED}. May be empty.
+     */
+    @GET("/api/v1/clusters/{cluster}/requests")
+    Requests getRequests(@Path("cluster") String cluster, @Query(value = "fields", encodeValue = false) String fields, @QueryMap Map<String, String> predicates);
+
+    /**
+     * Returns a single page of requests, with its body left unbuffered. Use
+     * {@link io.brooklyn.ambari.rest.PagedCollection#requests(RequestEndpoint, String, String, int)} to iterate over all of them.
+     */
+    @Streaming
+    @GET("/api/v1/clusters/{cluster}/requests")
+    Response getRequestsPage(@Path("cluster") String cluster, @Query(value = "fields", encodeValue = false) String fields, @Query("from") int from, @Query("page_size") int pageSize);
+
     @GET("/api/v1/clusters/{cluster}/requests/{id}")
     Request getRequest(@Path("cluster") String cluster, @Path("id") int id);
+
+    /**
+     * Same as {@link #getRequest(String, int)} but restricts the response to the given fields, e.g.
+     * {@code Requests/request_status}, and leaves the body to the caller.
+     */
+    @GET("/api/v1/clusters/{cluster}/requests/{id}")
+    Response getRequestBody(@Path("cluster") String cluster, @Path("id") int id, @Query(value = "fields", encodeValue = false) String fields);
 }
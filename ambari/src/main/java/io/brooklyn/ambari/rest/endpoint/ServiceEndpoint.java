@@ -21,6 +21,7 @@ package io.brooklyn.ambari.rest.endpoint;
 
 import java.util.Map;
 
+import io.brooklyn.ambari.rest.NonIdempotent;
 import io.brooklyn.ambari.rest.domain.Request;
 import io.brooklyn.ambari.rest.domain.ServiceComponents;
 import io.brooklyn.ambari.rest.domain.Services;
@@ -30,18 +31,51 @@ import retrofit.http.GET;
 import retrofit.http.POST;
 import retrofit.http.PUT;
 import retrofit.http.Path;
+import retrofit.http.Query;
+import retrofit.http.QueryMap;
+import retrofit.http.Streaming;
 
 public interface ServiceEndpoint {
 
     @GET("/api/v1/clusters/{cluster}")
     Services getServices(@Path("cluster") String cluster);
 
+    /**
+     * Same as {@link #getServices(String)} but restricts the response to the given fields and resources matching the given predicates.
+     *
+     * @param fields     comma-separated list of fields to return, e.g. {@code services/ServiceInfo/service_name}, or null for all fields.
+     * @param predicates map of predicates the returned resources must match, e.g. {@code services/ServiceInfo/state=STARTED}. May be empty.
+     */
+    @GET("/api/v1/clusters/{cluster}")
+    Services getServices(@Path("cluster") String cluster, @Query(value = "fields", encodeValue = false) String fields, @QueryMap Map<String, String> predicates);
+
+    /**
+     * Returns a single page of services, with its body left unbuffered. Use
+     * {@link io.brooklyn.ambari.rest.PagedCollection#services(ServiceEndpoint, String, String, int)} to iterate over all of them.
+     */
+    @Streaming
+    @GET("/api/v1/clusters/{cluster}/services")
+    Response getServicesPage(@Path("cluster") String cluster, @Query(value = "fields", encodeValue = false) String fields, @Query("from") int from, @Query("page_size") int pageSize);
+
     @GET("/api/v1/clusters/{cluster}/services/{service}")
     ServiceComponents getServiceComponents(@Path("cluster") String cluster, @Path("service") String service);
 
+    /**
+     * Same as {@link #getServiceComponents(String, String)} but restricts the response to the given fields and resources matching the given predicates.
+     *
+     * @param fields     comma-separated list of fields to return, e.g. {@code components/ServiceComponentInfo/component_name}, or null for all fields.
+     * @param predicates map of predicates the returned resources must match, e.g. {@code components/ServiceComponentInfo/category=MASTER}. May be empty.
+     */
+    @GET("/api/v1/clusters/{cluster}/services/{service}")
+    ServiceComponents getServiceComponents(@Path("cluster") String cluster, @Path("service") String service, @Query(value = "fields", encodeValue = false) String fields, @QueryMap Map<String, String> predicates);
+
     @POST("/api/v1/clusters/{cluster}/services/{service}")
     Response addService(@Path("cluster") String cluster, @Path("service") String service);
 
+    /**
+     * Changes the state of the service: every call starts a new request.
+     */
+    @NonIdempotent
     @PUT("/api/v1/clusters/{cluster}/services/{service}")
     Request updateService(@Path("cluster") String cluster, @Path("service") String service, @Body Map body);
 
@@ -21,9 +21,12 @@ package io.brooklyn.ambari.rest.endpoint;
 
 import java.util.Map;
 
+import com.google.gson.JsonObject;
+
 import io.brooklyn.ambari.rest.domain.RecommendationWrappers;
 import retrofit.client.Response;
 import retrofit.http.Body;
+import retrofit.http.GET;
 import retrofit.http.POST;
 import retrofit.http.PUT;
 import retrofit.http.Path;
@@ -33,6 +36,9 @@ public interface StackEndpoint {
     @POST("/api/v1/stacks/{stack}/versions/{version}/recommendations")
     RecommendationWrappers getRecommendations(@Path("stack") String stack, @Path("version") String version, @Body Map body);
 
+    @GET("/api/v1/stacks/{stack}/versions/{version}/operating_systems?fields=repositories/Repositories/base_url")
+    JsonObject getStackRepositories(@Path("stack") String stack, @Path("version") String version);
+
     @PUT("/api/v1/stacks/{stack}/versions/{version}/operating_systems/{os}/repositories/{repository}")
     Response updateStackRepository(@Path("stack") String stack, @Path("version") String version, @Path("os") String os, @Path("repository") String repository, @Body Map body);
 }
@@ -0,0 +1,212 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.brooklyn.ambari.server;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.brooklyn.util.exceptions.Exceptions;
+import org.apache.brooklyn.util.time.Duration;
+import org.apache.brooklyn.util.time.Time;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.SettableFuture;
+
+import io.brooklyn.ambari.rest.domain.Bootstrap;
+import io.brooklyn.ambari.rest.endpoint.BootstrapEndpoint;
+
+/**
+ * Installs and starts Ambari agents through the bootstrap API of the server, which does the SSH fan-out to the hosts
+ * itself. The hosts asking to be bootstrapped with the same credentials within a short window are sent in a single
+ * bootstrap request: the first caller of a batch waits for the window to elapse, sends the request and tracks it until
+ * it completes, while the other callers wait for the outcome of their host.
+ */
+public class AgentBootstrapper {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AgentBootstrapper.class);
+
+    private final BootstrapEndpoint endpoint;
+    private final Duration batchWindow;
+    private final Duration pollPeriod;
+    private final Duration timeout;
+
+    // Batches still accepting hosts, guarded by this
+    private final Map<Credentials, Map<String, SettableFuture<Bootstrap.HostStatus>>> pending = Maps.newHashMap();
+
+    public AgentBootstrapper(BootstrapEndpoint endpoint, Duration batchWindow, Duration pollPeriod, Duration timeout) {
+        this.endpoint = Preconditions.checkNotNull(endpoint, "endpoint");
+        this.batchWindow = Preconditions.checkNotNull(batchWindow, "batchWindow");
+        this.pollPeriod = Preconditions.checkNotNull(pollPeriod, "pollPeriod");
+        this.timeout = Preconditions.checkNotNull(timeout, "timeout");
+    }
+
+    /**
+     * Bootstraps the agent on the given host, and blocks until done.
+     *
+     * @param host   the address the server connects to over SSH.
+     * @param user   the SSH user, which must be able to sudo.
+     * @param sshKey the private key of the SSH user.
+     * @return the final status of the host.
+     * @throws IllegalStateException if the agent could not be bootstrapped.
+     */
+    public Bootstrap.HostStatus bootstrap(String host, String user, String sshKey) {
+        Credentials credentials = new Credentials(user, sshKey);
+        SettableFuture<Bootstrap.HostStatus> future = SettableFuture.create();
+        Map<String, SettableFuture<Bootstrap.HostStatus>> batch;
+        boolean leader;
+        synchronized (this) {
+            batch = pending.get(credentials);
+            leader = batch == null;
+            if (leader) {
+                batch = Maps.newLinkedHashMap();
+                pending.put(credentials, batch);
+            }
+            if (batch.containsKey(host)) {
+                // The same host asked twice: both callers get the same outcome
+                future = batch.get(host);
+            } else {
+                batch.put(host, future);
+            }
+        }
+
+        if (leader) {
+            try {
+                Time.sleep(batchWindow);
+                close(credentials, batch);
+                run(credentials, batch);
+            } finally {
+                // The leader may be interrupted before sending the request: never leave the other callers waiting
+                close(credentials, batch);
+                for (Map.Entry<String, SettableFuture<Bootstrap.HostStatus>> entry : batch.entrySet()) {
+                    entry.getValue().setException(new IllegalStateException(String.format(
+                            "Bootstrap of the Ambari agent on %s aborted", entry.getKey())));
+                }
+            }
+        }
+
+        // The leader completes the batch within the tracking timeout, plus the window and the bootstrap call itself
+        Duration maxWait = batchWindow.add(timeout).add(Duration.ONE_MINUTE);
+        try {
+            return future.get(maxWait.toMilliseconds(), TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            throw Exceptions.propagate(e.getCause());
+        } catch (TimeoutException e) {
+            throw new IllegalStateException(String.format("Bootstrap of the Ambari agent on %s not completed after %s", host, maxWait));
+        } catch (InterruptedException e) {
+            throw Exceptions.propagate(e);
+        }
+    }
+
+    /**
+     * Stops the given batch from accepting hosts, if it still does.
+     */
+    private synchronized void close(Credentials credentials, Map<String, SettableFuture<Bootstrap.HostStatus>> batch) {
+        if (pending.get(credentials) == batch) {
+            pending.remove(credentials);
+        }
+    }
+
+    private void run(Credentials credentials, Map<String, SettableFuture<Bootstrap.HostStatus>> batch) {
+        List<String> hosts = ImmutableList.copyOf(batch.keySet());
+        try {
+            Bootstrap request = endpoint.bootstrap(ImmutableMap.builder()
+                    .put("verbose", true)
+                    .put("hosts", hosts)
+                    .put("user", credentials.user)
+                    .put("sshKey", credentials.sshKey)
+                    .build());
+            LOG.info("Bootstrapping Ambari agents on {} hosts with request {}", hosts.size(), request.getRequestId());
+
+            Bootstrap status = track(request.getRequestId());
+            Map<String, Bootstrap.HostStatus> hostsStatus = Maps.newHashMap();
+            for (Bootstrap.HostStatus hostStatus : status.getHostsStatus()) {
+                hostsStatus.put(hostStatus.getHostName(), hostStatus);
+            }
+            for (Map.Entry<String, SettableFuture<Bootstrap.HostStatus>> entry : batch.entrySet()) {
+                Bootstrap.HostStatus hostStatus = hostsStatus.get(entry.getKey());
+                if (hostStatus != null && Bootstrap.HOST_STATUS_DONE.equals(hostStatus.getStatus())) {
+                    entry.getValue().set(hostStatus);
+                } else {
+                    entry.getValue().setException(new IllegalStateException(String.format(
+                            "Bootstrap of the Ambari agent on %s failed with status %s: %s",
+                            entry.getKey(),
+                            hostStatus != null ? hostStatus.getStatus() : status.getStatus(),
+                            hostStatus != null ? hostStatus.getLog() : status.getLog())));
+                }
+            }
+        } catch (RuntimeException e) {
+            for (SettableFuture<Bootstrap.HostStatus> future : batch.values()) {
+                future.setException(e);
+            }
+        }
+    }
+
+    /**
+     * Polls the bootstrap request until it is no longer running.
+     *
+     * @throws IllegalStateException if it does not complete within the timeout.
+     */
+    private Bootstrap track(long requestId) {
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        while (true) {
+            Bootstrap status = endpoint.getBootstrap(requestId);
+            if (!Bootstrap.STATUS_RUNNING.equals(status.getStatus())) {
+                return status;
+            }
+            if (stopwatch.elapsed(TimeUnit.MILLISECONDS) >= timeout.toMilliseconds()) {
+                throw new IllegalStateException(String.format("Bootstrap request %d still running after %s", requestId, timeout));
+            }
+            Time.sleep(pollPeriod);
+        }
+    }
+
+    private static class Credentials {
+        private final String user;
+        private final String sshKey;
+
+        private Credentials(String user, String sshKey) {
+            this.user = Preconditions.checkNotNull(user, "user");
+            this.sshKey = Preconditions.checkNotNull(sshKey, "sshKey");
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Credentials)) return false;
+            Credentials that = (Credentials) o;
+            return user.equals(that.user) && sshKey.equals(that.sshKey);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(user, sshKey);
+        }
+    }
+}
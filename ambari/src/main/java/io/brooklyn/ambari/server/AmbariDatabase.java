@@ -0,0 +1,251 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.brooklyn.ambari.server;
+
+import static java.lang.String.format;
+import static org.apache.brooklyn.util.ssh.BashCommands.installPackage;
+import static org.apache.brooklyn.util.ssh.BashCommands.sudo;
+import static org.apache.brooklyn.util.text.StringEscapes.BashStringEscapes.wrapBash;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.brooklyn.api.entity.EntitySpec;
+import org.apache.brooklyn.entity.database.DatastoreMixins;
+import org.apache.brooklyn.entity.database.mysql.MySqlNode;
+import org.apache.brooklyn.entity.database.postgresql.PostgreSqlNode;
+import org.apache.brooklyn.entity.software.base.SoftwareProcess;
+import org.apache.brooklyn.util.os.Os;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.Hashing;
+
+/**
+ * External database of an Ambari server. Provides the spec of the database entity provisioned next to the server, and
+ * the commands loading the Ambari schema in the database and pointing the server setup at it.
+ */
+public class AmbariDatabase {
+
+    public enum Type {
+        /**
+         * The database installed on the server by its silent setup.
+         */
+        EMBEDDED,
+        POSTGRES,
+        MYSQL
+    }
+
+    /**
+     * The {@link #getSignature() signature} of the embedded database.
+     */
+    public static final String EMBEDDED_SIGNATURE = "embedded";
+
+    public static final String RESOURCES_LOCATION = "/var/lib/ambari-server/resources";
+    public static final String MYSQL_CONNECTOR_LOCATION = "/usr/share/java/mysql-connector-java.jar";
+
+    static final String PGPASS_FILE = "pgpass";
+    static final String MYSQL_OPTIONS_FILE = "my.cnf";
+    static final String PASSWORD_FILE = "password";
+
+    private final Type type;
+    private final String host;
+    private final int port;
+    private final String name;
+    private final String username;
+    private final String password;
+
+    public AmbariDatabase(Type type, String host, int port, String name, String username, String password) {
+        if (type == Type.EMBEDDED) {
+            throw new IllegalArgumentException("The embedded database is not an external database");
+        }
+        this.type = type;
+        this.host = host;
+        this.port = port;
+        this.name = name;
+        this.username = username;
+        this.password = password;
+    }
+
+    /**
+     * Returns the database at the given {@link DatastoreMixins#DATASTORE_URL datastore URL}, such as
+     * {@code postgresql://10.0.0.1:5432/}.
+     */
+    public static AmbariDatabase of(Type type, String datastoreUrl, String name, String username, String password) {
+        URI uri = URI.create(datastoreUrl);
+        if (uri.getHost() == null || uri.getPort() < 0) {
+            throw new IllegalArgumentException("Datastore URL must contain a host and a port: " + datastoreUrl);
+        }
+        return new AmbariDatabase(type, uri.getHost(), uri.getPort(), name, username, password);
+    }
+
+    /**
+     * Returns the spec of a database entity of the given type, creating the database and the user of the Ambari
+     * server, and accepting the given number of connections.
+     */
+    public static EntitySpec<? extends SoftwareProcess> newDatabaseSpec(Type type, String name, String username, String password, int maxConnections) {
+        switch (type) {
+            case POSTGRES:
+                return EntitySpec.create(PostgreSqlNode.class)
+                        .displayName("Ambari Database")
+                        .configure(PostgreSqlNode.MAX_CONNECTIONS, maxConnections)
+                        .configure(DatastoreMixins.CREATION_SCRIPT_CONTENTS, getPostgresCreationScript(name, username, password));
+            case MYSQL:
+                return EntitySpec.create(MySqlNode.class)
+                        .displayName("Ambari Database")
+                        .configure(MySqlNode.MYSQL_SERVER_CONF.subKey("max_connections"), maxConnections)
+                        .configure(DatastoreMixins.CREATION_SCRIPT_CONTENTS, getMysqlCreationScript(name, username, password));
+            default:
+                throw new IllegalArgumentException("No database entity for " + type);
+        }
+    }
+
+    static String getPostgresCreationScript(String name, String username, String password) {
+        // The Ambari DDL expects the tables in a schema named after the user
+        return format("CREATE USER %1$s WITH PASSWORD '%3$s';\n" +
+                        "CREATE DATABASE %2$s OWNER %1$s;\n" +
+                        "\\connect %2$s;\n" +
+                        "CREATE SCHEMA %1$s AUTHORIZATION %1$s;\n" +
+                        "ALTER ROLE %1$s SET search_path TO '%1$s', 'public';\n",
+                username, name, escapeSql(password));
+    }
+
+    static String getMysqlCreationScript(String name, String username, String password) {
+        return format("CREATE DATABASE %2$s;\n" +
+                        "CREATE USER '%1$s'@'%%' IDENTIFIED BY '%3$s';\n" +
+                        "GRANT ALL PRIVILEGES ON %2$s.* TO '%1$s'@'%%';\n" +
+                        "FLUSH PRIVILEGES;\n",
+                username, name, escapeSql(password));
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * Returns the files holding the password of the database, by name, to be copied with permissions 0600 into a
+     * directory only readable by the login user before running the {@link #getSchemaCommands(String) schema} and
+     * {@link #getSetupFlags(String) setup} commands. The password never appears in the commands themselves, which
+     * Brooklyn records, nor in the process list of the server.
+     */
+    public Map<String, String> getCredentialFiles() {
+        ImmutableMap.Builder<String, String> files = ImmutableMap.builder();
+        switch (type) {
+            case POSTGRES:
+                files.put(PGPASS_FILE, Joiner.on(':').join(escapePgpass(host), port, escapePgpass(name), escapePgpass(username), escapePgpass(password)) + "\n");
+                break;
+            case MYSQL:
+                files.put(MYSQL_OPTIONS_FILE, format("[client]\npassword=\"%s\"\n", escapeMysqlOption(password)));
+                break;
+            default:
+                throw new IllegalStateException("Unsupported database type: " + type);
+        }
+        return files.put(PASSWORD_FILE, password).build();
+    }
+
+    /**
+     * Returns the commands installing the database client and loading the Ambari schema, unless already loaded. They
+     * must run after the installation of the ambari-server package, which contains the schema.
+     *
+     * @param credentialsDirectory the directory the {@link #getCredentialFiles() credential files} were copied to.
+     */
+    public List<String> getSchemaCommands(String credentialsDirectory) {
+        switch (type) {
+            case POSTGRES:
+                String psql = format("PGPASSFILE=%s psql -h %s -p %d -U %s -d %s -w",
+                        wrapBash(Os.mergePaths(credentialsDirectory, PGPASS_FILE)), host, port, username, name);
+                return ImmutableList.of(
+                        installPackage(ImmutableMap.of("apt", "postgresql-client", "yum", "postgresql", "zypper", "postgresql"), null),
+                        format("%1$s -tAc \"SELECT 1 FROM information_schema.tables WHERE table_name = 'metainfo'\" | grep -q 1 || " +
+                                "%1$s -v ON_ERROR_STOP=1 -f %2$s/Ambari-DDL-Postgres-CREATE.sql", psql, RESOURCES_LOCATION));
+            case MYSQL:
+                // The options file must come first
+                String mysql = format("mysql --defaults-extra-file=%s -h %s -P %d -u %s %s",
+                        wrapBash(Os.mergePaths(credentialsDirectory, MYSQL_OPTIONS_FILE)), host, port, username, name);
+                return ImmutableList.of(
+                        installPackage(ImmutableMap.of("apt", "mysql-client", "yum", "mysql", "zypper", "mysql-client"), null),
+                        installPackage(ImmutableMap.of("apt", "libmysql-java", "yum", "mysql-connector-java", "zypper", "mysql-connector-java"), null),
+                        sudo(format("ambari-server setup --jdbc-db=mysql --jdbc-driver=%s", MYSQL_CONNECTOR_LOCATION)),
+                        format("%1$s -N -e \"SHOW TABLES LIKE 'metainfo'\" | grep -q metainfo || %1$s < %2$s/Ambari-DDL-MySQL-CREATE.sql",
+                                mysql, RESOURCES_LOCATION));
+            default:
+                throw new IllegalStateException("Unsupported database type: " + type);
+        }
+    }
+
+    /**
+     * @param credentialsDirectory the directory the {@link #getCredentialFiles() credential files} were copied to.
+     * @return the flags of {@code ambari-server setup} pointing the server at this database. The password is read from
+     * its file by the shell running the setup.
+     */
+    public String getSetupFlags(String credentialsDirectory) {
+        StringBuilder flags = new StringBuilder(format("--database=%s --databasehost=%s --databaseport=%d --databasename=%s --databaseusername=%s --databasepassword=\"$(cat %s)\"",
+                type == Type.POSTGRES ? "postgres" : "mysql", host, port, name, username, wrapBash(Os.mergePaths(credentialsDirectory, PASSWORD_FILE))));
+        if (type == Type.POSTGRES) {
+            flags.append(" --postgresschema=").append(username);
+        }
+        return flags.toString();
+    }
+
+    /**
+     * Returns a line identifying this database and the credentials of the server, without disclosing the password,
+     * such as {@code postgres://ambari@10.0.0.5:5432/ambari 3c9d...}: a server set up for another signature must be
+     * set up again.
+     */
+    public String getSignature() {
+        return format("%s://%s@%s:%d/%s %s", type.name().toLowerCase(), username, host, port, name,
+                Hashing.sha256().hashString(password, StandardCharsets.UTF_8).toString().substring(0, 16));
+    }
+
+    private static String escapeSql(String value) {
+        return value.replace("'", "''");
+    }
+
+    private static String escapePgpass(String value) {
+        return value.replace("\\", "\\\\").replace(":", "\\:");
+    }
+
+    private static String escapeMysqlOption(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+                .add("type", type)
+                .add("host", host)
+                .add("port", port)
+                .add("name", name)
+                .add("username", username)
+                .toString();
+    }
+}
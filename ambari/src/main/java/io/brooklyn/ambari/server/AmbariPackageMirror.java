@@ -0,0 +1,162 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.brooklyn.ambari.server;
+
+import static java.lang.String.format;
+import static org.apache.brooklyn.util.ssh.BashCommands.chainGroup;
+import static org.apache.brooklyn.util.ssh.BashCommands.ifExecutableElse0;
+import static org.apache.brooklyn.util.ssh.BashCommands.installPackage;
+import static org.apache.brooklyn.util.ssh.BashCommands.sudo;
+
+import java.net.URI;
+import java.util.List;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+
+import io.brooklyn.ambari.AmbariInstallCommands;
+
+/**
+ * A caching mirror of the Ambari and HDP package repositories, hosted by nginx on the Ambari server so that agents
+ * fetch their packages over the LAN. Packages are downloaded once from the upstream repository, whatever the number of
+ * agents asking for them concurrently, and then served from the local cache. Repository metadata is only cached
+ * briefly, so that updates of the upstream repository are picked up.
+ * <p/>
+ * The mirror serves the same paths as {@link AmbariInstallCommands#PUBLIC_REPOSITORY_URL}. The upstream can also be a
+ * {@code file://} URL, in which case the mirror serves the local repository directly.
+ */
+public class AmbariPackageMirror {
+
+    public static final String CONFIGURATION_LOCATION = "/etc/nginx/conf.d/ambari-mirror.conf";
+    public static final String CACHE_LOCATION = "/var/cache/nginx/ambari-mirror";
+
+    /**
+     * Path under which the Ubuntu key server is proxied, for agents to import the repository signing keys.
+     */
+    public static final String KEYSERVER_PATH = "/keyserver/";
+    private static final String KEYSERVER_HOST = "keyserver.ubuntu.com";
+
+    private final int port;
+    private final URI upstream;
+
+    public AmbariPackageMirror(int port, String upstreamUrl) {
+        Preconditions.checkArgument(port > 0, "Port must be positive: %s", port);
+        Preconditions.checkNotNull(upstreamUrl, "Upstream URL must not be null");
+        this.port = port;
+        this.upstream = URI.create(upstreamUrl);
+        Preconditions.checkArgument("http".equals(upstream.getScheme()) || "https".equals(upstream.getScheme()) || "file".equals(upstream.getScheme()),
+                "Upstream URL must be a http, https or file URL: %s", upstreamUrl);
+    }
+
+    /**
+     * @return the nginx configuration of the mirror.
+     */
+    public String getConfiguration() {
+        List<String> lines = ImmutableList.<String>builder()
+                .add(format("proxy_cache_path %s levels=1:2 keys_zone=ambari_mirror:10m max_size=20g inactive=30d;", CACHE_LOCATION))
+                .add("")
+                .add("server {")
+                .add(format("    listen %d;", port))
+                .add("")
+                .add(format("    location %s {", KEYSERVER_PATH))
+                .add(format("        proxy_pass http://%s/;", KEYSERVER_HOST))
+                .add(format("        proxy_set_header Host %s;", KEYSERVER_HOST))
+                .add("    }")
+                .add("")
+                .addAll(isLocal() ? localLocations() : proxyLocations())
+                .add("}")
+                .build();
+        return Joiner.on('\n').join(lines) + '\n';
+    }
+
+    private List<String> localLocations() {
+        return ImmutableList.of(
+                "    location / {",
+                format("        root %s;", upstream.getPath()),
+                "        autoindex on;",
+                "    }");
+    }
+
+    private List<String> proxyLocations() {
+        return ImmutableList.<String>builder()
+                .add("    # Repository metadata changes upstream: only cache it briefly")
+                .add("    location ~ (/repodata/|/dists/|\\.repo$|\\.list$) {")
+                .addAll(proxyDirectives("5m"))
+                .add("    }")
+                .add("")
+                .add("    location / {")
+                .addAll(proxyDirectives("30d"))
+                .add("    }")
+                .build();
+    }
+
+    /**
+     * @return the directives of a location proxying the upstream repository, and caching its successful responses
+     * for the given time. The upstream path is prepended with a rewrite, as nginx rejects a {@code proxy_pass} with a
+     * path in a regular expression location.
+     */
+    private List<String> proxyDirectives(String cacheValidity) {
+        String path = upstream.getRawPath() != null ? upstream.getRawPath().replaceAll("/+$", "") : "";
+        ImmutableList.Builder<String> directives = ImmutableList.builder();
+        if (!path.isEmpty()) {
+            directives.add(format("        rewrite ^(.*)$ %s$1 break;", path));
+        }
+        String host = upstream.getPort() != -1 ? upstream.getHost() + ":" + upstream.getPort() : upstream.getHost();
+        return directives
+                .add(format("        proxy_pass %s://%s;", upstream.getScheme(), host))
+                .add(format("        proxy_set_header Host %s;", host))
+                .add("        proxy_cache ambari_mirror;")
+                .add("        proxy_cache_lock on;")
+                .add("        proxy_cache_lock_timeout 10m;")
+                .add("        proxy_cache_use_stale error timeout updating;")
+                .add("        proxy_read_timeout 10m;")
+                .add(format("        proxy_cache_valid 200 %s;", cacheValidity))
+                .build();
+    }
+
+    private boolean isLocal() {
+        return "file".equals(upstream.getScheme());
+    }
+
+    /**
+     * @return the commands installing nginx, to be run before its configuration is copied to
+     * {@link #CONFIGURATION_LOCATION}.
+     */
+    public String getInstallCommands() {
+        return chainGroup(
+                // nginx comes from EPEL on CentOS
+                ifExecutableElse0("yum", sudo("yum install -y epel-release")),
+                installPackage("nginx"),
+                sudo("mkdir -p /var/cache/nginx"),
+                // Let nginx reach the upstream repository when SELinux is enforcing
+                ifExecutableElse0("setsebool", sudo("setsebool -P httpd_can_network_connect 1")));
+    }
+
+    /**
+     * @return the commands (re)starting nginx, once its configuration is in place.
+     */
+    public String getLaunchCommands() {
+        // nginx creates the cache directory itself, owned by its worker user, under /var/cache/nginx
+        return chainGroup(
+                sudo("nginx -t"),
+                sudo("service nginx restart"));
+    }
+}
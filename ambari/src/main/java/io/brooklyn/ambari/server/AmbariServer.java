@@ -25,15 +25,21 @@ import java.util.Map;
 import org.apache.brooklyn.api.catalog.Catalog;
 import org.apache.brooklyn.api.entity.ImplementedBy;
 import org.apache.brooklyn.api.sensor.AttributeSensor;
+import org.apache.brooklyn.config.ConfigKey;
 import org.apache.brooklyn.core.annotation.Effector;
 import org.apache.brooklyn.core.annotation.EffectorParam;
+import org.apache.brooklyn.core.config.ConfigKeys;
 import org.apache.brooklyn.core.sensor.PortAttributeSensorAndConfigKey;
 import org.apache.brooklyn.core.sensor.Sensors;
+import org.apache.brooklyn.util.os.Os;
+import org.apache.brooklyn.util.time.Duration;
 
 import com.google.common.reflect.TypeToken;
 
+import io.brooklyn.ambari.AmbariInstallCommands;
 import io.brooklyn.ambari.AmbariNode;
 import io.brooklyn.ambari.rest.AmbariApiException;
+import io.brooklyn.ambari.rest.AmbariCircuitBreaker;
 import io.brooklyn.ambari.rest.domain.RecommendationWrapper;
 import io.brooklyn.ambari.rest.domain.RecommendationWrappers;
 import io.brooklyn.ambari.rest.domain.Request;
@@ -52,11 +58,174 @@ public interface AmbariServer extends AmbariNode {
             "ambari.server.registeredHosts",
             "List of registered agent names");
 
+    AttributeSensor<Map<String, List<String>>> REGISTERED_HOSTS_DELTA = Sensors.newSensor(
+            new TypeToken<Map<String, List<String>>>() {
+            },
+            "ambari.server.registeredHosts.delta",
+            "Agent names added to and removed from the registered hosts on their last change, keyed by \"added\" and \"removed\"");
+
+    PortAttributeSensorAndConfigKey PACKAGE_MIRROR_PORT =
+            new PortAttributeSensorAndConfigKey("ambari.server.packageMirror.port", "Port of the package mirror, when enabled", "8090");
+
+    ConfigKey<String> PACKAGE_MIRROR_UPSTREAM_URL = ConfigKeys.newStringConfigKey(
+            "ambari.server.packageMirror.upstreamUrl",
+            "Repository mirrored by the package mirror, either a http(s) URL or the file URL of a local repository with the same layout",
+            AmbariInstallCommands.PUBLIC_REPOSITORY_URL);
+
+    AttributeSensor<String> PACKAGE_MIRROR_URL = Sensors.newStringSensor(
+            "ambari.server.packageMirror.url",
+            "URL of the package mirror hosted by the Ambari server, set once the mirror is up");
+
     AttributeSensor<Boolean> URL_REACHABLE = Sensors.newBooleanSensor("ambari.server.urlReachable");
 
     AttributeSensor<String> CLUSTER_STATE = Sensors.newStringSensor("ambari.server.clusterState");
 
+    ConfigKey<Duration> REGISTERED_HOSTS_POLL_PERIOD = ConfigKeys.newConfigKey(
+            Duration.class,
+            "ambari.server.registeredHosts.pollPeriod",
+            "Period at which registered hosts are polled while agents are expected to register, i.e. before the cluster is deployed or while it is resized",
+            Duration.ONE_SECOND);
+
+    ConfigKey<Duration> REGISTERED_HOSTS_DRIFT_POLL_PERIOD = ConfigKeys.newConfigKey(
+            Duration.class,
+            "ambari.server.registeredHosts.driftPollPeriod",
+            "Period at which registered hosts are polled once the cluster is deployed, to detect membership drift",
+            Duration.ONE_MINUTE);
+
+    ConfigKey<Integer> CLIENT_MAX_CONCURRENT_CALLS = ConfigKeys.newIntegerConfigKey(
+            "ambari.server.client.maxConcurrentCalls",
+            "Maximum number of concurrent REST calls to the Ambari server; the actual limit adapts to the server latency, up to this value",
+            16);
+
+    ConfigKey<Duration> CLIENT_LATENCY_TARGET = ConfigKeys.newConfigKey(
+            Duration.class,
+            "ambari.server.client.latencyTarget",
+            "Latency of a REST call above which the Ambari server is considered overloaded, and the number of concurrent calls is reduced",
+            Duration.TEN_SECONDS);
+
+    ConfigKey<Double> CLIENT_CALL_RATE = ConfigKeys.newDoubleConfigKey(
+            "ambari.server.client.callRate",
+            "Maximum sustained number of REST calls per second to the Ambari server; zero or less for no limit",
+            0d);
+
+    ConfigKey<Integer> CLIENT_CALL_BURST = ConfigKeys.newIntegerConfigKey(
+            "ambari.server.client.callBurst",
+            "Number of REST calls that can be made at once to the Ambari server before the call rate applies",
+            10);
+
+    ConfigKey<Integer> CLIENT_CIRCUIT_BREAKER_FAILURE_THRESHOLD = ConfigKeys.newIntegerConfigKey(
+            "ambari.server.client.circuitBreaker.failureThreshold",
+            "Number of consecutive REST calls failing because the Ambari server is unavailable after which calls are rejected without being made",
+            5);
+
+    ConfigKey<Duration> CLIENT_CIRCUIT_BREAKER_OPEN_DURATION = ConfigKeys.newConfigKey(
+            Duration.class,
+            "ambari.server.client.circuitBreaker.openDuration",
+            "Time during which REST calls are rejected, once the circuit breaker opened, before a probe call is let through",
+            Duration.THIRTY_SECONDS);
+
+    AttributeSensor<AmbariCircuitBreaker.State> CLIENT_CIRCUIT_BREAKER_STATE = Sensors.newSensor(
+            AmbariCircuitBreaker.State.class,
+            "ambari.server.client.circuitBreakerState",
+            "State of the circuit breaker of the REST calls to the Ambari server");
+
+    ConfigKey<Duration> CLIENT_METRICS_PUBLISH_PERIOD = ConfigKeys.newConfigKey(
+            Duration.class,
+            "ambari.server.client.metrics.publishPeriod",
+            "Period at which the REST call metrics are published to the ambari.server.client.metrics sensor",
+            Duration.TEN_SECONDS);
+
+    AttributeSensor<Map<String, Map<String, Object>>> CLIENT_METRICS = Sensors.newSensor(
+            new TypeToken<Map<String, Map<String, Object>>>() {
+            },
+            "ambari.server.client.metrics",
+            "Count, errors, retries, p50/p95/p99 latency in milliseconds and throughput in calls per second, of each REST call and feed poll to the Ambari server");
+
+    ConfigKey<Boolean> CLIENT_GZIP_RESPONSES = ConfigKeys.newBooleanConfigKey(
+            "ambari.server.client.gzipResponses",
+            "Whether to ask the Ambari server for gzip-compressed REST responses",
+            true);
+
+    ConfigKey<Boolean> CLIENT_GZIP_REQUESTS = ConfigKeys.newBooleanConfigKey(
+            "ambari.server.client.gzipRequests",
+            "Whether to gzip-compress large REST request bodies; the Ambari server must be configured to accept them",
+            false);
+
+    ConfigKey<Integer> CLIENT_GZIP_REQUEST_THRESHOLD = ConfigKeys.newIntegerConfigKey(
+            "ambari.server.client.gzipRequestThreshold",
+            "Size, in bytes, from which REST request bodies are compressed, when enabled",
+            16 * 1024);
+
+    ConfigKey<Integer> CLIENT_WIRE_LOG_SIZE = ConfigKeys.newIntegerConfigKey(
+            "ambari.server.client.wireLog.size",
+            "Number of recent REST exchanges with the Ambari server kept in memory for diagnostics; zero to keep none",
+            100);
+
+    ConfigKey<Double> CLIENT_WIRE_LOG_SAMPLE_RATE = ConfigKeys.newDoubleConfigKey(
+            "ambari.server.client.wireLog.sampleRate",
+            "Fraction, between 0 and 1, of the successful REST exchanges kept in the wire log; failed exchanges are always kept",
+            0.1);
+
+    ConfigKey<Integer> CLIENT_WIRE_LOG_MAX_BODY_SIZE = ConfigKeys.newIntegerConfigKey(
+            "ambari.server.client.wireLog.maxBodySize",
+            "Number of bytes of each request and response body kept in the wire log",
+            2048);
+
+    ConfigKey<Duration> AGENT_BOOTSTRAP_BATCH_WINDOW = ConfigKeys.newConfigKey(
+            Duration.class,
+            "ambari.server.agentBootstrap.batchWindow",
+            "Time during which the agents asking to be installed through the bootstrap API are gathered in a single bootstrap request",
+            Duration.FIVE_SECONDS);
+
+    ConfigKey<Duration> AGENT_BOOTSTRAP_TIMEOUT = ConfigKeys.newConfigKey(
+            Duration.class,
+            "ambari.server.agentBootstrap.timeout",
+            "Maximum time to wait for a bootstrap request to complete",
+            Duration.minutes(30));
+
+    ConfigKey<String> STACK_ARCHIVE_CACHE_DIRECTORY = ConfigKeys.newStringConfigKey(
+            "ambari.server.stackArchiveCache.directory",
+            "Directory, on the Brooklyn side, where the stack definition archives are cached by content digest",
+            Os.mergePaths(Os.home(), ".brooklyn", "ambari", "stack-archives"));
+
+    // Tuning of the server; when not set, the values are sized from the number of agents expected in the cluster.
+
+    ConfigKey<Integer> HEAP_SIZE_MB = ConfigKeys.newIntegerConfigKey(
+            "ambari.server.heapSizeMb", "Maximum heap size, in megabytes, of the server JVM");
+
+    ConfigKey<Integer> AGENT_THREAD_POOL_SIZE = ConfigKeys.newIntegerConfigKey(
+            "ambari.server.agentThreadPoolSize", "Maximum number of threads serving the agents (agent.threadpool.size.max)");
+
+    ConfigKey<Integer> CLIENT_THREAD_POOL_SIZE = ConfigKeys.newIntegerConfigKey(
+            "ambari.server.clientThreadPoolSize", "Maximum number of threads serving the REST API (client.threadpool.size.max)");
+
+    ConfigKey<Integer> DB_CONNECTION_POOL_MAX_SIZE = ConfigKeys.newIntegerConfigKey(
+            "ambari.server.dbConnectionPoolMaxSize", "Maximum number of JDBC connections to the database of the server; above 32, the c3p0 pool replaces the internal one");
+
+    ConfigKey<Integer> ALERT_EXECUTION_THREADS = ConfigKeys.newIntegerConfigKey(
+            "ambari.server.alerts.executionThreads", "Maximum number of threads running the server-side alerts");
+
+    ConfigKey<Boolean> ALERT_CACHE_ENABLED = ConfigKeys.newBooleanConfigKey(
+            "ambari.server.alerts.cacheEnabled", "Whether the server caches the alerts received from the agents before writing them to its database");
+
+    ConfigKey<Map<String, String>> EXTRA_PROPERTIES = ConfigKeys.newConfigKey(
+            new TypeToken<Map<String, String>>() {},
+            "ambari.server.properties",
+            "Extra entries of ambari.properties, applied after, and taking precedence over, the tuning above");
+
+    ConfigKey<String> DATABASE_URL = ConfigKeys.newStringConfigKey(
+            "ambari.server.database.url",
+            "Datastore URL, such as postgresql://host:5432/, of the external database of the server; " +
+                    "set by the cluster to that of the database it provisions, unless configured");
+
+    ConfigKey<Boolean> RECOMMENDATIONS_CACHE_ENABLED = ConfigKeys.newBooleanConfigKey(
+            "ambari.server.recommendations.cache",
+            "Whether to reuse the layout recommendations previously computed by this Ambari server for the same stack, services and host hardware",
+            true);
+
     /**
+     * Waits for the server to be up. Fails immediately if the circuit breaker of its REST API is open.
+     *
      * @throws IllegalStateException if times out.
      */
     public void waitForServiceUp();
@@ -104,6 +273,23 @@ public interface AmbariServer extends AmbariNode {
                                       @EffectorParam(name = "Repository Name") String repoName,
                                       @EffectorParam(name = "Repository URL") String url);
 
+    @Effector(description = "Update the urls of several repositories of a stack at once")
+    public void updateStackRepositories(@EffectorParam(name = "Stack Name") String stackName,
+                                        @EffectorParam(name = "Stack Version") String stackVersion,
+                                        @EffectorParam(name = "Repositories", description = "Map of repository URLs, keyed by <os>/<repository name>") Map<String, String> repositories);
+
+    /**
+     * Installs and starts the Ambari agent on the given host through the bootstrap API of the server. Hosts asking
+     * within {@link #AGENT_BOOTSTRAP_BATCH_WINDOW} of each other are bootstrapped by a single request. Blocks until
+     * the agent is bootstrapped.
+     *
+     * @param host   the address of the host, reachable over SSH from the server.
+     * @param user   the SSH user, which must be able to sudo.
+     * @param sshKey the private key of the SSH user.
+     * @throws IllegalStateException if the agent could not be bootstrapped.
+     */
+    public void bootstrapAgent(String host, String user, String sshKey);
+
     @Effector(description = "Add, install and start a new service to an existing cluster")
     public void addServiceToCluster(@EffectorParam(name = "cluster", description = "Cluster name") final String cluster,
                                     @EffectorParam(name = "service", description = "Service name") final String service,
@@ -115,9 +301,21 @@ public interface AmbariServer extends AmbariNode {
                                            @EffectorParam(name = "Service configuration key") String configurationKey,
                                            @EffectorParam(name = "Service configuration") Map<Object, Object> configuration);
 
+    @Effector(description = "Returns the recent REST exchanges with the Ambari server kept in the wire log, oldest first")
+    public String dumpWireLog();
+
     @Effector(description = "Start a service on a cluster")
     public void startService(@EffectorParam(name = "Cluster name") String cluster,
                              @EffectorParam(name = "Service name") String service);
+    /**
+     * Switches the {@link #REGISTERED_HOSTS} feed between full-rate polling, used while agents are expected to
+     * register, and a low-frequency membership-drift check once the cluster has been deployed.
+     *
+     * @param fastPolling true to poll every {@link #REGISTERED_HOSTS_POLL_PERIOD}, false to poll every
+     *                    {@link #REGISTERED_HOSTS_DRIFT_POLL_PERIOD}.
+     */
+    public void setRegisteredHostsFastPolling(boolean fastPolling);
+
     /**
      * Are we installing the ambari agent on the same server as the ambari server?
      * Calculated based on whether any components are configured to be installed on server.
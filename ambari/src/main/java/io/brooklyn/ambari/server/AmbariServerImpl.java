@@ -19,67 +19,101 @@
 
 package io.brooklyn.ambari.server;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
 import java.net.URI;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 import java.util.concurrent.TimeUnit;
 import javax.annotation.Nullable;
+import javax.management.JMException;
+import javax.management.ObjectName;
 
 import org.apache.brooklyn.api.entity.Entity;
 import org.apache.brooklyn.api.mgmt.Task;
+import org.apache.brooklyn.api.sensor.EnricherSpec;
 import org.apache.brooklyn.core.annotation.EffectorParam;
 import org.apache.brooklyn.core.entity.Attributes;
 import org.apache.brooklyn.core.entity.Entities;
+import org.apache.brooklyn.core.feed.FeedConfig;
 import org.apache.brooklyn.core.location.access.BrooklynAccessUtils;
 import org.apache.brooklyn.enricher.stock.Enrichers;
 import org.apache.brooklyn.entity.software.base.SoftwareProcessImpl;
+import org.apache.brooklyn.feed.function.FunctionFeed;
+import org.apache.brooklyn.feed.function.FunctionPollConfig;
 import org.apache.brooklyn.feed.http.HttpFeed;
 import org.apache.brooklyn.feed.http.HttpPollConfig;
 import org.apache.brooklyn.feed.http.HttpValueFunctions;
 import org.apache.brooklyn.util.core.http.HttpTool;
+import org.apache.brooklyn.util.core.http.HttpToolResponse;
 import org.apache.brooklyn.util.core.task.DynamicTasks;
 import org.apache.brooklyn.util.core.task.Tasks;
+import org.apache.brooklyn.util.exceptions.Exceptions;
 import org.apache.brooklyn.util.guava.Functionals;
+import org.apache.brooklyn.util.stream.Streams;
+import org.apache.brooklyn.util.time.Duration;
 import org.apache.http.auth.UsernamePasswordCredentials;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Function;
 import com.google.common.base.Functions;
+import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Splitter;
+import com.google.common.base.Supplier;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Ordering;
 import com.google.common.net.HostAndPort;
 import com.google.common.net.HttpHeaders;
+import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
-import com.jayway.jsonpath.JsonPath;
+import com.google.gson.JsonObject;
 
 import io.brooklyn.ambari.AmbariCluster;
+import io.brooklyn.ambari.AmbariInstallCommands;
 import io.brooklyn.ambari.rest.AmbariApiException;
-import io.brooklyn.ambari.rest.AmbariRequestInterceptor;
+import io.brooklyn.ambari.rest.AmbariCallLimiter;
+import io.brooklyn.ambari.rest.AmbariCircuitBreaker;
+import io.brooklyn.ambari.rest.AmbariClient;
+import io.brooklyn.ambari.rest.AmbariClientMetrics;
+import io.brooklyn.ambari.rest.CallStatistics;
+import io.brooklyn.ambari.rest.JsonStreamPath;
+import io.brooklyn.ambari.rest.RecommendationCache;
 import io.brooklyn.ambari.rest.RequestCheckRunnable;
+import io.brooklyn.ambari.rest.WireLog;
 import io.brooklyn.ambari.rest.domain.RecommendationWrapper;
 import io.brooklyn.ambari.rest.domain.RecommendationWrappers;
 import io.brooklyn.ambari.rest.domain.Request;
-import io.brooklyn.ambari.rest.endpoint.BlueprintEndpoint;
-import io.brooklyn.ambari.rest.endpoint.ClusterEndpoint;
-import io.brooklyn.ambari.rest.endpoint.ConfigurationEnpoint;
 import io.brooklyn.ambari.rest.endpoint.HostEndpoint;
 import io.brooklyn.ambari.rest.endpoint.ServiceEndpoint;
-import io.brooklyn.ambari.rest.endpoint.StackEndpoint;
-import retrofit.RestAdapter;
-import retrofit.RetrofitError;
+import retrofit.client.Response;
 
 public class AmbariServerImpl extends SoftwareProcessImpl implements AmbariServer {
 
     public static final Logger LOG = LoggerFactory.getLogger(AmbariServerImpl.class);
+    private static final JsonStreamPath HOST_NAMES_PATH = JsonStreamPath.compile("$.items[*].Hosts.host_name");
+    private static final JsonStreamPath REQUEST_STATUS_PATH = JsonStreamPath.compile("$.Requests.request_status");
+    private static final String HOST_SIGNATURE_FIELDS = "Hosts/host_name,Hosts/os_type,Hosts/os_arch,Hosts/cpu_count,Hosts/total_mem";
     private volatile HttpFeed serviceUpHttpFeed;
-    private volatile HttpFeed hostsHttpFeed;
-    private volatile HttpFeed clusterHttpFeed;
+    private volatile FunctionFeed hostsFeed;
+    private volatile FunctionFeed clusterFeed;
+    private volatile FunctionFeed clientMetricsFeed;
+    private volatile ObjectName clientMetricsObjectName;
+
+    private volatile Boolean registeredHostsFastPolling;
 
     private String ambariUri;
-    private RestAdapter restAdapter;
+    private volatile AmbariClient ambariClient;
+    private volatile AgentBootstrapper agentBootstrapper;
+    // Recommendations depend on the stack definitions installed on this server: they are not shared with other servers
+    private final RecommendationCache recommendationCache = new RecommendationCache(100, Duration.ONE_HOUR);
 
     //TODO clearly needs changed
     private UsernamePasswordCredentials usernamePasswordCredentials = new UsernamePasswordCredentials("admin", "admin");
@@ -91,6 +125,12 @@ public class AmbariServerImpl extends SoftwareProcessImpl implements AmbariServe
         return AmbariServerDriver.class;
     }
 
+    @Override
+    protected void initEnrichers() {
+        super.initEnrichers();
+        addEnricher(EnricherSpec.create(RegisteredHostsDeltaEnricher.class));
+    }
+
     @Override
     protected void connectSensors() {
         super.connectSensors();
@@ -102,91 +142,330 @@ public class AmbariServerImpl extends SoftwareProcessImpl implements AmbariServe
 
         setAttribute(Attributes.MAIN_URI, URI.create(ambariUri));
 
-        restAdapter = new RestAdapter.Builder()
-                .setEndpoint(ambariUri)
-                .setRequestInterceptor(new AmbariRequestInterceptor(usernamePasswordCredentials))
-                .setLogLevel(RestAdapter.LogLevel.FULL)
-                .build();
+        setAttribute(CLIENT_CIRCUIT_BREAKER_STATE, AmbariCircuitBreaker.State.CLOSED);
+        ambariClient = newAmbariClient(ambariUri);
+        agentBootstrapper = new AgentBootstrapper(ambariClient.bootstraps(),
+                getConfig(AGENT_BOOTSTRAP_BATCH_WINDOW), Duration.FIVE_SECONDS, getConfig(AGENT_BOOTSTRAP_TIMEOUT));
 
         serviceUpHttpFeed = HttpFeed.builder()
                 .entity(this)
                 .period(500, TimeUnit.MILLISECONDS)
                 .baseUri(ambariUri)
                 .poll(new HttpPollConfig<Boolean>(URL_REACHABLE)
-                        .onSuccess(HttpValueFunctions.responseCodeEquals(200))
-                        .onFailureOrException(Functions.constant(false)))
+                        .onSuccess(recordingPoll("HttpFeed.urlReachable", true, HttpValueFunctions.responseCodeEquals(200)))
+                        .onFailure(recordingPoll("HttpFeed.urlReachable", false, Functions.constant(false)))
+                        .onException(recordingPollException("HttpFeed.urlReachable", false)))
                 .build();
 
         addEnricher(Enrichers.builder().updatingMap(Attributes.SERVICE_NOT_UP_INDICATORS)
                 .from(URL_REACHABLE)
                 .computing(Functionals.ifNotEquals(true).value("URL not reachable"))
                 .build());
+        addEnricher(Enrichers.builder().updatingMap(Attributes.SERVICE_NOT_UP_INDICATORS)
+                .from(CLIENT_CIRCUIT_BREAKER_STATE)
+                .computing(Functionals.ifEquals(AmbariCircuitBreaker.State.OPEN).value("REST API circuit breaker open"))
+                .build());
+
+        connectRegisteredHostsFeed(!isClusterDeployed());
 
-        hostsHttpFeed = HttpFeed.builder()
+        // The cluster is deployed by request 1 of Cluster1: nothing to poll before then
+        clusterFeed = FunctionFeed.builder()
                 .entity(this)
                 .period(1000, TimeUnit.MILLISECONDS)
-                .baseUri(String.format("%s/api/v1/hosts", ambariUri))
-                .credentials("admin", "admin")
-                .header(HttpHeaders.AUTHORIZATION, HttpTool.toBasicAuthorizationValue(usernamePasswordCredentials))
-                .poll(new HttpPollConfig<List<String>>(REGISTERED_HOSTS)
-                        .onSuccess(Functionals.chain(HttpValueFunctions.jsonContents(), getHosts()))
-                        .onFailureOrException(Functions.<List<String>>constant(ImmutableList.<String>of())))
+                .poll(new FunctionPollConfig<String, String>(CLUSTER_STATE)
+                        .suppressDuplicates(true)
+                        .callable(new Callable<String>() {
+                            @Override
+                            public String call() {
+                                if (!isClusterDeployed()) {
+                                    return null;
+                                }
+                                return getRequestState().apply(backgroundClient().requests().getRequestBody("Cluster1", 1, "Requests/request_status"));
+                            }
+                        })
+                        .onException(Functions.<String>constant(null)))
                 .build();
 
-        clusterHttpFeed = HttpFeed.builder()
+        connectClientMetrics();
+    }
+
+    /**
+     * Publishes the metrics of the REST client, and of the feeds polling the Ambari server, to the
+     * {@link #CLIENT_METRICS} sensor and as an MBean of the platform MBean server, so that slow calls can be told
+     * apart from slow deployments.
+     */
+    private void connectClientMetrics() {
+        final AmbariClientMetrics metrics = ambariClient.getMetrics();
+        clientMetricsFeed = FunctionFeed.builder()
                 .entity(this)
-                .period(1000, TimeUnit.MILLISECONDS)
-                .baseUri(String.format("%s/api/v1/clusters/%s/requests/%d",
-                        ambariUri,
-                        "Cluster1",
-                        1))
-                .credentials("admin", "admin")
-                .header(HttpHeaders.AUTHORIZATION, HttpTool.toBasicAuthorizationValue(usernamePasswordCredentials))
-                .poll(new HttpPollConfig<String>(CLUSTER_STATE)
-                        .onSuccess(Functionals.chain(HttpValueFunctions.jsonContents(), getRequestState()))
-                        .onFailureOrException(Functions.<String>constant(null)))
+                .period(getConfig(CLIENT_METRICS_PUBLISH_PERIOD))
+                .poll(new FunctionPollConfig<Map<String, Map<String, Object>>, Map<String, Map<String, Object>>>(CLIENT_METRICS)
+                        .supplier(new Supplier<Map<String, Map<String, Object>>>() {
+                            @Override
+                            public Map<String, Map<String, Object>> get() {
+                                ImmutableMap.Builder<String, Map<String, Object>> values = ImmutableMap.builder();
+                                for (CallStatistics statistics : metrics.getStatistics()) {
+                                    values.put(statistics.getCall(), statistics.toMap());
+                                }
+                                return values.build();
+                            }
+                        }))
+                .build();
+
+        try {
+            ObjectName name = new ObjectName(String.format("io.brooklyn.ambari:type=AmbariClientMetrics,entity=%s", getId()));
+            if (!ManagementFactory.getPlatformMBeanServer().isRegistered(name)) {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, name);
+                clientMetricsObjectName = name;
+            }
+        } catch (JMException e) {
+            LOG.warn("Unable to export the REST client metrics of {} through JMX: {}", this, e.getMessage());
+        }
+    }
+
+    private void disconnectClientMetrics() {
+        if (clientMetricsFeed != null) clientMetricsFeed.stop();
+        ObjectName name = clientMetricsObjectName;
+        clientMetricsObjectName = null;
+        if (name != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+            } catch (JMException e) {
+                LOG.debug("Unable to unregister the REST client metrics MBean of {}: {}", this, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Records the latency and outcome of a feed poll in the client metrics, under the given name, before computing the
+     * sensor value.
+     */
+    private <T> Function<HttpToolResponse, T> recordingPoll(final String call, final boolean success, final Function<? super HttpToolResponse, T> function) {
+        return new Function<HttpToolResponse, T>() {
+            @Override
+            public T apply(HttpToolResponse response) {
+                AmbariClient client = ambariClient;
+                if (client != null) {
+                    client.getMetrics().record(call, TimeUnit.MILLISECONDS.toNanos(response.getLatencyFullContent()), success);
+                }
+                return function.apply(response);
+            }
+        };
+    }
+
+    private <T> Function<Throwable, T> recordingPollException(final String call, final T value) {
+        return new Function<Throwable, T>() {
+            @Override
+            public T apply(Throwable input) {
+                AmbariClient client = ambariClient;
+                if (client != null) {
+                    client.getMetrics().recordFailure(call);
+                }
+                return value;
+            }
+        };
+    }
+
+    /**
+     * Creates the client used for all the calls to the Ambari REST API. Override to inject a different client, e.g.
+     * one backed by a mock HTTP client in tests.
+     */
+    protected AmbariClient newAmbariClient(String uri) {
+        return AmbariClient.builder()
+                .endpoint(uri)
+                .credentials(usernamePasswordCredentials)
+                .executor(getExecutionContext())
+                .gzip(getConfig(CLIENT_GZIP_RESPONSES), getConfig(CLIENT_GZIP_REQUESTS), getConfig(CLIENT_GZIP_REQUEST_THRESHOLD))
+                .wireLog(new WireLog(getConfig(CLIENT_WIRE_LOG_SIZE), getConfig(CLIENT_WIRE_LOG_SAMPLE_RATE), getConfig(CLIENT_WIRE_LOG_MAX_BODY_SIZE)))
+                .limiter(AmbariCallLimiter.builder()
+                        .maxLimit(getConfig(CLIENT_MAX_CONCURRENT_CALLS))
+                        .latencyTarget(getConfig(CLIENT_LATENCY_TARGET))
+                        .rate(getConfig(CLIENT_CALL_RATE), getConfig(CLIENT_CALL_BURST))
+                        .build())
+                .circuitBreaker(AmbariCircuitBreaker.builder()
+                        .failureThreshold(getConfig(CLIENT_CIRCUIT_BREAKER_FAILURE_THRESHOLD))
+                        .openDuration(getConfig(CLIENT_CIRCUIT_BREAKER_OPEN_DURATION))
+                        .listener(new AmbariCircuitBreaker.Listener() {
+                            @Override
+                            public void onStateChange(AmbariCircuitBreaker.State state) {
+                                setAttribute(CLIENT_CIRCUIT_BREAKER_STATE, state);
+                            }
+                        })
+                        .build())
                 .build();
     }
 
-    Function<JsonElement, List<String>> getHosts() {
-        Function<JsonElement, List<String>> path = new Function<JsonElement, List<String>>() {
+    @Override
+    public void waitForServiceUp() {
+        // Shed the load while the server is unavailable, rather than blocking until the service up timeout
+        AmbariClient client = ambariClient;
+        if (client != null && client.getCircuitBreaker().getState() == AmbariCircuitBreaker.State.OPEN) {
+            throw new AmbariApiException(String.format("Ambari server %s is unavailable: the circuit breaker of its REST API is open", this));
+        }
+        super.waitForServiceUp();
+    }
+
+    @Override
+    public synchronized void setRegisteredHostsFastPolling(boolean fastPolling) {
+        // Nothing to switch if the sensors are not connected, or if the feed already polls at the requested rate
+        if (registeredHostsFastPolling == null || registeredHostsFastPolling == fastPolling) {
+            return;
+        }
+        connectRegisteredHostsFeed(fastPolling);
+    }
+
+    private synchronized void connectRegisteredHostsFeed(boolean fastPolling) {
+        registeredHostsFastPolling = fastPolling;
+
+        Duration period = fastPolling ? getConfig(REGISTERED_HOSTS_POLL_PERIOD) : getConfig(REGISTERED_HOSTS_DRIFT_POLL_PERIOD);
+        LOG.debug("{} polling registered hosts every {}", this, period);
+
+        if (hostsFeed != null) hostsFeed.stop();
+        // Only the host names are used, so restrict the fields returned by Ambari to keep the payload small
+        hostsFeed = FunctionFeed.builder()
+                .entity(this)
+                .period(period)
+                .poll(registeredHostsPoll(new Callable<Response>() {
+                    @Override
+                    public Response call() {
+                        return backgroundClient().hosts().getHostsBody("Hosts/host_name");
+                    }
+                }))
+                .build();
+    }
+
+    /**
+     * @return the poll of the registered hosts returned by the given call. A failed poll, e.g. one rejected while the
+     * server is unavailable, says nothing about the membership: the sensor keeps its last value.
+     */
+    @VisibleForTesting
+    FunctionPollConfig<Response, List<String>> registeredHostsPoll(Callable<Response> hosts) {
+        return new FunctionPollConfig<Response, List<String>>(REGISTERED_HOSTS)
+                .suppressDuplicates(true)
+                .callable(hosts)
+                .onSuccess(getHosts())
+                .onException(AmbariServerImpl.<List<String>>unchanged());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Function<Object, T> unchanged() {
+        return (Function<Object, T>) Functions.constant(FeedConfig.UNCHANGED);
+    }
+
+    /**
+     * @return the client for the polls, which give way to the calls of deployments and effectors when the server is
+     * busy.
+     */
+    private AmbariClient backgroundClient() {
+        return ambariClient.withPriority(AmbariCallLimiter.Priority.BACKGROUND);
+    }
+
+    Function<Response, List<String>> getHosts() {
+        Function<Response, List<String>> path = new Function<Response, List<String>>() {
             @Nullable
             @Override
-            public List<String> apply(@Nullable JsonElement jsonElement) {
-                String jsonString = jsonElement.toString();
-                return JsonPath.read(jsonString, "$.items[*].Hosts.host_name");
+            public List<String> apply(@Nullable Response response) {
+                List<String> hosts;
+                InputStream body = getBody(response);
+                try {
+                    hosts = HOST_NAMES_PATH.read(body);
+                } finally {
+                    Streams.closeQuietly(body);
+                }
+                // Sort the hosts so that the same membership always gives an equal list, and duplicates get suppressed
+                return Ordering.natural().immutableSortedCopy(hosts);
             }
         };
         return path;
     }
 
-    Function<JsonElement, String> getRequestState() {
-        Function<JsonElement, String> path = new Function<JsonElement, String>() {
+    Function<Response, String> getRequestState() {
+        Function<Response, String> path = new Function<Response, String>() {
             @Nullable
             @Override
-            public String apply(@Nullable JsonElement jsonElement) {
-                String jsonString = jsonElement.toString();
-                return JsonPath.read(jsonString, "$.Requests.request_status");
+            public String apply(@Nullable Response response) {
+                InputStream body = getBody(response);
+                try {
+                    return REQUEST_STATUS_PATH.readFirst(body);
+                } finally {
+                    Streams.closeQuietly(body);
+                }
             }
         };
         return path;
     }
 
+    /**
+     * @return the body of the given response, read by the caller as it comes rather than buffered.
+     */
+    private static InputStream getBody(Response response) {
+        try {
+            return response.getBody().in();
+        } catch (IOException e) {
+            throw Exceptions.propagate(e);
+        }
+    }
+
     @Override
     public void disconnectSensors() {
         super.disconnectSensors();
         disconnectServiceUpIsRunning();
 
         if (serviceUpHttpFeed != null) serviceUpHttpFeed.stop();
-        if (hostsHttpFeed != null) hostsHttpFeed.stop();
-        if (clusterHttpFeed != null) clusterHttpFeed.stop();
+        if (hostsFeed != null) hostsFeed.stop();
+        if (clusterFeed != null) clusterFeed.stop();
+        disconnectClientMetrics();
+        synchronized (this) {
+            registeredHostsFastPolling = null;
+        }
     }
 
     @Override
-    public RecommendationWrappers getRecommendations(String stackName, String stackVersion, List<String> hosts, List<String> services) {
+    public RecommendationWrappers getRecommendations(final String stackName, final String stackVersion, final List<String> hosts, final List<String> services) {
         waitForServiceUp();
 
-        return restAdapter.create(StackEndpoint.class).getRecommendations(stackName, stackVersion, ImmutableMap.builder()
+        if (!getConfig(RECOMMENDATIONS_CACHE_ENABLED) || hosts == null || services == null) {
+            return fetchRecommendations(stackName, stackVersion, hosts, services);
+        }
+        List<String> hostSignatures = getHostSignatures(ambariClient.hosts().getHosts(HOST_SIGNATURE_FIELDS), hosts);
+        return recommendationCache.get(stackName, stackVersion, hosts, hostSignatures, services, new Callable<RecommendationWrappers>() {
+            @Override
+            public RecommendationWrappers call() {
+                return fetchRecommendations(stackName, stackVersion, hosts, services);
+            }
+        });
+    }
+
+    /**
+     * Returns the signature of the hardware and operating system of each of the given hosts, which the recommendations
+     * depend on, from the given response of {@code /api/v1/hosts}. The hosts not registered yet are left unknown.
+     */
+    @VisibleForTesting
+    static List<String> getHostSignatures(JsonObject hostsJson, List<String> hosts) {
+        Map<String, String> signatures = Maps.newHashMap();
+        JsonArray items = hostsJson.getAsJsonArray("items");
+        if (items != null) {
+            for (JsonElement item : items) {
+                JsonObject host = item.getAsJsonObject().getAsJsonObject("Hosts");
+                signatures.put(getAsString(host, "host_name"), String.format("%s/%s/%s cpus/%s kB",
+                        getAsString(host, "os_type"), getAsString(host, "os_arch"), getAsString(host, "cpu_count"), getAsString(host, "total_mem")));
+            }
+        }
+        ImmutableList.Builder<String> hostSignatures = ImmutableList.builder();
+        for (String host : hosts) {
+            hostSignatures.add(Optional.fromNullable(signatures.get(host)).or("unknown"));
+        }
+        return hostSignatures.build();
+    }
+
+    @Nullable
+    private static String getAsString(JsonObject object, String member) {
+        JsonElement element = object.get(member);
+        return element == null || element.isJsonNull() ? null : element.getAsString();
+    }
+
+    private RecommendationWrappers fetchRecommendations(String stackName, String stackVersion, List<String> hosts, List<String> services) {
+        return ambariClient.stacks().getRecommendations(stackName, stackVersion, ImmutableMap.builder()
                 .put("hosts", hosts)
                 .put("services", services)
                 .put("recommend", "host_groups")
@@ -201,28 +480,64 @@ public class AmbariServerImpl extends SoftwareProcessImpl implements AmbariServe
         Preconditions.checkNotNull(recommendationWrapper.getRecommendation().getBlueprint());
         Preconditions.checkNotNull(recommendationWrapper.getRecommendation().getBindings());
 
-        try {
-            restAdapter.create(BlueprintEndpoint.class).createBlueprint(blueprintName, ImmutableMap.builder()
-                    .put("host_groups", recommendationWrapper.getRecommendation().getBlueprint().getHostGroups())
-                    .put("configurations", getConfigurations(config))
-                    .put("Blueprints", recommendationWrapper.getStack())
-                    .build());
+        String stackName = recommendationWrapper.getStack().getName();
+        String stackVersion = recommendationWrapper.getStack().getVersion();
+        Map<String, String> repositories = getConfig(AmbariCluster.STACK_REPOSITORIES);
+        if (repositories != null && !repositories.isEmpty()) {
+            LOG.debug("{} overriding repositories of stack {} {}: {}", new Object[]{this, stackName, stackVersion, repositories});
+            updateStackRepositories(stackName, stackVersion, repositories);
+        }
+        String mirrorUrl = getAttribute(PACKAGE_MIRROR_URL);
+        if (mirrorUrl != null) {
+            mirrorStackRepositories(stackName, stackVersion, mirrorUrl);
+        }
 
-            return restAdapter.create(ClusterEndpoint.class).createCluster(clusterName, ImmutableMap.builder()
-                    .put("blueprint", blueprintName)
-                    .put("default_password", "admin")
-                    .put("host_groups", recommendationWrapper.getRecommendation().getBindings().getHostGroups())
-                    .build());
-        } catch (RetrofitError retrofitError) {
-            throw new AmbariApiException(retrofitError);
+        ambariClient.blueprints().createBlueprint(blueprintName, ImmutableMap.builder()
+                .put("host_groups", recommendationWrapper.getRecommendation().getBlueprint().getHostGroups())
+                .put("configurations", getConfigurations(config))
+                .put("Blueprints", recommendationWrapper.getStack())
+                .build());
+
+        return ambariClient.clusters().createCluster(clusterName, ImmutableMap.builder()
+                .put("blueprint", blueprintName)
+                .put("default_password", "admin")
+                .put("host_groups", recommendationWrapper.getRecommendation().getBindings().getHostGroups())
+                .build());
+    }
+
+    /**
+     * Points the repositories of the given stack that are hosted on the public repositories to the package mirror, so
+     * that the agents install the stack packages from it.
+     */
+    private void mirrorStackRepositories(String stackName, String stackVersion, String mirrorUrl) {
+        AmbariInstallCommands installCommands = new AmbariInstallCommands(getConfig(SUGGESTED_VERSION), mirrorUrl);
+        Map<String, String> mirroredRepositories = Maps.newLinkedHashMap();
+        JsonObject operatingSystems = ambariClient.stacks().getStackRepositories(stackName, stackVersion);
+        for (JsonElement operatingSystem : operatingSystems.getAsJsonArray("items")) {
+            for (JsonElement repository : operatingSystem.getAsJsonObject().getAsJsonArray("repositories")) {
+                JsonObject attributes = repository.getAsJsonObject().getAsJsonObject("Repositories");
+                String baseUrl = attributes.get("base_url").getAsString();
+                String mirroredUrl = installCommands.toMirrorUrl(baseUrl);
+                if (!mirroredUrl.equals(baseUrl)) {
+                    LOG.debug("{} mirroring repository {} of {} {} at {}", new Object[]{this, attributes.get("repo_id").getAsString(), stackName, stackVersion, mirroredUrl});
+                    mirroredRepositories.put(attributes.get("os_type").getAsString() + "/" + attributes.get("repo_id").getAsString(), mirroredUrl);
+                }
+            }
         }
+        updateStackRepositories(stackName, stackVersion, mirroredRepositories);
+    }
+
+    @Override
+    public void bootstrapAgent(String host, String user, String sshKey) {
+        waitForServiceUp();
+        agentBootstrapper.bootstrap(host, user, sshKey);
     }
 
     @Override
     public void addHostToCluster(@EffectorParam(name = "Cluster name") String cluster,
                                  @EffectorParam(name = "Host FQDN") String hostName) {
         waitForServiceUp();
-        restAdapter.create(HostEndpoint.class).addHost(cluster, hostName);
+        ambariClient.hosts().addHost(cluster, hostName);
 
     }
 
@@ -242,7 +557,48 @@ public class AmbariServerImpl extends SoftwareProcessImpl implements AmbariServe
     @Override
     public void updateStackRepository(@EffectorParam(name = "Stack Name") String stackName, @EffectorParam(name = "Stack Version") String stackVersion, @EffectorParam(name = "Operating System") String os, @EffectorParam(name = "Repository Name") String repoName, @EffectorParam(name = "Repository URL") String url) {
         waitForServiceUp();
-        restAdapter.create(StackEndpoint.class)
+        putStackRepository(stackName, stackVersion, os, repoName, url);
+    }
+
+    @Override
+    public void updateStackRepositories(@EffectorParam(name = "Stack Name") final String stackName,
+                                        @EffectorParam(name = "Stack Version") final String stackVersion,
+                                        @EffectorParam(name = "Repositories", description = "Map of repository URLs, keyed by <os>/<repository name>") Map<String, String> repositories) {
+        // All the keys are checked before any repository is updated
+        Map<List<String>, String> repositoriesByOsAndName = Maps.newLinkedHashMap();
+        for (Map.Entry<String, String> repository : repositories.entrySet()) {
+            repositoriesByOsAndName.put(parseStackRepositoryKey(repository.getKey()), repository.getValue());
+        }
+        waitForServiceUp();
+        // Each repository is updated independently, so they are updated concurrently
+        AmbariClient.Batch batch = ambariClient.batch();
+        for (final Map.Entry<List<String>, String> repository : repositoriesByOsAndName.entrySet()) {
+            batch.submit(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    putStackRepository(stackName, stackVersion, repository.getKey().get(0), repository.getKey().get(1), repository.getValue());
+                    return null;
+                }
+            });
+        }
+        batch.join();
+    }
+
+    /**
+     * @return the OS and the name of the repository of the given {@code <os>/<repository name>} key.
+     * @throws IllegalArgumentException if the key is not made of a non-empty OS and name.
+     */
+    @VisibleForTesting
+    static List<String> parseStackRepositoryKey(String key) {
+        List<String> osAndName = Splitter.on('/').trimResults().splitToList(key);
+        if (osAndName.size() != 2 || osAndName.get(0).isEmpty() || osAndName.get(1).isEmpty()) {
+            throw new IllegalArgumentException("Stack repository must be keyed by <os>/<repository name>: " + key);
+        }
+        return osAndName;
+    }
+
+    private void putStackRepository(String stackName, String stackVersion, String os, String repoName, String url) {
+        ambariClient.stacks()
                 .updateStackRepository(stackName, stackVersion, os, repoName, ImmutableMap.builder()
                         .put("Repositories", ImmutableMap.builder()
                                 .put("base_url", url)
@@ -258,24 +614,32 @@ public class AmbariServerImpl extends SoftwareProcessImpl implements AmbariServe
                                     @EffectorParam(name = "configuration", description = "Services Configuration", nullable = true, defaultValue = EffectorParam.MAGIC_STRING_MEANING_NULL) Map<String, Map<Object, Object>> configuration) {
         waitForServiceUp();
 
-        final ServiceEndpoint serviceEndpoint = restAdapter.create(ServiceEndpoint.class);
-        final HostEndpoint hostEndpoint = restAdapter.create(HostEndpoint.class);
+        final ServiceEndpoint serviceEndpoint = ambariClient.services();
+        final HostEndpoint hostEndpoint = ambariClient.hosts();
 
         // Step 1 - Add the service to the cluster
         serviceEndpoint.addService(cluster, service);
 
         // Step 2 - Add Components to the service
         // Step 3 - Create host components
-        for (Map.Entry<String, String> mapping : mappings.entrySet()) {
-            serviceEndpoint.createComponent(cluster, service, mapping.getKey());
-            hostEndpoint.createHostComponent(cluster, mapping.getValue(), mapping.getKey());
+        // Each host component depends on its component only, so the components are created concurrently
+        AmbariClient.Batch components = ambariClient.batch();
+        for (final Map.Entry<String, String> mapping : mappings.entrySet()) {
+            components.submit(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    serviceEndpoint.createComponent(cluster, service, mapping.getKey());
+                    hostEndpoint.createHostComponent(cluster, mapping.getValue(), mapping.getKey());
+                    return null;
+                }
+            });
         }
+        components.join();
 
         // Step 4 - Create configuration, if needed
-        if (configuration != null) {
-            for (Map.Entry<String, Map<Object, Object>> entry : configuration.entrySet()) {
-                createServiceConfiguration(cluster, entry.getKey(), entry.getValue());
-            }
+        // All the types go in a single update of the cluster, as concurrent updates of the same cluster conflict
+        if (configuration != null && !configuration.isEmpty()) {
+            putServiceConfigurations(cluster, configuration);
         }
 
         final Task installationTask = Tasks.builder()
@@ -325,15 +689,38 @@ public class AmbariServerImpl extends SoftwareProcessImpl implements AmbariServe
                                            @EffectorParam(name = "Component configuration key") String configurationKey,
                                            @EffectorParam(name = "Component configuration") Map<Object, Object> configuration) {
         waitForServiceUp();
-        restAdapter.create(ConfigurationEnpoint.class).createConfiguration(cluster, ImmutableMap.builder()
-                .put("Clusters", ImmutableMap.builder()
-                        .put("desired_configs", ImmutableMap.builder()
-                                .put("type", configurationKey)
-                                .put("tag", String.format("version%d", System.currentTimeMillis()))
-                                .put("properties", configuration)
-                                .build())
-                        .build())
-                .build());
+        putServiceConfiguration(cluster, configurationKey, configuration);
+    }
+
+    private void putServiceConfiguration(String cluster, String configurationKey, Map<Object, Object> configuration) {
+        putServiceConfigurations(cluster, ImmutableMap.of(configurationKey, configuration));
+    }
+
+    private void putServiceConfigurations(String cluster, Map<String, Map<Object, Object>> configurations) {
+        ambariClient.configurations().createConfiguration(cluster,
+                newDesiredConfigs(configurations, String.format("version%d", System.currentTimeMillis())));
+    }
+
+    /**
+     * @return the body of the cluster update creating the given configuration types, all with the given tag.
+     */
+    @VisibleForTesting
+    static Map<String, Object> newDesiredConfigs(Map<String, Map<Object, Object>> configurations, String tag) {
+        ImmutableList.Builder<Map<String, Object>> desiredConfigs = ImmutableList.builder();
+        for (Map.Entry<String, Map<Object, Object>> entry : configurations.entrySet()) {
+            desiredConfigs.add(ImmutableMap.<String, Object>builder()
+                    .put("type", entry.getKey())
+                    .put("tag", tag)
+                    .put("properties", entry.getValue())
+                    .build());
+        }
+        return ImmutableMap.<String, Object>of("Clusters", ImmutableMap.of("desired_configs", desiredConfigs.build()));
+    }
+
+    @Override
+    public String dumpWireLog() {
+        AmbariClient client = ambariClient;
+        return client != null ? client.getWireLog().dump() : "";
     }
 
     @Override
@@ -341,7 +728,7 @@ public class AmbariServerImpl extends SoftwareProcessImpl implements AmbariServe
                              @EffectorParam(name = "Service name") final String service) {
         waitForServiceUp();
 
-        final Request request = restAdapter.create(ServiceEndpoint.class).updateService(cluster, service, ImmutableMap.builder()
+        final Request request = ambariClient.services().updateService(cluster, service, ImmutableMap.builder()
                 .put("RequestInfo", ImmutableMap.builder()
                         .put("context", String.format("Start %s service", service))
                         .build())
@@ -366,6 +753,11 @@ public class AmbariServerImpl extends SoftwareProcessImpl implements AmbariServe
         return false;
     }
 
+    private boolean isClusterDeployed() {
+        AmbariCluster ambariCluster = Iterables.getFirst(Iterables.filter(Entities.ancestors(this), AmbariCluster.class), null);
+        return ambariCluster != null && Boolean.TRUE.equals(ambariCluster.getAttribute(AmbariCluster.CLUSTER_SERVICES_INITIALISE_CALLED));
+    }
+
     private List<? extends Map<?, ?>> getConfigurations(Map<String, Map> config) {
         ImmutableList.Builder<Map<?, ?>> builder = ImmutableList.<Map<?, ?>>builder();
         if (config != null) {
@@ -21,28 +21,44 @@ package io.brooklyn.ambari.server;
 import static java.lang.String.format;
 import static org.apache.brooklyn.util.ssh.BashCommands.installPackage;
 import static org.apache.brooklyn.util.ssh.BashCommands.sudo;
-import static org.apache.brooklyn.util.ssh.BashCommands.unzip;
+import static org.apache.brooklyn.util.text.StringEscapes.BashStringEscapes.wrapBash;
 
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.Map;
+import javax.annotation.Nullable;
 
 import org.apache.brooklyn.api.entity.EntityLocal;
 import org.apache.brooklyn.core.entity.Entities;
+import org.apache.brooklyn.core.entity.EntityInternal;
 import org.apache.brooklyn.entity.java.JavaSoftwareProcessSshDriver;
 import org.apache.brooklyn.entity.software.base.SoftwareProcess;
+import org.apache.brooklyn.entity.software.base.lifecycle.ScriptHelper;
 import org.apache.brooklyn.location.ssh.SshMachineLocation;
 import org.apache.brooklyn.util.collections.MutableMap;
+import org.apache.brooklyn.util.os.Os;
 import org.apache.brooklyn.util.ssh.BashCommands;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 
 import io.brooklyn.ambari.AmbariCluster;
+import io.brooklyn.ambari.AmbariConfigAndSensors;
 import io.brooklyn.ambari.AmbariInstallCommands;
+import io.brooklyn.ambari.AmbariNode;
 
 public class AmbariServerSshDriver extends JavaSoftwareProcessSshDriver implements AmbariServerDriver {
 
     public static final String RESOURCE_STACK_LOCATION = "/var/lib/ambari-server/resources/stacks/%s/%s/services/";
-    private final AmbariInstallCommands ambariInstallHelper = new AmbariInstallCommands(entity.getConfig(SoftwareProcess.SUGGESTED_VERSION));
+    private static final String SETUP_MARKER = "/var/lib/ambari-server/.setup-done";
+    private static final String STACK_ARCHIVE_MARKER_LOCATION = "/var/lib/ambari-server/.stack-archives/%s-%s";
+
+    private volatile ListenableFuture<List<String>> stackArchivePreparation;
 
     public AmbariServerSshDriver(EntityLocal entity, SshMachineLocation machine) {
         super(entity, machine);
@@ -74,13 +90,44 @@ public class AmbariServerSshDriver extends JavaSoftwareProcessSshDriver implemen
     public void install() {
         String fqdn = String.format("%s-%s.%s", entity.getConfig(AmbariCluster.SERVER_HOST_GROUP).toLowerCase(), entity.getId().toLowerCase(), entity.getConfig(AmbariCluster.DOMAIN_NAME));
         getEntity().setFqdn(fqdn);
-        ImmutableList<String> commands =
-                ImmutableList.<String>builder()
-                        .add(ambariInstallHelper.installAmbariRequirements(getMachine()))
-                        .addAll(BashCommands.setHostname(fqdn))
-                        .add(installPackage("ambari-server"))
-                        .add(sudo("ambari-server setup -s"))
-                        .build();
+
+        // The stack archives are downloaded and uploaded while the server is installed, and unpacked once customizing
+        stackArchivePreparation = prepareStackArchives();
+
+        String mirrorUrl = null;
+        if (Boolean.TRUE.equals(entity.getConfig(AmbariCluster.PACKAGE_MIRROR_ENABLED))) {
+            installPackageMirror();
+            // The server installs from its own mirror, which warms its cache for the agents. Its address must be
+            // reachable by the agents, as the bootstrap API copies the repository list of the server to them.
+            mirrorUrl = entity.getAttribute(AmbariServer.PACKAGE_MIRROR_URL);
+        }
+
+        AmbariDatabase database = getDatabase();
+        if (database != null) {
+            copyDatabaseCredentials(database);
+        }
+
+        String version = entity.getConfig(SoftwareProcess.SUGGESTED_VERSION);
+        AmbariInstallCommands ambariInstallHelper = new AmbariInstallCommands(version, mirrorUrl);
+        ImmutableList<String> commands;
+        if (isPreInstalled(ambariInstallHelper)) {
+            log.info("{} found ambari-server {} already installed on {}: skipping its installation", new Object[]{entity, version, getMachine()});
+            commands = ImmutableList.<String>builder()
+                    .add(ambariInstallHelper.startNtp(getMachine()))
+                    .addAll(BashCommands.setHostname(fqdn))
+                    .add(format("%s || %s", sudo(format("grep -qxF %s %s", wrapBash(getSetupSignature()), SETUP_MARKER)), setupCommand()))
+                    // The server keeps its own copy of the database password
+                    .add(format("rm -rf %s", getDatabaseCredentialsDirectory()))
+                    .build();
+        } else {
+            commands = ImmutableList.<String>builder()
+                    .add(ambariInstallHelper.installAmbariRequirements(getMachine()))
+                    .addAll(BashCommands.setHostname(fqdn))
+                    .add(installPackage("ambari-server"))
+                    .add(setupCommand())
+                    .add(format("rm -rf %s", getDatabaseCredentialsDirectory()))
+                    .build();
+        }
 
         newScript(INSTALLING).body
                 .append(commands)
@@ -88,50 +135,161 @@ public class AmbariServerSshDriver extends JavaSoftwareProcessSshDriver implemen
                 .execute();
     }
 
-    @Override
-    public void customize() {
-        List<String> extraStackDefinitions = getExtraStackDefinitionUrls();
-        ImmutableList.Builder<String> builder = ImmutableList.<String>builder();
-        if (!extraStackDefinitions.isEmpty()) {
-            for (String extraStackDefinition : extraStackDefinitions) {
-                String tmpLocation = copyToTmp(extraStackDefinition);
-                builder.add(getUnpackCommand(tmpLocation));
-            }
+    private boolean isPreInstalled(AmbariInstallCommands ambariInstallHelper) {
+        boolean preInstalled = Boolean.TRUE.equals(entity.getConfig(AmbariNode.REUSE_PREINSTALLED))
+                && newScript("checking pre-installed ambari-server").body
+                        .append(ambariInstallHelper.checkInstalled("ambari-server"))
+                        .execute() == 0;
+        entity.setAttribute(AmbariNode.PREINSTALLED, preInstalled);
+        return preInstalled;
+    }
 
-            newScript(CUSTOMIZING)
-                    .body.append(builder.build())
-                    .failOnNonZeroResultCode()
-                    .execute();
+    /**
+     * Runs the silent setup of the server, and marks it as done so that images baked from this server skip it. The
+     * marker records the {@link #getSetupSignature() database} the setup targeted: an image set up for another
+     * database is set up again.
+     */
+    private String setupCommand() {
+        AmbariDatabase database = getDatabase();
+        String marker = format("echo %s | %s > /dev/null", wrapBash(getSetupSignature()), sudo(format("tee %s", SETUP_MARKER)));
+        if (database == null) {
+            return BashCommands.chainGroup(sudo("ambari-server setup -s"), marker);
         }
+        log.info("{} setting up ambari-server with external database {}", entity, database);
+        String credentials = getDatabaseCredentialsDirectory();
+        return BashCommands.chainGroup(ImmutableList.<String>builder()
+                .addAll(database.getSchemaCommands(credentials))
+                .add(sudo(format("ambari-server setup -s %s", database.getSetupFlags(credentials))))
+                .add(marker)
+                .build());
     }
 
-    @Override
-    public void launch() {
-        newScript(LAUNCHING)
-                .body.append(sudo("ambari-server start"))
+    /**
+     * Copies the files holding the password of the database to the server, over SFTP, so that the password is not
+     * part of the scripts run on the server.
+     */
+    private void copyDatabaseCredentials(AmbariDatabase database) {
+        String credentials = getDatabaseCredentialsDirectory();
+        newScript("preparing database credentials").body
+                .append(format("mkdir -p %1$s && chmod 700 %1$s", credentials))
                 .failOnNonZeroResultCode()
                 .execute();
+        for (Map.Entry<String, String> file : database.getCredentialFiles().entrySet()) {
+            getMachine().copyTo(ImmutableMap.of("permissions", "0600"), new ByteArrayInputStream(file.getValue().getBytes(StandardCharsets.UTF_8)),
+                    Os.mergePaths(credentials, file.getKey()));
+        }
     }
 
-    private String copyToTmp(String extraStackDefinition) {
-        String filename = extraStackDefinition.substring(extraStackDefinition.lastIndexOf('/') + 1);
-        String destination = "/tmp/" + filename;
-        getMachine().copyTo(resource.getResourceFromUrl(extraStackDefinition), destination);
-        return destination;
+    private String getDatabaseCredentialsDirectory() {
+        return Os.mergePaths(getRunDir(), "database");
     }
 
-    private String getUnpackCommand(String tmpLocation) {
-        if (tmpLocation.endsWith("tar")) {
-            return sudo(format("tar xvf %s -C %s", tmpLocation, stackResourceLocation()));
-        } else if (tmpLocation.endsWith("tar.gz")) {
-            return sudo(format("tar zxvf %s -C %s", tmpLocation, stackResourceLocation()));
-        } else if (tmpLocation.endsWith("zip")) {
-            return BashCommands.chain(
-                    BashCommands.INSTALL_UNZIP,
-                    sudo(unzip(tmpLocation, stackResourceLocation())));
+    private String getSetupSignature() {
+        AmbariDatabase database = getDatabase();
+        return database == null ? AmbariDatabase.EMBEDDED_SIGNATURE : database.getSignature();
+    }
+
+    /**
+     * Returns the external database of the server, waiting for it to be up, or null if the server uses the embedded one.
+     */
+    @Nullable
+    private AmbariDatabase getDatabase() {
+        AmbariDatabase.Type type = entity.getConfig(AmbariCluster.DATABASE_TYPE);
+        if (type == null || type == AmbariDatabase.Type.EMBEDDED) {
+            return null;
+        }
+        String url = entity.getConfig(AmbariServer.DATABASE_URL);
+        if (url == null) {
+            throw new IllegalStateException(format("No URL for the %s database of %s", type, entity));
         }
+        return AmbariDatabase.of(type, url, entity.getConfig(AmbariCluster.DATABASE_NAME),
+                entity.getConfig(AmbariCluster.DATABASE_USERNAME), entity.getConfig(AmbariCluster.DATABASE_PASSWORD));
+    }
 
-        throw new IllegalStateException("Stack locations must be of type tar, tar.gz, zip");
+    /**
+     * Sets up the {@link AmbariPackageMirror} and publishes its URL, at which the agents waiting for it start
+     * installing.
+     */
+    private void installPackageMirror() {
+        Integer port = entity.getAttribute(AmbariServer.PACKAGE_MIRROR_PORT);
+        AmbariPackageMirror mirror = new AmbariPackageMirror(port, entity.getConfig(AmbariServer.PACKAGE_MIRROR_UPSTREAM_URL));
+
+        String tmpConfigFileLoc = "/tmp/ambari-mirror.conf";
+        newScript("installing package mirror").body
+                .append(mirror.getInstallCommands())
+                .failOnNonZeroResultCode()
+                .execute();
+        getMachine().copyTo(new ByteArrayInputStream(mirror.getConfiguration().getBytes(StandardCharsets.UTF_8)), tmpConfigFileLoc);
+        newScript("launching package mirror").body
+                .append(sudo(format("mv %s %s", tmpConfigFileLoc, AmbariPackageMirror.CONFIGURATION_LOCATION)),
+                        mirror.getLaunchCommands())
+                .failOnNonZeroResultCode()
+                .execute();
+
+        String address = entity.getAttribute(entity.getConfig(AmbariConfigAndSensors.ETC_HOST_ADDRESS));
+        if (address == null) {
+            address = getMachine().getAddress().getHostAddress();
+        }
+        entity.setAttribute(AmbariServer.PACKAGE_MIRROR_URL, format("http://%s:%d", address, port));
+    }
+
+    @Override
+    public void customize() {
+        Integer expectedAgents = getParentAmbariCluster().getAttribute(AmbariCluster.EXPECTED_AGENTS);
+        AmbariServerTuning tuning = AmbariServerTuning.of(entity, expectedAgents != null ? expectedAgents : 0);
+        log.debug("{} tuning Ambari server on {}: {}", new Object[]{entity, getMachine(), tuning});
+
+        ImmutableList.Builder<String> builder = ImmutableList.<String>builder()
+                .addAll(tuning.getCommands(entity.getConfig(AmbariServer.EXTRA_PROPERTIES)))
+                .addAll(getStackArchiveCommands());
+
+        newScript(CUSTOMIZING)
+                .body.append(builder.build())
+                .failOnNonZeroResultCode()
+                .execute();
+    }
+
+    /**
+     * Returns the commands unpacking the extra stack definitions which are not yet unpacked on the server, after the
+     * preparation started during the install, if any, completes.
+     */
+    private List<String> getStackArchiveCommands() {
+        ListenableFuture<List<String>> preparation = stackArchivePreparation;
+        stackArchivePreparation = null;
+        if (preparation == null) {
+            preparation = prepareStackArchives();
+        }
+        return Futures.getUnchecked(preparation);
+    }
+
+    /**
+     * Starts preparing the extra stack definitions: see {@link StackArchiveInstaller}.
+     */
+    private ListenableFuture<List<String>> prepareStackArchives() {
+        StackArchiveCache cache = new StackArchiveCache(new File(entity.getConfig(AmbariServer.STACK_ARCHIVE_CACHE_DIRECTORY)), resource);
+        StackArchiveInstaller.Server server = new StackArchiveInstaller.Server() {
+            @Override
+            public String run(String summary, List<String> commands) {
+                ScriptHelper script = newScript(summary).body.append(commands).gatherOutput();
+                return script.execute() == 0 ? script.getResultStdout() : null;
+            }
+
+            @Override
+            public void copyTo(File file, String destination) {
+                getMachine().copyTo(file, destination);
+            }
+        };
+        return new StackArchiveInstaller(cache, server, ((EntityInternal) entity).getExecutionContext(),
+                stackArchiveMarkerLocation(), stackResourceLocation())
+                .prepare(getExtraStackDefinitionUrls());
+    }
+
+    @Override
+    public void launch() {
+        newScript(LAUNCHING)
+                .body.append(sudo("ambari-server start"))
+                .failOnNonZeroResultCode()
+                .execute();
     }
 
     private List<String> getExtraStackDefinitionUrls() {
@@ -146,6 +304,11 @@ public class AmbariServerSshDriver extends JavaSoftwareProcessSshDriver implemen
         return format(RESOURCE_STACK_LOCATION, stackName, stackVersion);
     }
 
+    private String stackArchiveMarkerLocation() {
+        AmbariCluster parent = getParentAmbariCluster();
+        return format(STACK_ARCHIVE_MARKER_LOCATION, parent.getConfig(AmbariCluster.HADOOP_STACK_NAME), parent.getConfig(AmbariCluster.HADOOP_STACK_VERSION));
+    }
+
     private AmbariCluster getParentAmbariCluster() {
         Iterable<AmbariCluster> ancestors = Iterables.filter(Entities.ancestors(entity), AmbariCluster.class);
         return Iterables.getFirst(ancestors, null);
@@ -0,0 +1,223 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.brooklyn.ambari.server;
+
+import static java.lang.String.format;
+import static org.apache.brooklyn.util.ssh.BashCommands.sudo;
+
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nullable;
+
+import org.apache.brooklyn.api.entity.Entity;
+import org.apache.brooklyn.config.ConfigKey;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.CharMatcher;
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+/**
+ * Heap, thread-pool, database-pool and alert settings of an Ambari server, and the commands applying them to its
+ * ambari-env.sh and ambari.properties. The commands are idempotent: they replace the existing values, and only append
+ * the properties missing from the file.
+ */
+public class AmbariServerTuning {
+
+    public static final String PROPERTIES_LOCATION = "/etc/ambari-server/conf/ambari.properties";
+    public static final String ENV_LOCATION = "/var/lib/ambari-server/ambari-env.sh";
+
+    // Settings of a stock Ambari 2.x server, which the recommended ones never go below
+    private static final int DEFAULT_HEAP_SIZE_MB = 2048;
+    private static final int DEFAULT_INITIAL_HEAP_SIZE_MB = 512;
+    private static final int DEFAULT_THREAD_POOL_SIZE = 25;
+    private static final int INTERNAL_CONNECTION_POOL_SIZE = 32;
+
+    private final int heapSizeMb;
+    private final int agentThreadPoolSize;
+    private final int clientThreadPoolSize;
+    private final int dbConnectionPoolMaxSize;
+    private final int alertExecutionThreads;
+    private final boolean alertCacheEnabled;
+
+    @VisibleForTesting
+    AmbariServerTuning(int heapSizeMb, int agentThreadPoolSize, int clientThreadPoolSize, int dbConnectionPoolMaxSize,
+            int alertExecutionThreads, boolean alertCacheEnabled) {
+        this.heapSizeMb = heapSizeMb;
+        this.agentThreadPoolSize = agentThreadPoolSize;
+        this.clientThreadPoolSize = clientThreadPoolSize;
+        this.dbConnectionPoolMaxSize = dbConnectionPoolMaxSize;
+        this.alertExecutionThreads = alertExecutionThreads;
+        this.alertCacheEnabled = alertCacheEnabled;
+    }
+
+    /**
+     * Returns the settings recommended for a server managing the given number of agents. They match the Ambari
+     * defaults for small clusters, and grow with the number of agents, up to the values recommended for clusters of
+     * a thousand hosts.
+     */
+    public static AmbariServerTuning recommended(int expectedAgents) {
+        int heapSizeMb;
+        if (expectedAgents <= 50) {
+            heapSizeMb = DEFAULT_HEAP_SIZE_MB;
+        } else if (expectedAgents <= 100) {
+            heapSizeMb = 4096;
+        } else if (expectedAgents <= 500) {
+            heapSizeMb = 8192;
+        } else {
+            heapSizeMb = 16384;
+        }
+        int agentThreads = clamp(expectedAgents / 5, DEFAULT_THREAD_POOL_SIZE, 100);
+        int clientThreads = clamp(expectedAgents / 8, DEFAULT_THREAD_POOL_SIZE, 65);
+        // The internal pool serves the stock thread pools: every thread added to them may hold another connection
+        int dbConnections = INTERNAL_CONNECTION_POOL_SIZE + agentThreads + clientThreads - 2 * DEFAULT_THREAD_POOL_SIZE;
+        int alertThreads = clamp(expectedAgents / 100, 2, 8);
+        return new AmbariServerTuning(heapSizeMb, agentThreads, clientThreads, dbConnections, alertThreads, expectedAgents > 50);
+    }
+
+    /**
+     * Returns the settings configured on the given server, falling back to those {@link #recommended(int)} for the
+     * given number of agents.
+     */
+    public static AmbariServerTuning of(Entity server, int expectedAgents) {
+        AmbariServerTuning recommended = recommended(expectedAgents);
+        return new AmbariServerTuning(
+                get(server, AmbariServer.HEAP_SIZE_MB, recommended.heapSizeMb),
+                get(server, AmbariServer.AGENT_THREAD_POOL_SIZE, recommended.agentThreadPoolSize),
+                get(server, AmbariServer.CLIENT_THREAD_POOL_SIZE, recommended.clientThreadPoolSize),
+                get(server, AmbariServer.DB_CONNECTION_POOL_MAX_SIZE, recommended.dbConnectionPoolMaxSize),
+                get(server, AmbariServer.ALERT_EXECUTION_THREADS, recommended.alertExecutionThreads),
+                get(server, AmbariServer.ALERT_CACHE_ENABLED, recommended.alertCacheEnabled));
+    }
+
+    public int getHeapSizeMb() {
+        return heapSizeMb;
+    }
+
+    public int getAgentThreadPoolSize() {
+        return agentThreadPoolSize;
+    }
+
+    public int getClientThreadPoolSize() {
+        return clientThreadPoolSize;
+    }
+
+    public int getDbConnectionPoolMaxSize() {
+        return dbConnectionPoolMaxSize;
+    }
+
+    public int getAlertExecutionThreads() {
+        return alertExecutionThreads;
+    }
+
+    public boolean isAlertCacheEnabled() {
+        return alertCacheEnabled;
+    }
+
+    /**
+     * @return the ambari.properties entries of these settings.
+     */
+    public Map<String, String> getProperties() {
+        ImmutableMap.Builder<String, String> properties = ImmutableMap.<String, String>builder()
+                .put("agent.threadpool.size.max", String.valueOf(agentThreadPoolSize))
+                .put("client.threadpool.size.max", String.valueOf(clientThreadPoolSize));
+        if (dbConnectionPoolMaxSize > INTERNAL_CONNECTION_POOL_SIZE) {
+            // The pool size is only honoured by the c3p0 pool: the internal one used by default is kept when it is enough
+            properties.put("server.jdbc.connection-pool", "c3p0")
+                    .put("server.jdbc.connection-pool.max-size", String.valueOf(dbConnectionPoolMaxSize));
+        }
+        return properties
+                .put("alerts.execution.scheduler.maxThreads", String.valueOf(alertExecutionThreads))
+                .put("alerts.cache.enabled", String.valueOf(alertCacheEnabled))
+                .build();
+    }
+
+    /**
+     * Returns the commands applying these settings, then the given extra properties, which take precedence.
+     */
+    public List<String> getCommands(@Nullable Map<String, String> extraProperties) {
+        return getCommands(extraProperties, PROPERTIES_LOCATION, ENV_LOCATION);
+    }
+
+    @VisibleForTesting
+    List<String> getCommands(@Nullable Map<String, String> extraProperties, String propertiesLocation, String envLocation) {
+        Map<String, String> properties = Maps.newLinkedHashMap(getProperties());
+        if (extraProperties != null) {
+            properties.putAll(extraProperties);
+        }
+        ImmutableList.Builder<String> commands = ImmutableList.builder();
+        for (Map.Entry<String, String> property : properties.entrySet()) {
+            commands.add(setProperty(propertiesLocation, property.getKey(), property.getValue()));
+        }
+        // The initial heap is kept at a quarter of the maximum, as in the Ambari defaults, and not below them
+        int initialHeapSizeMb = Math.min(heapSizeMb, Math.max(DEFAULT_INITIAL_HEAP_SIZE_MB, heapSizeMb / 4));
+        commands.add(sudo(format("sed -i -e 's/-Xmx[0-9]*[kKmMgG]/-Xmx%dm/' -e 's/-Xms[0-9]*[kKmMgG]/-Xms%dm/' %s",
+                heapSizeMb, initialHeapSizeMb, envLocation)));
+        return commands.build();
+    }
+
+    /**
+     * Returns the command replacing or appending the given property. The key is matched literally, and the value is
+     * written as is: it may contain any character of a JDBC URL or a password, such as {@code &}, {@code #},
+     * {@code \\} or {@code '}.
+     */
+    @VisibleForTesting
+    static String setProperty(String file, String key, String value) {
+        Preconditions.checkArgument(!key.isEmpty() && CharMatcher.anyOf("=:#! \t\r\n").matchesNoneOf(key), "Invalid property key: %s", key);
+        Preconditions.checkArgument(CharMatcher.anyOf("\r\n").matchesNoneOf(value), "Property value of %s must fit on one line", key);
+        String keyPattern = key.replaceAll("[.\\[\\]*^$\\\\]", "\\\\$0");
+        String replacement = (key + "=" + value).replaceAll("[\\\\&#]", "\\\\$0");
+        return format("if grep -q %s %s; then %s; else %s; fi",
+                quote("^" + keyPattern + "="), file,
+                sudo(format("sed -i %s %s", quote("s#^" + keyPattern + "=.*#" + replacement + "#"), file)),
+                format("printf '%%s\\n' %s | %s", quote(key + "=" + value), sudo(format("tee -a %s > /dev/null", file))));
+    }
+
+    /**
+     * @return the given string in single quotes, for bash.
+     */
+    private static String quote(String value) {
+        return "'" + value.replace("'", "'\\''") + "'";
+    }
+
+    private static <T> T get(Entity entity, ConfigKey<T> key, T defaultValue) {
+        T value = entity.getConfig(key);
+        return value != null ? value : defaultValue;
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+                .add("heapSizeMb", heapSizeMb)
+                .add("agentThreadPoolSize", agentThreadPoolSize)
+                .add("clientThreadPoolSize", clientThreadPoolSize)
+                .add("dbConnectionPoolMaxSize", dbConnectionPoolMaxSize)
+                .add("alertExecutionThreads", alertExecutionThreads)
+                .add("alertCacheEnabled", alertCacheEnabled)
+                .toString();
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.brooklyn.ambari.server;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.brooklyn.api.entity.EntityLocal;
+import org.apache.brooklyn.api.sensor.SensorEvent;
+import org.apache.brooklyn.api.sensor.SensorEventListener;
+import org.apache.brooklyn.core.enricher.AbstractEnricher;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+
+/**
+ * Publishes the hosts added to and removed from {@link AmbariServer#REGISTERED_HOSTS} on
+ * {@link AmbariServer#REGISTERED_HOSTS_DELTA}, so consumers interested in membership changes do not have to diff the
+ * whole list themselves. Nothing is published when the membership did not change.
+ */
+public class RegisteredHostsDeltaEnricher extends AbstractEnricher implements SensorEventListener<List<String>> {
+
+    public static final String ADDED = "added";
+    public static final String REMOVED = "removed";
+
+    private Set<String> previousHosts;
+
+    @Override
+    public void setEntity(EntityLocal entity) {
+        super.setEntity(entity);
+        // On rebind, the sensor already holds the last known membership, which is our baseline
+        previousHosts = copyOf(entity.getAttribute(AmbariServer.REGISTERED_HOSTS));
+        subscribe(entity, AmbariServer.REGISTERED_HOSTS, this);
+    }
+
+    @Override
+    public void onEvent(SensorEvent<List<String>> event) {
+        Set<String> hosts = copyOf(event.getValue());
+        Map<String, List<String>> delta = computeDelta(previousHosts, hosts);
+        previousHosts = hosts;
+
+        if (!delta.get(ADDED).isEmpty() || !delta.get(REMOVED).isEmpty()) {
+            emit(AmbariServer.REGISTERED_HOSTS_DELTA, delta);
+        }
+    }
+
+    static Map<String, List<String>> computeDelta(Set<String> previousHosts, Set<String> hosts) {
+        return ImmutableMap.<String, List<String>>of(
+                ADDED, ImmutableList.copyOf(Sets.difference(hosts, previousHosts)),
+                REMOVED, ImmutableList.copyOf(Sets.difference(previousHosts, hosts)));
+    }
+
+    private static Set<String> copyOf(List<String> hosts) {
+        return hosts != null ? ImmutableSet.copyOf(hosts) : ImmutableSet.<String>of();
+    }
+}
@@ -0,0 +1,281 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.brooklyn.ambari.server;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+import javax.annotation.Nullable;
+
+import org.apache.brooklyn.util.core.ResourceUtils;
+import org.apache.brooklyn.util.core.http.HttpTool;
+import org.apache.brooklyn.util.exceptions.Exceptions;
+import org.apache.brooklyn.util.time.Duration;
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Objects;
+import com.google.common.hash.Hashing;
+import com.google.common.hash.HashingInputStream;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Closeables;
+
+/**
+ * Content-addressed cache of the stack definition archives on the Brooklyn side. Archives are stored under their
+ * SHA-256 digest; an index per URL records the digest last downloaded from it, along with the validators (ETag and
+ * Last-Modified) returned by the server, so that a HTTP(S) archive is only downloaded again when it has changed.
+ * The conditional requests follow redirects and trust the same servers as {@link ResourceUtils}. Archives from URLs
+ * carrying credentials, and from other URLs (classpath, files), are read through {@link ResourceUtils} and hashed on
+ * each fetch, as this is cheap next to shipping them to the server.
+ */
+public class StackArchiveCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(StackArchiveCache.class);
+
+    private static final String ETAG = "etag";
+    private static final String LAST_MODIFIED = "lastModified";
+    private static final String DIGEST = "digest";
+
+    private static final Duration DEFAULT_CONNECT_TIMEOUT = Duration.THIRTY_SECONDS;
+    private static final Duration DEFAULT_READ_TIMEOUT = Duration.TWO_MINUTES;
+
+    private final File directory;
+    private final ResourceUtils resource;
+    private final Duration connectTimeout;
+    private final Duration readTimeout;
+
+    public StackArchiveCache(File directory, ResourceUtils resource) {
+        this(directory, resource, DEFAULT_CONNECT_TIMEOUT, DEFAULT_READ_TIMEOUT);
+    }
+
+    /**
+     * @param connectTimeout how long to wait for the connection to a HTTP(S) server.
+     * @param readTimeout    how long to wait for data from a HTTP(S) server, before giving up on the download.
+     */
+    public StackArchiveCache(File directory, ResourceUtils resource, Duration connectTimeout, Duration readTimeout) {
+        this.directory = directory;
+        this.resource = resource;
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+    }
+
+    /**
+     * An archive stored in the cache.
+     */
+    public static final class Archive {
+        private final String url;
+        private final String digest;
+        private final File file;
+
+        Archive(String url, String digest, File file) {
+            this.url = url;
+            this.digest = digest;
+            this.file = file;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        /**
+         * @return the hex-encoded SHA-256 digest of the archive.
+         */
+        public String getDigest() {
+            return digest;
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        /**
+         * @return the file name of the archive, as found at the end of its URL.
+         */
+        public String getFilename() {
+            return url.substring(url.lastIndexOf('/') + 1);
+        }
+
+        @Override
+        public String toString() {
+            return Objects.toStringHelper(this)
+                    .add("url", url)
+                    .add("digest", digest)
+                    .toString();
+        }
+    }
+
+    /**
+     * Returns the archive at the given URL, downloading it only if the cache does not hold its current content.
+     */
+    public Archive fetch(String url) {
+        try {
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Cannot create stack archive cache directory " + directory);
+            }
+            return isPlainHttp(url) ? fetchHttp(url) : store(url, resource.getResourceFromUrl(url), null, null);
+        } catch (IOException e) {
+            throw Exceptions.propagate(e);
+        }
+    }
+
+    private Archive fetchHttp(String url) throws IOException {
+        Properties index = readIndex(url);
+        Archive cached = getCached(url, index);
+
+        HttpClient client = HttpTool.httpClientBuilder()
+                .uri(url)
+                .laxRedirect(true)
+                .connectionTimeout(connectTimeout)
+                .socketTimeout(readTimeout)
+                .build();
+        try {
+            HttpGet request = new HttpGet(url);
+            if (cached != null) {
+                if (index.getProperty(ETAG) != null) {
+                    request.setHeader("If-None-Match", index.getProperty(ETAG));
+                }
+                if (index.getProperty(LAST_MODIFIED) != null) {
+                    request.setHeader("If-Modified-Since", index.getProperty(LAST_MODIFIED));
+                }
+            }
+            HttpResponse response = client.execute(request);
+            int code = response.getStatusLine().getStatusCode();
+            if (code == HttpStatus.SC_NOT_MODIFIED && cached != null) {
+                EntityUtils.consume(response.getEntity());
+                LOG.debug("Stack archive {} not modified, using cached {}", url, cached.getDigest());
+                return cached;
+            }
+            if (code / 100 != 2) {
+                EntityUtils.consume(response.getEntity());
+                throw new IOException(String.format("Cannot download stack archive %s: HTTP %d", url, code));
+            }
+            return store(url, response.getEntity().getContent(), getHeader(response, "ETag"), getHeader(response, "Last-Modified"));
+        } finally {
+            client.getConnectionManager().shutdown();
+        }
+    }
+
+    @Nullable
+    private static String getHeader(HttpResponse response, String name) {
+        Header header = response.getFirstHeader(name);
+        return header != null ? header.getValue() : null;
+    }
+
+    @Nullable
+    private Archive getCached(String url, Properties index) {
+        String digest = index.getProperty(DIGEST);
+        if (digest == null) {
+            return null;
+        }
+        File file = new File(directory, digest);
+        return file.isFile() ? new Archive(url, digest, file) : null;
+    }
+
+    private Archive store(String url, InputStream in, @Nullable String etag, @Nullable String lastModified) throws IOException {
+        File tmp = File.createTempFile("archive", ".tmp", directory);
+        String digest;
+        try {
+            HashingInputStream hashing = new HashingInputStream(Hashing.sha256(), in);
+            OutputStream out = new FileOutputStream(tmp);
+            try {
+                ByteStreams.copy(hashing, out);
+            } finally {
+                Closeables.close(out, false);
+            }
+            digest = hashing.hash().toString();
+        } finally {
+            Closeables.closeQuietly(in);
+        }
+
+        File file = new File(directory, digest);
+        // Archives are immutable once named after their digest: a concurrent fetch of the same content wins the rename
+        if (file.isFile() || !tmp.renameTo(file)) {
+            tmp.delete();
+        }
+
+        Properties index = new Properties();
+        index.setProperty(DIGEST, digest);
+        if (etag != null) {
+            index.setProperty(ETAG, etag);
+        }
+        if (lastModified != null) {
+            index.setProperty(LAST_MODIFIED, lastModified);
+        }
+        writeIndex(url, index);
+        LOG.debug("Stored stack archive {} as {}", url, digest);
+        return new Archive(url, digest, file);
+    }
+
+    private Properties readIndex(String url) throws IOException {
+        Properties index = new Properties();
+        File file = getIndexFile(url);
+        if (file.isFile()) {
+            InputStream in = new FileInputStream(file);
+            try {
+                index.load(in);
+            } finally {
+                Closeables.closeQuietly(in);
+            }
+        }
+        return index;
+    }
+
+    private void writeIndex(String url, Properties index) throws IOException {
+        File tmp = File.createTempFile("index", ".tmp", directory);
+        OutputStream out = new FileOutputStream(tmp);
+        try {
+            index.store(out, url);
+        } finally {
+            Closeables.close(out, false);
+        }
+        File file = getIndexFile(url);
+        if (!tmp.renameTo(file)) {
+            file.delete();
+            if (!tmp.renameTo(file)) {
+                tmp.delete();
+                throw new IOException("Cannot write stack archive index " + file);
+            }
+        }
+    }
+
+    private File getIndexFile(String url) {
+        return new File(directory, Hashing.sha256().hashString(url, StandardCharsets.UTF_8) + ".properties");
+    }
+
+    /**
+     * @return whether the given URL is a HTTP(S) one without credentials, which {@link ResourceUtils} would otherwise
+     * turn into an authenticated request.
+     */
+    private static boolean isPlainHttp(String url) {
+        return (url.startsWith("http://") || url.startsWith("https://")) && URI.create(url).getRawUserInfo() == null;
+    }
+}
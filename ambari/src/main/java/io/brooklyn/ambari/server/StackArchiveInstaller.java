@@ -0,0 +1,212 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.brooklyn.ambari.server;
+
+import static java.lang.String.format;
+import static org.apache.brooklyn.util.ssh.BashCommands.sudo;
+import static org.apache.brooklyn.util.ssh.BashCommands.unzip;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import javax.annotation.Nullable;
+
+import org.apache.brooklyn.util.ssh.BashCommands;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Function;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableFutureTask;
+
+/**
+ * Installs the extra stack definitions of an Ambari server. The archives are fetched through the
+ * {@link StackArchiveCache} concurrently; the markers left on the server after unpacking them are then checked in a
+ * single script, and the archives not yet unpacked are copied to the server concurrently. The archives can only be
+ * unpacked once the ambari-server package is installed, so the preparation yields the commands unpacking them, which
+ * run as background jobs.
+ */
+public class StackArchiveInstaller {
+
+    private static final Logger LOG = LoggerFactory.getLogger(StackArchiveInstaller.class);
+
+    /**
+     * The server the archives are installed on.
+     */
+    public interface Server {
+        /**
+         * Runs the given commands on the server.
+         *
+         * @return their standard output, or null if they failed.
+         */
+        @Nullable
+        String run(String summary, List<String> commands);
+
+        void copyTo(File file, String destination);
+    }
+
+    private final StackArchiveCache cache;
+    private final Server server;
+    private final Executor executor;
+    private final String markerLocation;
+    private final String stackLocation;
+
+    /**
+     * @param markerLocation the directory of the markers left on the server after unpacking each archive.
+     * @param stackLocation  the directory the archives are unpacked to.
+     */
+    public StackArchiveInstaller(StackArchiveCache cache, Server server, Executor executor, String markerLocation, String stackLocation) {
+        this.cache = Preconditions.checkNotNull(cache, "cache");
+        this.server = Preconditions.checkNotNull(server, "server");
+        this.executor = Preconditions.checkNotNull(executor, "executor");
+        this.markerLocation = Preconditions.checkNotNull(markerLocation, "markerLocation");
+        this.stackLocation = Preconditions.checkNotNull(stackLocation, "stackLocation");
+    }
+
+    /**
+     * Starts preparing the archives at the given URLs.
+     *
+     * @return the commands unpacking the archives not yet unpacked on the server, once they are copied there.
+     */
+    public ListenableFuture<List<String>> prepare(List<String> urls) {
+        List<ListenableFuture<StackArchiveCache.Archive>> fetches = Lists.newArrayList();
+        for (final String url : urls) {
+            fetches.add(submit(new Callable<StackArchiveCache.Archive>() {
+                @Override
+                public StackArchiveCache.Archive call() {
+                    return cache.fetch(url);
+                }
+            }));
+        }
+        return Futures.transform(Futures.allAsList(fetches), new AsyncFunction<List<StackArchiveCache.Archive>, List<String>>() {
+            @Override
+            public ListenableFuture<List<String>> apply(List<StackArchiveCache.Archive> archives) {
+                return upload(archives);
+            }
+        }, executor);
+    }
+
+    private ListenableFuture<List<String>> upload(List<StackArchiveCache.Archive> archives) {
+        // The same archive may be listed at several URLs: it is unpacked once
+        Map<String, StackArchiveCache.Archive> archivesByDigest = Maps.newLinkedHashMap();
+        for (StackArchiveCache.Archive archive : archives) {
+            archivesByDigest.put(archive.getDigest(), archive);
+        }
+        Set<String> unpackedDigests = archivesByDigest.isEmpty() ? ImmutableSet.<String>of() : getUnpackedDigests(archivesByDigest.keySet());
+
+        List<ListenableFuture<String>> uploads = Lists.newArrayList();
+        boolean zipped = false;
+        for (final StackArchiveCache.Archive archive : archivesByDigest.values()) {
+            if (unpackedDigests.contains(archive.getDigest())) {
+                LOG.debug("Skipping stack archive {}, already unpacked in {}", archive, stackLocation);
+                continue;
+            }
+            zipped |= archive.getFilename().endsWith("zip");
+            uploads.add(submit(new Callable<String>() {
+                @Override
+                public String call() {
+                    String tmpLocation = format("/tmp/%s-%s", archive.getDigest(), archive.getFilename());
+                    String unpackCommand = getUnpackCommand(tmpLocation, stackLocation);
+                    server.copyTo(archive.getFile(), tmpLocation);
+                    return BashCommands.chain(
+                            unpackCommand,
+                            sudo(format("mkdir -p %s", markerLocation)),
+                            sudo(format("touch %s/%s", markerLocation, archive.getDigest())));
+                }
+            }));
+        }
+        final boolean installUnzip = zipped;
+        return Futures.transform(Futures.allAsList(uploads), new Function<List<String>, List<String>>() {
+            @Override
+            public List<String> apply(List<String> unpackCommands) {
+                return getUnpackScript(unpackCommands, installUnzip);
+            }
+        });
+    }
+
+    /**
+     * Returns the digests of the given archives which have already been unpacked on the server, as recorded by the
+     * markers left after unpacking them, checked in a single script.
+     */
+    private Set<String> getUnpackedDigests(Set<String> digests) {
+        ImmutableList.Builder<String> checks = ImmutableList.builder();
+        for (String digest : digests) {
+            checks.add(format("if test -f %s/%s; then echo %s; fi", markerLocation, digest, digest));
+        }
+        String output = server.run("checking stack archives", checks.build());
+        if (output == null) {
+            return ImmutableSet.of();
+        }
+        return ImmutableSet.copyOf(Splitter.on('\n').trimResults().omitEmptyStrings().split(output));
+    }
+
+    /**
+     * Returns the commands running the given unpack commands as background jobs, and failing if any of them fails.
+     * unzip is installed first, once, as concurrent installs would contend for the lock of the package manager.
+     */
+    @VisibleForTesting
+    static List<String> getUnpackScript(List<String> unpackCommands, boolean installUnzip) {
+        if (unpackCommands.isEmpty()) {
+            return ImmutableList.of();
+        }
+        ImmutableList.Builder<String> script = ImmutableList.builder();
+        if (installUnzip) {
+            script.add(BashCommands.INSTALL_UNZIP);
+        }
+        if (unpackCommands.size() == 1) {
+            return script.addAll(unpackCommands).build();
+        }
+        for (String unpackCommand : unpackCommands) {
+            script.add(format("( %s ) &", unpackCommand));
+        }
+        return script.add("for job in $(jobs -p); do wait $job || exit 1; done").build();
+    }
+
+    @VisibleForTesting
+    static String getUnpackCommand(String tmpLocation, String stackLocation) {
+        if (tmpLocation.endsWith("tar")) {
+            return sudo(format("tar xvf %s -C %s", tmpLocation, stackLocation));
+        } else if (tmpLocation.endsWith("tar.gz")) {
+            return sudo(format("tar zxvf %s -C %s", tmpLocation, stackLocation));
+        } else if (tmpLocation.endsWith("zip")) {
+            return sudo(unzip(tmpLocation, stackLocation));
+        }
+
+        throw new IllegalStateException("Stack locations must be of type tar, tar.gz, zip");
+    }
+
+    private <T> ListenableFuture<T> submit(Callable<T> callable) {
+        ListenableFutureTask<T> task = ListenableFutureTask.create(callable);
+        executor.execute(task);
+        return task;
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.brooklyn.ambari;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.brooklyn.core.location.BasicOsDetails;
+import org.apache.brooklyn.util.os.Os;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.io.Files;
+
+public class AmbariInstallCommandsTest {
+
+    private static final String REPO_URL = "http://public-repo-1.hortonworks.com/ambari/centos6/2.x/updates/2.1.2/ambari.repo";
+    private static final String REPO_CONTENT = "[Updates-ambari-2.1.2]\n" +
+            "name=ambari-2.1.2 - Updates\n" +
+            "baseurl=http://public-repo-1.hortonworks.com/ambari/centos6/2.x/updates/2.1.2\n" +
+            "gpgkey=http://public-repo-1.hortonworks.com/ambari/centos6/RPM-GPG-KEY/RPM-GPG-KEY-Jenkins\n";
+
+    private File tempDir;
+
+    @BeforeMethod(alwaysRun = true)
+    public void setUp() {
+        tempDir = Files.createTempDir();
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void tearDown() {
+        if (tempDir != null) Os.deleteRecursively(tempDir);
+    }
+
+    @Test
+    public void testPublicRepositoriesWithoutMirror() {
+        AmbariInstallCommands commands = new AmbariInstallCommands("2.1.2");
+
+        assertEquals(commands.toMirrorUrl(REPO_URL), REPO_URL);
+        assertTrue(commands.downloadRepositoryList(REPO_URL, "/etc/yum.repos.d/ambari.repo").contains(REPO_URL));
+        assertTrue(commands.installAmbariRequirements(OsFingerprint.UNKNOWN).contains("keyserver.ubuntu.com"));
+    }
+
+    @Test
+    public void testRepositoriesRelocatedToMirror() {
+        AmbariInstallCommands commands = new AmbariInstallCommands("2.1.2", "http://10.0.0.1:8090");
+
+        assertEquals(commands.toMirrorUrl(REPO_URL), "http://10.0.0.1:8090/ambari/centos6/2.x/updates/2.1.2/ambari.repo");
+        assertEquals(commands.toMirrorUrl("http://example.com/HDP/centos6"), "http://example.com/HDP/centos6");
+
+        String install = commands.installAmbariRequirements(OsFingerprint.UNKNOWN);
+        assertFalse(install.contains("http://public-repo-1.hortonworks.com/ambari"), install);
+        assertFalse(install.contains("--keyserver"), install);
+        assertTrue(install.contains("http://10.0.0.1:8090/keyserver/pks/lookup?op=get&search=0xB9733A7A07513CAD"), install);
+    }
+
+    @Test
+    public void testTargetedRepositorySetupForKnownOs() {
+        AmbariInstallCommands commands = new AmbariInstallCommands("2.1.2");
+
+        String centos = commands.installAmbariRequirements(OsFingerprint.of(new BasicOsDetails("CentOS", "x86_64", "6.5")));
+        assertTrue(centos.contains(REPO_URL), centos);
+        assertTrue(centos.contains("service ntpd start"), centos);
+        assertFalse(centos.contains("apt-get update"), centos);
+        assertFalse(centos.contains("zypper"), centos);
+        assertFalse(centos.contains("service ntp start"), centos);
+
+        String ubuntu = commands.installAmbariRequirements(OsFingerprint.of(new BasicOsDetails("Ubuntu", "x86_64", "14.04")));
+        assertTrue(ubuntu.contains("/ambari/ubuntu14/2.x/updates/2.1.2/ambari.list"), ubuntu);
+        assertTrue(ubuntu.contains("apt-get update"), ubuntu);
+        assertFalse(ubuntu.contains("/etc/yum.repos.d"), ubuntu);
+        assertFalse(ubuntu.contains("service ntpd start"), ubuntu);
+    }
+
+    @Test
+    public void testAptPackageListsUpdatedBeforeFirstInstall() {
+        String ubuntu = new AmbariInstallCommands("2.1.2").installAmbariRequirements(OsFingerprint.of(new BasicOsDetails("Ubuntu", "x86_64", "14.04")));
+
+        int update = ubuntu.indexOf("apt-get update");
+        int firstInstall = ubuntu.indexOf("apt-get install");
+        assertTrue(update >= 0, ubuntu);
+        assertTrue(firstInstall > update, ubuntu);
+        assertTrue(ubuntu.indexOf("apt-get install -y curl") > update, ubuntu);
+        assertTrue(ubuntu.indexOf("apt-get install -y ntp") > update, ubuntu);
+    }
+
+    @Test
+    public void testUnknownOsProbesPackageManagers() {
+        String install = new AmbariInstallCommands("2.1.2").installAmbariRequirements(OsFingerprint.UNKNOWN);
+
+        assertTrue(install.contains("apt-get update"), install);
+        assertTrue(install.contains("/etc/yum.repos.d"), install);
+        assertTrue(install.contains("zypper"), install);
+    }
+
+    @Test(groups = "Integration")
+    public void testPreInstalledPackageDetected() throws Exception {
+        assertEquals(checkInstalledWithFakeRpm("2.1.2", 0, "2.1.2"), 0);
+    }
+
+    @Test(groups = "Integration")
+    public void testPreInstalledPackageAtOtherVersionIgnored() throws Exception {
+        assertEquals(checkInstalledWithFakeRpm("2.1.2", 0, "2.1.20"), 1);
+        assertEquals(checkInstalledWithFakeRpm("2.1.2", 0, "2.0.1"), 1);
+    }
+
+    @Test(groups = "Integration")
+    public void testModifiedPreInstalledPackageIgnored() throws Exception {
+        assertEquals(checkInstalledWithFakeRpm("2.1.2", 1, "2.1.2"), 1);
+    }
+
+    @Test(groups = "Integration")
+    public void testPreInstalledDebianPackageDetected() throws Exception {
+        assertEquals(checkInstalledWithFakeDpkg(0, ""), 0);
+        assertEquals(checkInstalledWithFakeDpkg(1, "??5?????? c /etc/ambari-agent/conf/ambari-agent.ini"), 0);
+    }
+
+    @Test(groups = "Integration")
+    public void testModifiedPreInstalledDebianPackageIgnored() throws Exception {
+        assertEquals(checkInstalledWithFakeDpkg(1, "??5??????   /usr/lib/python2.6/site-packages/ambari_agent/main.py"), 1);
+    }
+
+    @Test(groups = "Integration")
+    public void testDebianPackageWhichCannotBeVerifiedIgnored() throws Exception {
+        assertEquals(checkInstalledWithFakeDpkg(2, ""), 1);
+    }
+
+    /**
+     * Runs the check with a fake rpm on the path, reporting the given installed version and verification result.
+     */
+    private int checkInstalledWithFakeRpm(String installedVersion, int verifyResult, String expectedVersion) throws Exception {
+        writeExecutable("rpm", "#!/bin/bash\n" +
+                "case \"$1\" in\n" +
+                "  -q) [ \"$2\" = --qf ] && echo -n " + installedVersion + " ; exit 0 ;;\n" +
+                "  -V) exit " + verifyResult + " ;;\n" +
+                "esac\n");
+
+        ProcessBuilder builder = new ProcessBuilder("bash", "-c", new AmbariInstallCommands(expectedVersion).checkInstalled("ambari-agent"))
+                .redirectErrorStream(true);
+        builder.environment().put("PATH", tempDir.getAbsolutePath() + File.pathSeparator + System.getenv("PATH"));
+        Process process = builder.start();
+        return process.waitFor() == 0 ? 0 : 1;
+    }
+
+    /**
+     * Runs the check with a fake dpkg on the path, reporting version 2.1.2 installed, and the given verification
+     * result and output. The fake rpm on the path reports no package.
+     */
+    private int checkInstalledWithFakeDpkg(int verifyResult, String verifyOutput) throws Exception {
+        writeExecutable("rpm", "#!/bin/bash\nexit 1\n");
+        writeExecutable("dpkg-query", "#!/bin/bash\necho -n 2.1.2\n");
+        writeExecutable("dpkg", "#!/bin/bash\n" +
+                "[ \"$1\" = --verify ] && [ -n '" + verifyOutput + "' ] && echo '" + verifyOutput + "'\n" +
+                "exit " + verifyResult + "\n");
+
+        ProcessBuilder builder = new ProcessBuilder("bash", "-c", new AmbariInstallCommands("2.1.2").checkInstalled("ambari-agent"))
+                .redirectErrorStream(true);
+        builder.environment().put("PATH", tempDir.getAbsolutePath() + File.pathSeparator + System.getenv("PATH"));
+        Process process = builder.start();
+        return process.waitFor() == 0 ? 0 : 1;
+    }
+
+    private void writeExecutable(String name, String script) throws IOException {
+        File file = new File(tempDir, name);
+        Files.write(script, file, StandardCharsets.UTF_8);
+        file.setExecutable(true);
+    }
+
+    @Test(groups = "Integration")
+    public void testRepositoryListDownloadedFromFileBasedMirror() throws Exception {
+        File mirror = new File(tempDir, "mirror");
+        File repo = new File(mirror, "ambari/centos6/2.x/updates/2.1.2/ambari.repo");
+        Files.createParentDirs(repo);
+        Files.write(REPO_CONTENT, repo, StandardCharsets.UTF_8);
+        File destination = new File(tempDir, "ambari.repo");
+
+        AmbariInstallCommands commands = new AmbariInstallCommands("2.1.2", mirror.toURI().toString().replaceAll("/$", ""));
+        Process process = new ProcessBuilder("bash", "-c", commands.downloadRepositoryList(REPO_URL, destination.getAbsolutePath()))
+                .redirectErrorStream(true)
+                .start();
+        assertEquals(process.waitFor(), 0);
+
+        String content = Files.toString(destination, StandardCharsets.UTF_8);
+        assertFalse(content.contains("public-repo-1.hortonworks.com"), content);
+        assertTrue(content.contains("baseurl=" + mirror.toURI().toString() + "ambari/centos6/2.x/updates/2.1.2\n"), content);
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.brooklyn.ambari;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+
+import org.testng.annotations.Test;
+
+import com.google.common.base.Joiner;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+
+public class BootstrapScriptTest {
+
+    @Test
+    public void testFailedPhaseFromExitCode() {
+        BootstrapScript script = new BootstrapScript()
+                .phase("installing", "true")
+                .phase("customizing", "true")
+                .phase("launching", "true");
+
+        assertEquals(script.getFailedPhase(100), "installing");
+        assertEquals(script.getFailedPhase(102), "launching");
+        assertNull(script.getFailedPhase(0));
+        assertNull(script.getFailedPhase(1));
+        assertNull(script.getFailedPhase(103));
+    }
+
+    @Test
+    public void testCheckResultNamesFailedPhase() {
+        BootstrapScript script = new BootstrapScript()
+                .phase("installing", "true")
+                .phase("customizing", "true");
+
+        script.checkResult("Bootstrap", 0, "");
+        try {
+            script.checkResult("Bootstrap", 101, "mv: cannot stat '/tmp/ambari-agent.ini'\n");
+            fail("Expected the bootstrap to fail");
+        } catch (IllegalStateException e) {
+            assertEquals(e.getMessage(), "Bootstrap failed while customizing (exit code 101): mv: cannot stat '/tmp/ambari-agent.ini'");
+        }
+    }
+
+    @Test(groups = "Integration")
+    public void testStopsAtFailedPhase() throws Exception {
+        File tempDir = Files.createTempDir();
+        File config = new File(tempDir, "agent.ini");
+        File launched = new File(tempDir, "launched");
+        BootstrapScript script = new BootstrapScript()
+                .phase("customizing", BootstrapScript.writeFile("[server]\nhostname='server'\n", config.getAbsolutePath()))
+                .phase("installing", "true", "false", "echo unreachable")
+                .phase("launching", "touch " + launched.getAbsolutePath());
+
+        Process process = new ProcessBuilder("bash", "-c", Joiner.on('\n').join(script.getLines())).start();
+        String stdout = new String(ByteStreams.toByteArray(process.getInputStream()), StandardCharsets.UTF_8);
+        int exitCode = process.waitFor();
+
+        assertEquals(script.getFailedPhase(exitCode), "installing");
+        assertEquals(Files.toString(config, StandardCharsets.UTF_8), "[server]\nhostname='server'\n");
+        assertTrue(stdout.contains("Bootstrap phase: installing"), stdout);
+        assertFalse(stdout.contains("unreachable"), stdout);
+        assertFalse(launched.exists());
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.brooklyn.ambari;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+
+import org.apache.brooklyn.core.location.BasicOsDetails;
+import org.apache.brooklyn.location.ssh.SshMachineLocation;
+import org.testng.annotations.Test;
+
+public class OsFingerprintTest {
+
+    @Test
+    public void testPackageManagerFromOsName() {
+        assertEquals(OsFingerprint.of(new BasicOsDetails("Ubuntu", "x86_64", "14.04")).getPackageManager(), OsFingerprint.PackageManager.APT);
+        assertEquals(OsFingerprint.of(new BasicOsDetails("debian", "x86_64", "7")).getPackageManager(), OsFingerprint.PackageManager.APT);
+        assertEquals(OsFingerprint.of(new BasicOsDetails("CentOS", "x86_64", "6.5")).getPackageManager(), OsFingerprint.PackageManager.YUM);
+        assertEquals(OsFingerprint.of(new BasicOsDetails("Red Hat Enterprise Linux", "x86_64", "7.1")).getPackageManager(), OsFingerprint.PackageManager.YUM);
+        assertEquals(OsFingerprint.of(new BasicOsDetails("SLES", "x86_64", "11")).getPackageManager(), OsFingerprint.PackageManager.ZYPPER);
+        assertNull(OsFingerprint.of(new BasicOsDetails("windows", "x86_64", "2012")).getPackageManager());
+    }
+
+    @Test
+    public void testVersionKept() {
+        assertEquals(OsFingerprint.of(new BasicOsDetails("CentOS", "x86_64", "6.5")).getVersion(), "6.5");
+        assertEquals(OsFingerprint.of(new BasicOsDetails("CentOS", "x86_64", null)).getVersion(), "");
+    }
+
+    @Test
+    public void testMissingDetailsAreUnknown() {
+        assertSame(OsFingerprint.of((BasicOsDetails) null), OsFingerprint.UNKNOWN);
+        assertSame(OsFingerprint.of((SshMachineLocation) null), OsFingerprint.UNKNOWN);
+    }
+}
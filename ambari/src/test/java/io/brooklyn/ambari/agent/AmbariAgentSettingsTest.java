@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.brooklyn.ambari.agent;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import org.apache.brooklyn.api.entity.Entity;
+import org.apache.brooklyn.api.entity.EntitySpec;
+import org.apache.brooklyn.core.test.BrooklynAppUnitTestSupport;
+import org.apache.brooklyn.entity.stock.BasicEntity;
+import org.apache.brooklyn.util.core.ResourceUtils;
+import org.apache.brooklyn.util.core.text.TemplateProcessor;
+import org.apache.brooklyn.util.time.Duration;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableMap;
+
+public class AmbariAgentSettingsTest extends BrooklynAppUnitTestSupport {
+
+    @Test
+    public void testDefaultsMatchAgentDefaults() {
+        AmbariAgentSettings settings = new AmbariAgentSettings(app.createAndManageChild(EntitySpec.create(BasicEntity.class)));
+
+        assertEquals(settings.getLogLevel(), "INFO");
+        assertEquals(settings.getParallelExecution(), "0");
+        assertEquals(settings.getCommandMaxRetries(), "2");
+        assertEquals(settings.getCommandSleepBetweenRetries(), "1");
+        assertEquals(settings.getTolerateDownloadFailures(), "true");
+        assertEquals(settings.getDataCleanupInterval(), "86400");
+        assertEquals(settings.getDataCleanupMaxAge(), "2592000");
+        assertEquals(settings.getDataCleanupMaxSizeMb(), "100");
+        assertEquals(settings.getHeartbeatStateInterval(), "6");
+        assertEquals(settings.getHeartbeatLogLinesCount(), "300");
+    }
+
+    @Test
+    public void testHostGroupOverridesClusterSettings() {
+        Entity cluster = app.createAndManageChild(EntitySpec.create(BasicEntity.class)
+                .configure(AmbariAgent.PARALLEL_EXECUTION, false)
+                .configure(AmbariAgent.COMMAND_SLEEP_BETWEEN_RETRIES, Duration.seconds(5)));
+        Entity hostGroup = cluster.addChild(EntitySpec.create(BasicEntity.class)
+                .configure(AmbariAgent.PARALLEL_EXECUTION, true));
+        Entity agent = hostGroup.addChild(EntitySpec.create(BasicEntity.class));
+        Entity otherAgent = cluster.addChild(EntitySpec.create(BasicEntity.class));
+
+        assertEquals(new AmbariAgentSettings(agent).getParallelExecution(), "1");
+        assertEquals(new AmbariAgentSettings(agent).getCommandSleepBetweenRetries(), "5");
+        assertEquals(new AmbariAgentSettings(otherAgent).getParallelExecution(), "0");
+    }
+
+    @Test
+    public void testTemplateRendersSettings() {
+        Entity agent = app.createAndManageChild(EntitySpec.create(BasicEntity.class)
+                .configure(AmbariAgent.PARALLEL_EXECUTION, true)
+                .configure(AmbariAgent.DATA_CLEANUP_INTERVAL, Duration.ONE_HOUR));
+        String template = ResourceUtils.create(this).getResourceAsString(AmbariAgent.TEMPLATE_CONFIGURATION_URL.getDefaultValue());
+
+        String ini = TemplateProcessor.processTemplateContents(template, ImmutableMap.of(
+                "entity", ImmutableMap.of("ambariServerFQDN", "server.example.com"),
+                "settings", new AmbariAgentSettings(agent)));
+
+        assertTrue(ini.contains("hostname=server.example.com\n"), ini);
+        assertTrue(ini.contains("parallel_execution=1\n"), ini);
+        assertTrue(ini.contains("data_cleanup_interval=3600\n"), ini);
+        assertTrue(ini.contains("maxretries=2\n"), ini);
+        assertFalse(ini.contains("${"), ini);
+    }
+}
@@ -27,6 +27,7 @@ import java.util.List;
 import org.apache.brooklyn.util.core.http.HttpToolResponse;
 import org.testng.annotations.Test;
 
+import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableMap;
 
 public class AmbariApiErrorTest {
@@ -37,6 +38,13 @@ public class AmbariApiErrorTest {
                 "dsfgdhsh");
     }
     
+    @Test
+    public void testTruncateLongBody() throws Exception {
+        assertEquals(AmbariApiException.truncate("short"), "short");
+        assertEquals(AmbariApiException.truncate(Strings.repeat("x", AmbariApiException.MAX_BODY_LENGTH + 10)),
+                Strings.repeat("x", AmbariApiException.MAX_BODY_LENGTH) + "... [10 more characters]");
+    }
+
     @Test
     public void testExceptionMessage() throws Exception {
         String content = "mycontent";
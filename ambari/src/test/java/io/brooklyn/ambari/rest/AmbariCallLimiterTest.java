@@ -0,0 +1,144 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.brooklyn.ambari.rest;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.brooklyn.util.time.Duration;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.base.Ticker;
+
+public class AmbariCallLimiterTest {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long SLOW = TimeUnit.SECONDS.toNanos(30);
+
+    @Test
+    public void testLimitIncreasesAdditivelyOnFastCalls() throws InterruptedException {
+        AmbariCallLimiter limiter = AmbariCallLimiter.builder().initialLimit(2).maxLimit(3).build();
+
+        // Grows by about one slot per "round" of limit calls: 2 -> 2.5 -> 2.9 -> 3.24
+        complete(limiter, FAST, false);
+        complete(limiter, FAST, false);
+        assertEquals(limiter.getLimit(), 2);
+        complete(limiter, FAST, false);
+        assertEquals(limiter.getLimit(), 3);
+        for (int i = 0; i < 10; i++) {
+            complete(limiter, FAST, false);
+        }
+        assertEquals(limiter.getLimit(), 3);
+    }
+
+    @Test
+    public void testLimitDecreasesMultiplicativelyOnSlowOrOverloadedCalls() throws InterruptedException {
+        AmbariCallLimiter limiter = AmbariCallLimiter.builder().initialLimit(16).maxLimit(16).latencyTarget(Duration.ONE_SECOND).build();
+
+        complete(limiter, SLOW, false);
+        assertEquals(limiter.getLimit(), 8);
+        complete(limiter, FAST, true);
+        assertEquals(limiter.getLimit(), 4);
+        for (int i = 0; i < 10; i++) {
+            complete(limiter, SLOW, false);
+        }
+        assertEquals(limiter.getLimit(), 1);
+        assertEquals(limiter.getInFlight(), 0);
+    }
+
+    @Test
+    public void testCriticalCallsGetSlotsBeforeBackgroundOnes() throws InterruptedException {
+        final AmbariCallLimiter limiter = AmbariCallLimiter.builder().initialLimit(1).maxLimit(1).build();
+        limiter.acquire(AmbariCallLimiter.Priority.CRITICAL);
+
+        final CountDownLatch backgroundAcquired = new CountDownLatch(1);
+        final CountDownLatch criticalAcquired = new CountDownLatch(1);
+        Thread background = new Thread(new Acquirer(limiter, AmbariCallLimiter.Priority.BACKGROUND, backgroundAcquired));
+        background.start();
+        // Let the background call queue first
+        assertFalse(backgroundAcquired.await(100, TimeUnit.MILLISECONDS));
+        Thread critical = new Thread(new Acquirer(limiter, AmbariCallLimiter.Priority.CRITICAL, criticalAcquired));
+        critical.start();
+        assertFalse(criticalAcquired.await(100, TimeUnit.MILLISECONDS));
+
+        limiter.release(FAST, false);
+        assertTrue(criticalAcquired.await(5, TimeUnit.SECONDS));
+        assertFalse(backgroundAcquired.await(100, TimeUnit.MILLISECONDS));
+
+        limiter.release(FAST, false);
+        assertTrue(backgroundAcquired.await(5, TimeUnit.SECONDS));
+        background.join();
+        critical.join();
+    }
+
+    @Test
+    public void testRateLimitAllowsBurstThenWaits() throws InterruptedException {
+        AmbariCallLimiter limiter = AmbariCallLimiter.builder()
+                .rate(10, 2)
+                .ticker(new Ticker() {
+                    @Override
+                    public long read() {
+                        return 0;
+                    }
+                })
+                .build();
+
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        complete(limiter, FAST, false);
+        complete(limiter, FAST, false);
+        assertTrue(stopwatch.elapsed(TimeUnit.MILLISECONDS) < 90, "elapsed=" + stopwatch);
+
+        complete(limiter, FAST, false);
+        assertTrue(stopwatch.elapsed(TimeUnit.MILLISECONDS) >= 90, "elapsed=" + stopwatch);
+    }
+
+    private static void complete(AmbariCallLimiter limiter, long latencyNanos, boolean overloaded) throws InterruptedException {
+        limiter.acquire(AmbariCallLimiter.Priority.CRITICAL);
+        limiter.release(latencyNanos, overloaded);
+    }
+
+    private static class Acquirer implements Runnable {
+
+        private final AmbariCallLimiter limiter;
+        private final AmbariCallLimiter.Priority priority;
+        private final CountDownLatch acquired;
+
+        Acquirer(AmbariCallLimiter limiter, AmbariCallLimiter.Priority priority, CountDownLatch acquired) {
+            this.limiter = limiter;
+            this.priority = priority;
+            this.acquired = acquired;
+        }
+
+        @Override
+        public void run() {
+            try {
+                limiter.acquire(priority);
+                acquired.countDown();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.brooklyn.ambari.rest;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.fail;
+
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.mockito.ArgumentCaptor;
+
+import org.apache.brooklyn.util.time.Duration;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+public class AmbariCircuitBreakerTest {
+
+    private long now;
+    private List<AmbariCircuitBreaker.State> transitions;
+    private ScheduledExecutorService scheduler;
+    private AmbariCircuitBreaker circuitBreaker;
+
+    @BeforeMethod
+    public void setUp() {
+        now = 0;
+        transitions = Lists.newArrayList();
+        scheduler = mock(ScheduledExecutorService.class);
+        circuitBreaker = AmbariCircuitBreaker.builder()
+                .failureThreshold(3)
+                .openDuration(Duration.TEN_SECONDS)
+                .ticker(new Ticker() {
+                    @Override
+                    public long read() {
+                        return now;
+                    }
+                })
+                .listener(new AmbariCircuitBreaker.Listener() {
+                    @Override
+                    public void onStateChange(AmbariCircuitBreaker.State state) {
+                        transitions.add(state);
+                    }
+                })
+                .scheduler(scheduler)
+                .build();
+    }
+
+    @Test
+    public void testOpensAfterConsecutiveFailures() {
+        call(true);
+        call(true);
+        call(false);
+        call(true);
+        call(true);
+        assertEquals(circuitBreaker.getState(), AmbariCircuitBreaker.State.CLOSED);
+
+        call(true);
+        assertEquals(circuitBreaker.getState(), AmbariCircuitBreaker.State.OPEN);
+        assertEquals(transitions, ImmutableList.of(AmbariCircuitBreaker.State.OPEN));
+    }
+
+    @Test(expectedExceptions = AmbariApiException.class)
+    public void testOpenBreakerFailsFast() {
+        open();
+        circuitBreaker.acquire("RequestEndpoint.getRequests");
+    }
+
+    @Test
+    public void testSuccessfulProbeClosesBreaker() {
+        open();
+        now += TimeUnit.SECONDS.toNanos(10);
+
+        circuitBreaker.acquire("probe");
+        assertEquals(circuitBreaker.getState(), AmbariCircuitBreaker.State.HALF_OPEN);
+        assertRejected();
+        circuitBreaker.record(false);
+
+        assertEquals(circuitBreaker.getState(), AmbariCircuitBreaker.State.CLOSED);
+        assertEquals(transitions, ImmutableList.of(AmbariCircuitBreaker.State.OPEN, AmbariCircuitBreaker.State.HALF_OPEN, AmbariCircuitBreaker.State.CLOSED));
+    }
+
+    @Test
+    public void testFailedProbeReopensBreaker() {
+        open();
+        now += TimeUnit.SECONDS.toNanos(10);
+
+        call(true);
+
+        assertEquals(circuitBreaker.getState(), AmbariCircuitBreaker.State.OPEN);
+        now += TimeUnit.SECONDS.toNanos(9);
+        assertRejected();
+        now += TimeUnit.SECONDS.toNanos(1);
+        assertEquals(circuitBreaker.getState(), AmbariCircuitBreaker.State.HALF_OPEN);
+    }
+
+    @Test
+    public void testCancelledProbeLetsAnotherOneThrough() {
+        open();
+        now += TimeUnit.SECONDS.toNanos(10);
+
+        circuitBreaker.acquire("probe");
+        circuitBreaker.cancel();
+        circuitBreaker.acquire("probe");
+
+        assertEquals(circuitBreaker.getState(), AmbariCircuitBreaker.State.HALF_OPEN);
+    }
+
+    @Test
+    public void testOpenBreakerBecomesHalfOpenWithoutCalls() {
+        open();
+
+        ArgumentCaptor<Runnable> halfOpen = ArgumentCaptor.forClass(Runnable.class);
+        verify(scheduler).schedule(halfOpen.capture(), eq(TimeUnit.SECONDS.toNanos(10)), eq(TimeUnit.NANOSECONDS));
+        halfOpen.getValue().run();
+
+        assertEquals(transitions, ImmutableList.of(AmbariCircuitBreaker.State.OPEN, AmbariCircuitBreaker.State.HALF_OPEN));
+        call(false);
+        assertEquals(circuitBreaker.getState(), AmbariCircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    public void testScheduledHalfOpenIgnoredOnceBreakerReopened() {
+        open();
+        now += TimeUnit.SECONDS.toNanos(10);
+        call(true);
+
+        ArgumentCaptor<Runnable> halfOpen = ArgumentCaptor.forClass(Runnable.class);
+        verify(scheduler, times(2)).schedule(halfOpen.capture(), anyLong(), any(TimeUnit.class));
+        halfOpen.getAllValues().get(0).run();
+
+        assertEquals(circuitBreaker.getState(), AmbariCircuitBreaker.State.OPEN);
+        halfOpen.getAllValues().get(1).run();
+        assertEquals(circuitBreaker.getState(), AmbariCircuitBreaker.State.HALF_OPEN);
+        assertEquals(transitions, ImmutableList.of(AmbariCircuitBreaker.State.OPEN, AmbariCircuitBreaker.State.HALF_OPEN,
+                AmbariCircuitBreaker.State.OPEN, AmbariCircuitBreaker.State.HALF_OPEN));
+    }
+
+    @Test
+    public void testChangesDuringNotificationDeliveredInOrder() throws Exception {
+        final List<AmbariCircuitBreaker.State> delivered = Lists.newArrayList();
+        final AtomicReference<AmbariCircuitBreaker> breaker = new AtomicReference<AmbariCircuitBreaker>();
+        breaker.set(AmbariCircuitBreaker.builder()
+                .failureThreshold(1)
+                .openDuration(Duration.TEN_SECONDS)
+                .ticker(new Ticker() {
+                    @Override
+                    public long read() {
+                        return now;
+                    }
+                })
+                .listener(new AmbariCircuitBreaker.Listener() {
+                    @Override
+                    public void onStateChange(AmbariCircuitBreaker.State state) {
+                        if (delivered.isEmpty()) {
+                            // Another thread makes the breaker half-open while it is still notifying it opened
+                            now += TimeUnit.SECONDS.toNanos(10);
+                            Thread other = new Thread(new Runnable() {
+                                @Override
+                                public void run() {
+                                    breaker.get().getState();
+                                }
+                            });
+                            other.start();
+                            try {
+                                other.join();
+                            } catch (InterruptedException e) {
+                                throw new RuntimeException(e);
+                            }
+                        }
+                        delivered.add(state);
+                    }
+                })
+                .scheduler(scheduler)
+                .build());
+
+        breaker.get().acquire("call");
+        breaker.get().record(true);
+
+        assertEquals(delivered, ImmutableList.of(AmbariCircuitBreaker.State.OPEN, AmbariCircuitBreaker.State.HALF_OPEN));
+    }
+
+    private void open() {
+        for (int i = 0; i < 3; i++) {
+            call(true);
+        }
+    }
+
+    private void call(boolean failed) {
+        circuitBreaker.acquire("call");
+        circuitBreaker.record(failed);
+    }
+
+    private void assertRejected() {
+        try {
+            circuitBreaker.acquire("call");
+            fail("Expected AmbariApiException");
+        } catch (AmbariApiException e) {
+            // expected
+        }
+    }
+}
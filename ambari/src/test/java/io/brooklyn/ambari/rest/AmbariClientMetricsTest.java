@@ -0,0 +1,157 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.brooklyn.ambari.rest;
+
+import static org.testng.Assert.assertEquals;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Ticker;
+
+public class AmbariClientMetricsTest {
+
+    private static final String CALL = "RequestEndpoint.getRequests";
+
+    private long now;
+    private AmbariClientMetrics metrics;
+
+    @BeforeMethod
+    public void setUp() {
+        now = TimeUnit.HOURS.toNanos(1);
+        metrics = new AmbariClientMetrics(100, new Ticker() {
+            @Override
+            public long read() {
+                return now;
+            }
+        });
+    }
+
+    @Test
+    public void testPercentiles() {
+        for (int i = 1; i <= 100; i++) {
+            metrics.record(CALL, TimeUnit.MILLISECONDS.toNanos(i), i % 10 != 0);
+        }
+
+        CallStatistics statistics = metrics.getStatistics(CALL);
+        assertEquals(statistics.getCount(), 100);
+        assertEquals(statistics.getErrors(), 10);
+        assertEquals(statistics.getP50(), 50d);
+        assertEquals(statistics.getP95(), 95d);
+        assertEquals(statistics.getP99(), 99d);
+    }
+
+    @Test
+    public void testPercentilesOverTheMostRecentAttempts() {
+        for (int i = 0; i < 100; i++) {
+            metrics.record(CALL, TimeUnit.SECONDS.toNanos(10), true);
+        }
+        for (int i = 0; i < 100; i++) {
+            metrics.record(CALL, TimeUnit.MILLISECONDS.toNanos(20), true);
+        }
+
+        CallStatistics statistics = metrics.getStatistics(CALL);
+        assertEquals(statistics.getCount(), 200);
+        assertEquals(statistics.getP99(), 20d);
+    }
+
+    @Test
+    public void testThroughputOverTheLastMinute() {
+        now -= TimeUnit.MINUTES.toNanos(5);
+        for (int i = 0; i < 50; i++) {
+            metrics.record(CALL, 1, true);
+        }
+        now += TimeUnit.MINUTES.toNanos(5);
+        for (int i = 0; i < 30; i++) {
+            metrics.record(CALL, 1, true);
+        }
+
+        assertEquals(metrics.getStatistics(CALL).getThroughput(), 0.5d);
+    }
+
+    @Test
+    public void testThroughputWhenTheWindowIsFull() {
+        for (int i = 0; i < 100; i++) {
+            now += TimeUnit.MILLISECONDS.toNanos(100);
+            metrics.record(CALL, 1, true);
+        }
+        now += TimeUnit.MILLISECONDS.toNanos(100);
+        metrics.record(CALL, 1, true);
+
+        // The oldest attempt still in the window completed 10 seconds ago
+        assertEquals(metrics.getStatistics(CALL).getThroughput(), 10d);
+    }
+
+    @Test
+    public void testFailureWithoutLatency() {
+        metrics.record(CALL, TimeUnit.MILLISECONDS.toNanos(40), true);
+        metrics.recordFailure(CALL);
+
+        CallStatistics statistics = metrics.getStatistics(CALL);
+        assertEquals(statistics.getCount(), 2);
+        assertEquals(statistics.getErrors(), 1);
+        assertEquals(statistics.getP50(), 40d);
+        assertEquals(statistics.getP99(), 40d);
+    }
+
+    @Test
+    public void testUnknownCall() {
+        CallStatistics statistics = metrics.getStatistics(CALL);
+        assertEquals(statistics.getCount(), 0);
+        assertEquals(statistics.getP99(), 0d);
+        assertEquals(statistics.getThroughput(), 0d);
+    }
+
+    @Test
+    public void testStatisticsSortedByCall() {
+        metrics.record("StackEndpoint.getRecommendations", 1, true);
+        metrics.record("BlueprintEndpoint.createBlueprint", 1, true);
+
+        List<CallStatistics> statistics = metrics.getStatistics();
+        assertEquals(statistics.size(), 2);
+        assertEquals(statistics.get(0).getCall(), "BlueprintEndpoint.createBlueprint");
+        assertEquals(statistics.get(1).getCall(), "StackEndpoint.getRecommendations");
+    }
+
+    @Test
+    public void testExportedThroughJmx() throws Exception {
+        metrics.record(CALL, TimeUnit.MILLISECONDS.toNanos(5), false);
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("io.brooklyn.ambari:type=AmbariClientMetrics,entity=test");
+        server.registerMBean(metrics, name);
+        try {
+            CompositeData[] statistics = (CompositeData[]) server.getAttribute(name, "Statistics");
+            assertEquals(statistics.length, 1);
+            assertEquals(statistics[0].get("call"), CALL);
+            assertEquals(statistics[0].get("errors"), 1L);
+            assertEquals(statistics[0].get("p99"), 5d);
+        } finally {
+            server.unregisterMBean(name);
+        }
+    }
+}
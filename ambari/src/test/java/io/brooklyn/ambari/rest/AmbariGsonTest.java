@@ -0,0 +1,67 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.brooklyn.ambari.rest;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+
+import org.testng.annotations.Test;
+
+import io.brooklyn.ambari.rest.domain.Bootstrap;
+import io.brooklyn.ambari.rest.domain.Requests;
+
+public class AmbariGsonTest {
+
+    private static final String REQUESTS = "{\"href\":\"http://ambari:8080/api/v1/clusters/Cluster1/requests\",\"items\":[" +
+            "{\"href\":\"r1\",\"Requests\":{\"cluster_name\":\"Cluster1\",\"id\":1,\"request_status\":\"COMPLETED\",\"request_context\":\"Install\"}}," +
+            "{\"href\":\"r2\",\"Requests\":{\"cluster_name\":\"Cluster1\",\"id\":2,\"unknown\":[1,2,{\"a\":\"b\"}]}}," +
+            "{\"href\":null}]}";
+
+    private static final String BOOTSTRAP = "{\"status\":\"ERROR\",\"requestId\":3,\"log\":\"\",\"hostsStatus\":[" +
+            "{\"hostName\":\"10.0.0.2\",\"status\":\"DONE\",\"statusCode\":\"0\",\"statusAction\":\"\",\"log\":\"Agent started\"}," +
+            "{\"hostName\":\"10.0.0.3\",\"status\":\"FAILED\",\"statusCode\":\"1\",\"log\":\"Permission denied\"}]}";
+
+    @Test
+    public void testInstanceIsShared() {
+        assertSame(AmbariGson.get(), AmbariGson.get());
+        assertSame(AmbariGson.converter(), AmbariGson.converter());
+    }
+
+    @Test
+    public void testReadsRequestsIgnoringUnknownFields() {
+        Requests requests = AmbariGson.get().fromJson(REQUESTS, Requests.class);
+
+        assertEquals(requests.getRequests().size(), 3);
+        assertEquals(requests.getRequests().get(0).getRequestInfo().getStatus(), "COMPLETED");
+        assertEquals(requests.getRequests().get(1).getRequestInfo().getId(), 2);
+        assertNull(requests.getRequests().get(2).getRequestInfo());
+    }
+
+    @Test
+    public void testReadsBootstrap() {
+        Bootstrap bootstrap = AmbariGson.get().fromJson(BOOTSTRAP, Bootstrap.class);
+
+        assertEquals(bootstrap.getRequestId(), 3);
+        assertEquals(bootstrap.getHostsStatus().size(), 2);
+        assertEquals(bootstrap.getHostsStatus().get(1).getStatus(), "FAILED");
+        assertEquals(bootstrap.getHostsStatus().get(1).getLog(), "Permission denied");
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.brooklyn.ambari.rest;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.brooklyn.util.time.Duration;
+import org.testng.annotations.Test;
+
+import io.brooklyn.ambari.rest.endpoint.ClusterEndpoint;
+import io.brooklyn.ambari.rest.endpoint.ConfigurationEnpoint;
+import io.brooklyn.ambari.rest.endpoint.RequestEndpoint;
+import io.brooklyn.ambari.rest.endpoint.ServiceEndpoint;
+import io.brooklyn.ambari.rest.endpoint.StackEndpoint;
+import retrofit.RetrofitError;
+import retrofit.client.Header;
+import retrofit.client.Response;
+
+public class AmbariRetryPolicyTest {
+
+    private static final String URL = "http://localhost:8080/api/v1/clusters/c1";
+
+    private final AmbariRetryPolicy policy = AmbariRetryPolicy.builder().maxAttempts(3).build();
+
+    @Test
+    public void testClassifyByHttpMethod() throws NoSuchMethodException {
+        assertEquals(AmbariRetryPolicy.classify(RequestEndpoint.class.getMethod("getRequests", String.class)), AmbariRetryPolicy.Idempotency.IDEMPOTENT);
+        assertEquals(AmbariRetryPolicy.classify(StackEndpoint.class.getMethod("updateStackRepository", String.class, String.class, String.class, String.class, Map.class)),
+                AmbariRetryPolicy.Idempotency.IDEMPOTENT);
+        assertEquals(AmbariRetryPolicy.classify(ClusterEndpoint.class.getMethod("createCluster", String.class, Map.class)), AmbariRetryPolicy.Idempotency.NON_IDEMPOTENT);
+    }
+
+    @Test
+    public void testAnnotatedPutIsNotIdempotent() throws NoSuchMethodException {
+        assertEquals(AmbariRetryPolicy.classify(ConfigurationEnpoint.class.getMethod("createConfiguration", String.class, Map.class)),
+                AmbariRetryPolicy.Idempotency.NON_IDEMPOTENT);
+        assertEquals(AmbariRetryPolicy.classify(ServiceEndpoint.class.getMethod("updateService", String.class, String.class, Map.class)),
+                AmbariRetryPolicy.Idempotency.NON_IDEMPOTENT);
+    }
+
+    @Test
+    public void testIdempotentCallsRetryOnNetworkAndTransientErrors() {
+        assertTrue(policy.shouldRetry(AmbariRetryPolicy.Idempotency.IDEMPOTENT, networkError(new IOException("Connection reset")), 1));
+        for (int status : new int[] {429, 502, 503, 504}) {
+            assertTrue(policy.shouldRetry(AmbariRetryPolicy.Idempotency.IDEMPOTENT, httpError(status), 1), "status " + status);
+        }
+        assertFalse(policy.shouldRetry(AmbariRetryPolicy.Idempotency.IDEMPOTENT, httpError(500), 1));
+        assertFalse(policy.shouldRetry(AmbariRetryPolicy.Idempotency.IDEMPOTENT, httpError(404), 1));
+    }
+
+    @Test
+    public void testNonIdempotentCallsOnlyRetryWhenNotApplied() {
+        assertTrue(policy.shouldRetry(AmbariRetryPolicy.Idempotency.NON_IDEMPOTENT, networkError(new ConnectException("Connection refused")), 1));
+        assertTrue(policy.shouldRetry(AmbariRetryPolicy.Idempotency.NON_IDEMPOTENT, httpError(503), 1));
+        assertTrue(policy.shouldRetry(AmbariRetryPolicy.Idempotency.NON_IDEMPOTENT, httpError(429), 1));
+        assertFalse(policy.shouldRetry(AmbariRetryPolicy.Idempotency.NON_IDEMPOTENT, networkError(new IOException("Connection reset")), 1));
+        assertFalse(policy.shouldRetry(AmbariRetryPolicy.Idempotency.NON_IDEMPOTENT, httpError(504), 1));
+    }
+
+    @Test
+    public void testNoRetryAfterMaxAttempts() {
+        assertTrue(policy.shouldRetry(AmbariRetryPolicy.Idempotency.IDEMPOTENT, httpError(503), 2));
+        assertFalse(policy.shouldRetry(AmbariRetryPolicy.Idempotency.IDEMPOTENT, httpError(503), 3));
+    }
+
+    @Test
+    public void testDelayGrowsExponentiallyUpToMax() {
+        AmbariRetryPolicy noJitter = AmbariRetryPolicy.builder()
+                .baseDelay(Duration.millis(100))
+                .maxDelay(Duration.ONE_SECOND)
+                .random(new Random() {
+                    @Override
+                    public double nextDouble() {
+                        return 0.999999;
+                    }
+                })
+                .build();
+
+        assertEquals(noJitter.delayBeforeRetry(1).toMilliseconds(), 99);
+        assertEquals(noJitter.delayBeforeRetry(2).toMilliseconds(), 199);
+        assertEquals(noJitter.delayBeforeRetry(4).toMilliseconds(), 799);
+        assertEquals(noJitter.delayBeforeRetry(5).toMilliseconds(), 999);
+        assertEquals(noJitter.delayBeforeRetry(100).toMilliseconds(), 999);
+    }
+
+    @Test
+    public void testDelayIsJittered() {
+        AmbariRetryPolicy jittered = AmbariRetryPolicy.builder().baseDelay(Duration.ONE_SECOND).random(new Random(0)).build();
+        for (int i = 0; i < 100; i++) {
+            long delay = jittered.delayBeforeRetry(1).toMilliseconds();
+            assertTrue(delay >= 0 && delay < 1000, "delay=" + delay);
+        }
+    }
+
+    private static RetrofitError networkError(IOException cause) {
+        return RetrofitError.networkError(URL, cause);
+    }
+
+    private static RetrofitError httpError(int status) {
+        return RetrofitError.httpError(URL, new Response(URL, status, "", Collections.<Header>emptyList(), null), null, null);
+    }
+}
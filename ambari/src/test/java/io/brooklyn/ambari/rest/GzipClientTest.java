@@ -0,0 +1,160 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.brooklyn.ambari.rest;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.brooklyn.util.stream.Streams;
+import org.mockito.ArgumentCaptor;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.net.HttpHeaders;
+
+import retrofit.client.Client;
+import retrofit.client.Header;
+import retrofit.client.Request;
+import retrofit.client.Response;
+import retrofit.mime.TypedByteArray;
+
+public class GzipClientTest {
+
+    private static final String URL = "http://localhost:8080/api/v1/blueprints/bp";
+    private static final String JSON = "{\"host_groups\":[]}";
+
+    private Client delegate;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        delegate = mock(Client.class);
+        when(delegate.execute(any(Request.class))).thenReturn(new Response(URL, 200, "OK", Collections.<Header>emptyList(),
+                new TypedByteArray("application/json", JSON.getBytes(StandardCharsets.UTF_8))));
+    }
+
+    @Test
+    public void testAcceptsGzipResponses() throws IOException {
+        new GzipClient(delegate, true, false, 0).execute(request("GET", null));
+
+        assertEquals(header(executedRequest().getHeaders(), HttpHeaders.ACCEPT_ENCODING), "gzip");
+    }
+
+    @Test
+    public void testDoesNotAcceptGzipResponsesIfDisabled() throws IOException {
+        new GzipClient(delegate, false, false, 0).execute(request("GET", null));
+
+        assertEquals(header(executedRequest().getHeaders(), HttpHeaders.ACCEPT_ENCODING), null);
+    }
+
+    @Test
+    public void testDecompressesGzipResponses() throws IOException {
+        when(delegate.execute(any(Request.class))).thenReturn(new Response(URL, 200, "OK",
+                ImmutableList.of(new Header(HttpHeaders.CONTENT_ENCODING, "gzip"), new Header(HttpHeaders.CONTENT_LENGTH, "42"), new Header("X-Other", "kept")),
+                new TypedByteArray("application/json", gzip(JSON))));
+
+        Response response = new GzipClient(delegate, true, false, 0).execute(request("GET", null));
+
+        assertEquals(Streams.readFullyString(response.getBody().in()), JSON);
+        assertEquals(response.getBody().mimeType(), "application/json");
+        assertEquals(header(response.getHeaders(), HttpHeaders.CONTENT_ENCODING), null);
+        assertEquals(header(response.getHeaders(), HttpHeaders.CONTENT_LENGTH), null);
+        assertEquals(header(response.getHeaders(), "X-Other"), "kept");
+    }
+
+    @Test
+    public void testLeavesUncompressedResponsesUntouched() throws IOException {
+        Response response = new GzipClient(delegate, true, false, 0).execute(request("GET", null));
+
+        assertEquals(Streams.readFullyString(response.getBody().in()), JSON);
+    }
+
+    @Test
+    public void testCompressesRequestsAboveThreshold() throws IOException {
+        String body = "{\"properties\":\"" + Strings.repeat("x", 1000) + "\"}";
+
+        new GzipClient(delegate, true, true, 512).execute(request("POST", body));
+
+        Request executed = executedRequest();
+        assertEquals(header(executed.getHeaders(), HttpHeaders.CONTENT_ENCODING), "gzip");
+        assertTrue(executed.getBody().length() < body.length());
+        assertEquals(executed.getBody().mimeType(), "application/json; charset=UTF-8");
+        assertEquals(gunzip(executed), body);
+    }
+
+    @Test
+    public void testDoesNotCompressRequestsBelowThreshold() throws IOException {
+        new GzipClient(delegate, true, true, 512).execute(request("POST", JSON));
+
+        Request executed = executedRequest();
+        assertFalse(executed.getHeaders().contains(new Header(HttpHeaders.CONTENT_ENCODING, "gzip")));
+        assertEquals(executed.getBody().length(), JSON.length());
+    }
+
+    private Request executedRequest() throws IOException {
+        ArgumentCaptor<Request> request = ArgumentCaptor.forClass(Request.class);
+        verify(delegate).execute(request.capture());
+        return request.getValue();
+    }
+
+    private static Request request(String method, String body) {
+        return new Request(method, URL, ImmutableList.of(new Header("X-Requested-By", "Brooklyn Ambari")),
+                body == null ? null : new TypedByteArray("application/json; charset=UTF-8", body.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static String header(List<Header> headers, String name) {
+        for (Header header : headers) {
+            if (header.getName().equals(name)) {
+                return header.getValue();
+            }
+        }
+        return null;
+    }
+
+    private static byte[] gzip(String content) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream gzip = new GZIPOutputStream(bytes)) {
+            gzip.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+        return bytes.toByteArray();
+    }
+
+    private static String gunzip(Request request) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        request.getBody().writeTo(bytes);
+        return Streams.readFullyString(new GZIPInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    }
+}
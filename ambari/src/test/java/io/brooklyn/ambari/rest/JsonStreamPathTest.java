@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.brooklyn.ambari.rest;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.gson.JsonParseException;
+
+public class JsonStreamPathTest {
+
+    private static final String JSON = "{\n" +
+            "  \"href\" : \"http://localhost:8080/api/v1/hosts\",\n" +
+            "  \"items\" : [\n" +
+            "    { \"href\" : \"h1\", \"Hosts\" : { \"host_name\" : \"host1\", \"cpu_count\" : 4 } },\n" +
+            "    { \"href\" : \"h2\", \"Hosts\" : { \"cpu_count\" : 2, \"host_name\" : \"host2\" } },\n" +
+            "    { \"href\" : \"h3\", \"Hosts\" : { \"host_name\" : { \"nested\" : true } } },\n" +
+            "    { \"href\" : \"h4\" }\n" +
+            "  ],\n" +
+            "  \"Requests\" : { \"request_status\" : \"IN_PROGRESS\", \"id\" : 12 }\n" +
+            "}";
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testCompileThrowsExIfNotRooted() {
+        JsonStreamPath.compile("items[*].Hosts");
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testCompileThrowsExIfEmptyField() {
+        JsonStreamPath.compile("$.items..Hosts");
+    }
+
+    @Test
+    public void testReadArrayItems() {
+        assertEquals(read("$.items[*].Hosts.host_name"), ImmutableList.of("host1", "host2"));
+    }
+
+    @Test
+    public void testReadNumberAsString() {
+        assertEquals(read("$.Requests.id"), ImmutableList.of("12"));
+    }
+
+    @Test
+    public void testReadFirst() {
+        assertEquals(JsonStreamPath.compile("$.Requests.request_status").readFirst(JSON.getBytes(StandardCharsets.UTF_8)), "IN_PROGRESS");
+    }
+
+    @Test
+    public void testReadFirstReturnsNullIfNoMatch() {
+        assertNull(JsonStreamPath.compile("$.Requests.missing").readFirst(JSON.getBytes(StandardCharsets.UTF_8)));
+        assertNull(JsonStreamPath.compile("$.href.missing").readFirst(JSON.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void testReadStreamClosesIt() {
+        final AtomicBoolean closed = new AtomicBoolean();
+        InputStream json = new ByteArrayInputStream(JSON.getBytes(StandardCharsets.UTF_8)) {
+            @Override
+            public void close() throws IOException {
+                closed.set(true);
+                super.close();
+            }
+        };
+
+        assertEquals(JsonStreamPath.compile("$.items[*].Hosts.host_name").read(json), ImmutableList.of("host1", "host2"));
+        assertTrue(closed.get());
+    }
+
+    @Test
+    public void testReadFirstFromStream() {
+        assertEquals(JsonStreamPath.compile("$.Requests.request_status").readFirst(
+                new ByteArrayInputStream(JSON.getBytes(StandardCharsets.UTF_8))), "IN_PROGRESS");
+    }
+
+    @Test(expectedExceptions = JsonParseException.class)
+    public void testInvalidJsonThrowsParseEx() {
+        JsonStreamPath.compile("$.Requests.request_status").read("Invalid body: No Json".getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Object read(String expression) {
+        return JsonStreamPath.compile(expression).read(JSON.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.brooklyn.ambari.rest;
+
+import static org.testng.Assert.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.brooklyn.util.collections.MutableList;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
+
+import io.brooklyn.ambari.rest.domain.Request;
+import retrofit.client.Header;
+import retrofit.client.Response;
+import retrofit.mime.TypedByteArray;
+
+public class PagedCollectionTest {
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testNonPositivePageSizeThrows() {
+        new RequestPages(0, 0);
+    }
+
+    @Test
+    public void testEmptyCollection() {
+        RequestPages pages = new RequestPages(0, 10);
+
+        assertEquals(ids(pages), ImmutableList.of());
+        assertEquals(pages.fetchedOffsets, ImmutableList.of(0));
+    }
+
+    @Test
+    public void testSinglePartialPage() {
+        RequestPages pages = new RequestPages(3, 10);
+
+        assertEquals(ids(pages), ImmutableList.of(0, 1, 2));
+        assertEquals(pages.fetchedOffsets, ImmutableList.of(0));
+    }
+
+    @Test
+    public void testSeveralPages() {
+        RequestPages pages = new RequestPages(7, 3);
+
+        assertEquals(ids(pages), ImmutableList.of(0, 1, 2, 3, 4, 5, 6));
+        assertEquals(pages.fetchedOffsets, ImmutableList.of(0, 3, 6));
+    }
+
+    @Test
+    public void testExactMultipleOfPageSizeFetchesTrailingEmptyPage() {
+        RequestPages pages = new RequestPages(4, 2);
+
+        assertEquals(ids(pages), ImmutableList.of(0, 1, 2, 3));
+        assertEquals(pages.fetchedOffsets, ImmutableList.of(0, 2, 4));
+    }
+
+    @Test
+    public void testPageWithoutItems() {
+        PagedCollection<Request> pages = new PagedCollection<Request>(Request.class, 10) {
+            @Override
+            protected Response fetchPage(int from, int pageSize) {
+                return response("{\"href\":\"http://localhost:8080/api/v1/clusters/c1/requests\"}");
+            }
+        };
+
+        assertEquals(ids(pages), ImmutableList.of());
+    }
+
+    private List<Integer> ids(Iterable<Request> requests) {
+        List<Integer> ids = MutableList.of();
+        for (Request request : requests) {
+            ids.add(request.getRequestInfo().getId());
+        }
+        return ids;
+    }
+
+    private static Response response(String json) {
+        return new Response("http://localhost:8080", 200, "OK", Collections.<Header>emptyList(),
+                new TypedByteArray("application/json", json.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static class RequestPages extends PagedCollection<Request> {
+
+        private final int total;
+        private final List<Integer> fetchedOffsets = MutableList.of();
+
+        RequestPages(int total, int pageSize) {
+            super(Request.class, pageSize);
+            this.total = total;
+        }
+
+        @Override
+        protected Response fetchPage(int from, int pageSize) {
+            fetchedOffsets.add(from);
+
+            List<String> items = MutableList.of();
+            for (int i = from; i < Math.min(total, from + pageSize); i++) {
+                items.add(String.format("{\"href\":\"http://localhost:8080/api/v1/clusters/c1/requests/%d\",\"Requests\":{\"id\":%d}}", i, i));
+            }
+            return response(String.format("{\"href\":\"http://localhost:8080/api/v1/clusters/c1/requests\",\"items\":[%s]}", Joiner.on(",").join(items)));
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.brooklyn.ambari.rest;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.fail;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.brooklyn.util.time.Duration;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+
+import io.brooklyn.ambari.rest.domain.HostGroup;
+import io.brooklyn.ambari.rest.domain.RecommendationWrapper;
+import io.brooklyn.ambari.rest.domain.RecommendationWrappers;
+
+public class RecommendationCacheTest {
+
+    private static final String RECOMMENDATIONS = "{\"resources\":[{\"hosts\":[\"host1\",\"host2\"],\"services\":[\"HDFS\",\"YARN\"]," +
+            "\"Versions\":{\"stack_name\":\"HDP\",\"stack_version\":\"2.2\"}," +
+            "\"recommendations\":{\"blueprint\":{\"host_groups\":[{\"name\":\"host-group-1\",\"components\":[{\"name\":\"NAMENODE\"},{\"name\":\"ZKFC\"}]}," +
+            "{\"name\":\"host-group-2\",\"components\":[{\"name\":\"DATANODE\"}]}]}," +
+            "\"blueprint_cluster_binding\":{\"host_groups\":[{\"name\":\"host-group-1\",\"hosts\":[{\"fqdn\":\"host1\"}]}," +
+            "{\"name\":\"host-group-2\",\"hosts\":[{\"fqdn\":\"host2\"}]}]}}}]}";
+
+    private static final String SIGNATURE = "centos6/x86_64/4 cpus/16331712 kB";
+
+    private RecommendationCache cache;
+    private AtomicInteger loads;
+    private Callable<RecommendationWrappers> loader;
+
+    @BeforeMethod
+    public void setUp() {
+        cache = new RecommendationCache(10, Duration.ONE_HOUR);
+        loads = new AtomicInteger();
+        loader = new Callable<RecommendationWrappers>() {
+            @Override
+            public RecommendationWrappers call() {
+                loads.incrementAndGet();
+                return AmbariGson.get().fromJson(RECOMMENDATIONS, RecommendationWrappers.class);
+            }
+        };
+    }
+
+    @Test
+    public void testSameShapeIsLoadedOnce() {
+        cache.get("HDP", "2.2", ImmutableList.of("host1", "host2"), signatures(2), ImmutableList.of("HDFS", "YARN"), loader);
+        cache.get("HDP", "2.2", ImmutableList.of("host1", "host2"), signatures(2), ImmutableList.of("YARN", "HDFS"), loader);
+
+        assertEquals(loads.get(), 1);
+    }
+
+    @Test
+    public void testDifferentShapesAreLoadedSeparately() {
+        cache.get("HDP", "2.2", ImmutableList.of("host1", "host2"), signatures(2), ImmutableList.of("HDFS", "YARN"), loader);
+        cache.get("HDP", "2.2", ImmutableList.of("host1", "host2", "host3"), signatures(3), ImmutableList.of("HDFS", "YARN"), loader);
+        cache.get("HDP", "2.2", ImmutableList.of("host1", "host2"), signatures(2), ImmutableList.of("HDFS"), loader);
+        cache.get("HDP", "2.3", ImmutableList.of("host1", "host2"), signatures(2), ImmutableList.of("HDFS", "YARN"), loader);
+
+        assertEquals(loads.get(), 4);
+    }
+
+    @Test
+    public void testDifferentHardwareIsLoadedSeparately() {
+        cache.get("HDP", "2.2", ImmutableList.of("host1", "host2"), signatures(2), ImmutableList.of("HDFS", "YARN"), loader);
+        cache.get("HDP", "2.2", ImmutableList.of("host3", "host4"), ImmutableList.of(SIGNATURE, "centos6/x86_64/16 cpus/65331712 kB"),
+                ImmutableList.of("HDFS", "YARN"), loader);
+        cache.get("HDP", "2.2", ImmutableList.of("host5", "host6"), ImmutableList.of(SIGNATURE, "ubuntu14/x86_64/4 cpus/16331712 kB"),
+                ImmutableList.of("HDFS", "YARN"), loader);
+        cache.get("HDP", "2.2", ImmutableList.of("host7", "host8"), signatures(2), ImmutableList.of("HDFS", "YARN"), loader);
+
+        assertEquals(loads.get(), 3);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testSignatureRequiredForEachHost() {
+        cache.get("HDP", "2.2", ImmutableList.of("host1", "host2"), signatures(1), ImmutableList.of("HDFS", "YARN"), loader);
+    }
+
+    @Test
+    public void testCachedRecommendationIsReboundToRequestedHosts() {
+        cache.get("HDP", "2.2", ImmutableList.of("host1", "host2"), signatures(2), ImmutableList.of("HDFS", "YARN"), loader);
+
+        RecommendationWrapper wrapper = cache.get("HDP", "2.2", ImmutableList.of("node-b", "node-a"), signatures(2), ImmutableList.of("HDFS", "YARN"), loader)
+                .getRecommendationWrappers().get(0);
+
+        assertEquals(wrapper.getHosts(), ImmutableList.of("node-b", "node-a"));
+        List<HostGroup> bindings = wrapper.getRecommendation().getBindings().getHostGroups();
+        assertEquals(bindings.get(0).getHosts().get(0).get("fqdn"), "node-b");
+        assertEquals(bindings.get(1).getHosts().get(0).get("fqdn"), "node-a");
+        assertEquals(loads.get(), 1);
+    }
+
+    @Test
+    public void testReturnedRecommendationsAreCopies() {
+        RecommendationWrappers first = cache.get("HDP", "2.2", ImmutableList.of("host1", "host2"), signatures(2), ImmutableList.of("HDFS", "YARN"), loader);
+        first.getRecommendationWrappers().get(0).getRecommendation().getBlueprint().getHostGroups().get(0).getComponents().remove(1);
+
+        RecommendationWrappers second = cache.get("HDP", "2.2", ImmutableList.of("host1", "host2"), signatures(2), ImmutableList.of("HDFS", "YARN"), loader);
+
+        assertEquals(second.getRecommendationWrappers().get(0).getRecommendation().getBlueprint().getHostGroups().get(0).getComponents().size(), 2);
+    }
+
+    @Test
+    public void testLoaderFailureIsPropagatedAndNotCached() {
+        try {
+            cache.get("HDP", "2.2", ImmutableList.of("host1"), signatures(1), ImmutableList.of("HDFS"), new Callable<RecommendationWrappers>() {
+                @Override
+                public RecommendationWrappers call() {
+                    throw new AmbariApiException("Server unavailable");
+                }
+            });
+            fail("Expected AmbariApiException");
+        } catch (AmbariApiException e) {
+            assertEquals(e.getMessage(), "Server unavailable");
+        }
+
+        cache.get("HDP", "2.2", ImmutableList.of("host1"), signatures(1), ImmutableList.of("HDFS"), loader);
+        assertEquals(loads.get(), 1);
+    }
+
+    private static List<String> signatures(int hosts) {
+        return Collections.nCopies(hosts, SIGNATURE);
+    }
+}
@@ -41,7 +41,7 @@ import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 import org.testng.annotations.Test;
 
-import com.jayway.jsonpath.PathNotFoundException;
+import com.google.gson.JsonParseException;
 
 import io.brooklyn.ambari.rest.domain.Request;
 
@@ -83,7 +83,7 @@ public class RequestCheckRunnableTest {
                 .run();
     }
 
-    @Test(expectedExceptions = PathNotFoundException.class)
+    @Test(expectedExceptions = JsonParseException.class)
     public void testInvalidReponseThrowsParseEx() throws IOException {
         new RequestCheckRunnable.Builder(mockRequest("http://www.example.com"))
                 .client(mockHttpClient("Invalid body: No Json"))
@@ -92,6 +92,16 @@ public class RequestCheckRunnableTest {
                 .run();
     }
 
+    @Test(expectedExceptions = RuntimeException.class, expectedExceptionsMessageRegExp = ERROR_MESSAGE)
+    public void testMissingStatusThrowsRuntimeEx() throws IOException {
+        new RequestCheckRunnable.Builder(mockRequest("http://www.example.com"))
+                .client(mockHttpClient("{\"Requests\":{}}"))
+                .timeout(Duration.FIVE_SECONDS)
+                .errorMessage(ERROR_MESSAGE)
+                .build()
+                .run();
+    }
+
     @Test
     public void testSuccessfulRequestFinishes() {
         Throwable throwable = null;
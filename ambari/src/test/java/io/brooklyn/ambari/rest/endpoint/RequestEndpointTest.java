@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.brooklyn.ambari.rest.endpoint;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import org.mockito.ArgumentCaptor;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableMap;
+
+import retrofit.RestAdapter;
+import retrofit.client.Client;
+import retrofit.client.Header;
+import retrofit.client.Request;
+import retrofit.client.Response;
+import retrofit.mime.TypedByteArray;
+
+public class RequestEndpointTest {
+
+    private Client client;
+    private RequestEndpoint requestEndpoint;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        client = mock(Client.class);
+        when(client.execute(any(Request.class))).thenReturn(new Response("http://localhost:8080", 200, "OK", Collections.<Header>emptyList(),
+                new TypedByteArray("application/json", "{\"items\":[]}".getBytes(StandardCharsets.UTF_8))));
+
+        requestEndpoint = new RestAdapter.Builder()
+                .setEndpoint("http://localhost:8080")
+                .setClient(client)
+                .build()
+                .create(RequestEndpoint.class);
+    }
+
+    @Test
+    public void testGetRequestsWithoutRestrictions() throws IOException {
+        requestEndpoint.getRequests("c1");
+
+        assertEquals(executedUrl(), "http://localhost:8080/api/v1/clusters/c1/requests");
+    }
+
+    @Test
+    public void testGetRequestsWithFieldsAndPredicates() throws IOException {
+        requestEndpoint.getRequests("c1", "Requests/id,Requests/request_status", ImmutableMap.of("Requests/request_status", "FAILED"));
+
+        assertEquals(executedUrl(), "http://localhost:8080/api/v1/clusters/c1/requests" +
+                "?fields=Requests/id,Requests/request_status&Requests/request_status=FAILED");
+    }
+
+    @Test
+    public void testGetRequestsWithNullFieldsOmitsParameter() throws IOException {
+        requestEndpoint.getRequests("c1", null, ImmutableMap.of("Requests/request_status", "FAILED"));
+
+        assertEquals(executedUrl(), "http://localhost:8080/api/v1/clusters/c1/requests?Requests/request_status=FAILED");
+    }
+
+    private String executedUrl() throws IOException {
+        ArgumentCaptor<Request> captor = ArgumentCaptor.forClass(Request.class);
+        verify(client).execute(captor.capture());
+        return captor.getValue().getUrl();
+    }
+}
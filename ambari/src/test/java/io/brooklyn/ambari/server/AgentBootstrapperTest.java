@@ -0,0 +1,197 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.brooklyn.ambari.server;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.brooklyn.util.time.Duration;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+import io.brooklyn.ambari.rest.AmbariGson;
+import io.brooklyn.ambari.rest.domain.Bootstrap;
+import io.brooklyn.ambari.rest.endpoint.BootstrapEndpoint;
+
+public class AgentBootstrapperTest {
+
+    private ExecutorService executor;
+    private LocalBootstrapEndpoint endpoint;
+
+    @BeforeMethod(alwaysRun = true)
+    public void setUp() {
+        executor = Executors.newCachedThreadPool();
+        endpoint = new LocalBootstrapEndpoint();
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void tearDown() {
+        if (executor != null) executor.shutdownNow();
+    }
+
+    @Test
+    public void testHostsBootstrappedInSingleRequest() throws Exception {
+        AgentBootstrapper bootstrapper = newBootstrapper(Duration.millis(200), Duration.ONE_MINUTE);
+
+        List<Future<Bootstrap.HostStatus>> results = Lists.newArrayList();
+        for (String host : new String[]{"10.0.0.1", "10.0.0.2", "10.0.0.3"}) {
+            results.add(bootstrap(bootstrapper, host, "key"));
+        }
+        for (Future<Bootstrap.HostStatus> result : results) {
+            assertEquals(result.get().getStatus(), Bootstrap.HOST_STATUS_DONE);
+        }
+
+        assertEquals(endpoint.requests.size(), 1);
+        assertEquals(ImmutableSet.copyOf((List<?>) endpoint.requests.get(0).get("hosts")), ImmutableSet.of("10.0.0.1", "10.0.0.2", "10.0.0.3"));
+        assertEquals(endpoint.requests.get(0).get("user"), "root");
+        assertTrue(endpoint.polls.get() >= 2, "polls=" + endpoint.polls.get());
+    }
+
+    @Test
+    public void testFailedHost() throws Exception {
+        endpoint.failedHosts.add("10.0.0.2");
+        AgentBootstrapper bootstrapper = newBootstrapper(Duration.millis(200), Duration.ONE_MINUTE);
+
+        Future<Bootstrap.HostStatus> succeeded = bootstrap(bootstrapper, "10.0.0.1", "key");
+        Future<Bootstrap.HostStatus> failed = bootstrap(bootstrapper, "10.0.0.2", "key");
+
+        assertEquals(succeeded.get().getStatus(), Bootstrap.HOST_STATUS_DONE);
+        try {
+            failed.get();
+            fail("Expected the bootstrap of 10.0.0.2 to fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException, e.getCause().toString());
+            assertTrue(e.getCause().getMessage().contains("Permission denied"), e.getCause().getMessage());
+        }
+        assertEquals(endpoint.requests.size(), 1);
+    }
+
+    @Test
+    public void testDifferentCredentialsBootstrappedSeparately() throws Exception {
+        AgentBootstrapper bootstrapper = newBootstrapper(Duration.millis(200), Duration.ONE_MINUTE);
+
+        Future<Bootstrap.HostStatus> first = bootstrap(bootstrapper, "10.0.0.1", "key1");
+        Future<Bootstrap.HostStatus> second = bootstrap(bootstrapper, "10.0.0.2", "key2");
+        first.get();
+        second.get();
+
+        assertEquals(endpoint.requests.size(), 2);
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        endpoint.pollsBeforeCompletion = Integer.MAX_VALUE;
+        AgentBootstrapper bootstrapper = newBootstrapper(Duration.ZERO, Duration.millis(100));
+
+        try {
+            bootstrapper.bootstrap("10.0.0.1", "root", "key");
+            fail("Expected the bootstrap to time out");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().contains("still running"), e.getMessage());
+        }
+    }
+
+    @Test
+    public void testInterruptedLeaderFailsBatch() throws Exception {
+        AgentBootstrapper bootstrapper = newBootstrapper(Duration.ONE_MINUTE, Duration.ONE_MINUTE);
+
+        Future<Bootstrap.HostStatus> leader = bootstrap(bootstrapper, "10.0.0.1", "key");
+        Thread.sleep(100);
+        Future<Bootstrap.HostStatus> follower = bootstrap(bootstrapper, "10.0.0.2", "key");
+        Thread.sleep(100);
+        leader.cancel(true);
+
+        try {
+            follower.get(10, TimeUnit.SECONDS);
+            fail("Expected the bootstrap of 10.0.0.2 to fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause().getMessage().contains("aborted"), e.getCause().getMessage());
+        }
+        assertTrue(endpoint.requests.isEmpty());
+    }
+
+    private AgentBootstrapper newBootstrapper(Duration batchWindow, Duration timeout) {
+        return new AgentBootstrapper(endpoint, batchWindow, Duration.millis(10), timeout);
+    }
+
+    private Future<Bootstrap.HostStatus> bootstrap(final AgentBootstrapper bootstrapper, final String host, final String sshKey) {
+        return executor.submit(new Callable<Bootstrap.HostStatus>() {
+            @Override
+            public Bootstrap.HostStatus call() {
+                return bootstrapper.bootstrap(host, "root", sshKey);
+            }
+        });
+    }
+
+    /**
+     * Local stand-in for the bootstrap API of an Ambari server: requests keep running for a few polls, then every host
+     * is done, except the ones configured to fail.
+     */
+    private static class LocalBootstrapEndpoint implements BootstrapEndpoint {
+        private final List<Map> requests = Lists.newCopyOnWriteArrayList();
+        private final AtomicInteger polls = new AtomicInteger();
+        private final Set<String> failedHosts = Sets.newConcurrentHashSet();
+        private volatile int pollsBeforeCompletion = 2;
+
+        @Override
+        public synchronized Bootstrap bootstrap(Map body) {
+            requests.add(body);
+            return json(String.format("{\"status\":\"OK\",\"log\":\"Running Bootstrap now.\",\"requestId\":%d}", requests.size()));
+        }
+
+        @Override
+        public Bootstrap getBootstrap(long id) {
+            if (polls.incrementAndGet() < pollsBeforeCompletion) {
+                return json("{\"status\":\"RUNNING\",\"hostsStatus\":[]}");
+            }
+            StringBuilder hostsStatus = new StringBuilder();
+            boolean failed = false;
+            for (Object host : (List<?>) requests.get((int) id - 1).get("hosts")) {
+                boolean hostFailed = failedHosts.contains(host);
+                failed |= hostFailed;
+                if (hostsStatus.length() > 0) hostsStatus.append(',');
+                hostsStatus.append(String.format("{\"hostName\":\"%s\",\"status\":\"%s\",\"log\":\"%s\"}",
+                        host, hostFailed ? "FAILED" : "DONE", hostFailed ? "Permission denied (publickey)" : "Agent started"));
+            }
+            return json(String.format("{\"status\":\"%s\",\"hostsStatus\":[%s]}", failed ? "ERROR" : "SUCCESS", hostsStatus));
+        }
+
+        private static Bootstrap json(String json) {
+            return AmbariGson.get().fromJson(json, Bootstrap.class);
+        }
+    }
+}
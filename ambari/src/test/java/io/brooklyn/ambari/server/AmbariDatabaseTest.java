@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.brooklyn.ambari.server;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertTrue;
+
+import org.apache.brooklyn.api.entity.EntitySpec;
+import org.apache.brooklyn.entity.database.DatastoreMixins;
+import org.apache.brooklyn.entity.database.mysql.MySqlNode;
+import org.apache.brooklyn.entity.database.postgresql.PostgreSqlNode;
+import org.apache.brooklyn.entity.software.base.SoftwareProcess;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableMap;
+
+public class AmbariDatabaseTest {
+
+    @Test
+    public void testParsesDatastoreUrl() {
+        AmbariDatabase database = AmbariDatabase.of(AmbariDatabase.Type.POSTGRES, "postgresql://10.0.0.5:5432/", "ambari", "ambari", "secret");
+
+        assertEquals(database.getHost(), "10.0.0.5");
+        assertEquals(database.getPort(), 5432);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testRejectsUrlWithoutPort() {
+        AmbariDatabase.of(AmbariDatabase.Type.MYSQL, "mysql://10.0.0.5/", "ambari", "ambari", "secret");
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testEmbeddedIsNotExternal() {
+        new AmbariDatabase(AmbariDatabase.Type.EMBEDDED, "localhost", 5432, "ambari", "ambari", "secret");
+    }
+
+    @Test
+    public void testPostgresSetup() {
+        AmbariDatabase database = new AmbariDatabase(AmbariDatabase.Type.POSTGRES, "10.0.0.5", 5432, "ambaridb", "ambariuser", "s3cret");
+
+        String flags = database.getSetupFlags("/home/brooklyn/run/database");
+        assertEquals(flags, "--database=postgres --databasehost=10.0.0.5 --databaseport=5432 --databasename=ambaridb " +
+                "--databaseusername=ambariuser --databasepassword=\"$(cat \"/home/brooklyn/run/database/password\")\" --postgresschema=ambariuser");
+        String schema = Joiner.on('\n').join(database.getSchemaCommands("/home/brooklyn/run/database"));
+        assertTrue(schema.contains("PGPASSFILE=\"/home/brooklyn/run/database/pgpass\" psql -h 10.0.0.5 -p 5432 -U ambariuser -d ambaridb -w"), schema);
+        assertTrue(schema.contains("-f /var/lib/ambari-server/resources/Ambari-DDL-Postgres-CREATE.sql"), schema);
+        assertFalse(flags.contains("s3cret"), flags);
+        assertFalse(schema.contains("s3cret"), schema);
+    }
+
+    @Test
+    public void testMysqlSetup() {
+        AmbariDatabase database = new AmbariDatabase(AmbariDatabase.Type.MYSQL, "10.0.0.5", 3306, "ambari", "ambari", "s3cret");
+
+        String flags = database.getSetupFlags("/home/brooklyn/run/database");
+        assertEquals(flags, "--database=mysql --databasehost=10.0.0.5 --databaseport=3306 --databasename=ambari " +
+                "--databaseusername=ambari --databasepassword=\"$(cat \"/home/brooklyn/run/database/password\")\"");
+        String schema = Joiner.on('\n').join(database.getSchemaCommands("/home/brooklyn/run/database"));
+        assertTrue(schema.contains("mysql --defaults-extra-file=\"/home/brooklyn/run/database/my.cnf\" -h 10.0.0.5 -P 3306 -u ambari ambari"), schema);
+        assertTrue(schema.contains("--jdbc-db=mysql --jdbc-driver=/usr/share/java/mysql-connector-java.jar"), schema);
+        assertTrue(schema.contains("< /var/lib/ambari-server/resources/Ambari-DDL-MySQL-CREATE.sql"), schema);
+        assertFalse(flags.contains("s3cret"), flags);
+        assertFalse(schema.contains("s3cret"), schema);
+    }
+
+    @Test
+    public void testCredentialFilesEscapePassword() {
+        String password = "s3:c\\r\"et";
+
+        assertEquals(new AmbariDatabase(AmbariDatabase.Type.POSTGRES, "10.0.0.5", 5432, "ambaridb", "ambariuser", password).getCredentialFiles(),
+                ImmutableMap.of("pgpass", "10.0.0.5:5432:ambaridb:ambariuser:s3\\:c\\\\r\"et\n", "password", password));
+        assertEquals(new AmbariDatabase(AmbariDatabase.Type.MYSQL, "10.0.0.5", 3306, "ambari", "ambari", password).getCredentialFiles(),
+                ImmutableMap.of("my.cnf", "[client]\npassword=\"s3:c\\\\r\\\"et\"\n", "password", password));
+    }
+
+    @Test
+    public void testSignatureIdentifiesDatabaseWithoutPassword() {
+        AmbariDatabase database = new AmbariDatabase(AmbariDatabase.Type.POSTGRES, "10.0.0.5", 5432, "ambaridb", "ambariuser", "s3cret");
+
+        String signature = database.getSignature();
+        assertTrue(signature.startsWith("postgres://ambariuser@10.0.0.5:5432/ambaridb "), signature);
+        assertFalse(signature.contains("s3cret"), signature);
+        assertFalse(signature.contains("\n"), signature);
+        assertEquals(signature, new AmbariDatabase(AmbariDatabase.Type.POSTGRES, "10.0.0.5", 5432, "ambaridb", "ambariuser", "s3cret").getSignature());
+        assertNotEquals(signature, new AmbariDatabase(AmbariDatabase.Type.POSTGRES, "10.0.0.6", 5432, "ambaridb", "ambariuser", "s3cret").getSignature());
+        assertNotEquals(signature, new AmbariDatabase(AmbariDatabase.Type.POSTGRES, "10.0.0.5", 5432, "ambaridb", "ambariuser", "other").getSignature());
+        assertNotEquals(signature, new AmbariDatabase(AmbariDatabase.Type.MYSQL, "10.0.0.5", 5432, "ambaridb", "ambariuser", "s3cret").getSignature());
+        assertNotEquals(signature, AmbariDatabase.EMBEDDED_SIGNATURE);
+    }
+
+    @Test
+    public void testDatabaseSpecs() {
+        EntitySpec<? extends SoftwareProcess> postgres = AmbariDatabase.newDatabaseSpec(AmbariDatabase.Type.POSTGRES, "ambari", "ambari", "it's", 150);
+        assertEquals(postgres.getType(), PostgreSqlNode.class);
+        assertEquals(postgres.getConfig().get(PostgreSqlNode.MAX_CONNECTIONS), 150);
+        String script = (String) postgres.getConfig().get(DatastoreMixins.CREATION_SCRIPT_CONTENTS);
+        assertTrue(script.contains("CREATE USER ambari WITH PASSWORD 'it''s';"), script);
+        assertTrue(script.contains("CREATE SCHEMA ambari AUTHORIZATION ambari;"), script);
+
+        EntitySpec<? extends SoftwareProcess> mysql = AmbariDatabase.newDatabaseSpec(AmbariDatabase.Type.MYSQL, "ambari", "ambari", "secret", 150);
+        assertEquals(mysql.getType(), MySqlNode.class);
+        assertEquals(mysql.getConfig().get(MySqlNode.MYSQL_SERVER_CONF.subKey("max_connections")), 150);
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.brooklyn.ambari.server;
+
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import org.testng.annotations.Test;
+
+public class AmbariPackageMirrorTest {
+
+    @Test
+    public void testCachingProxyOfRemoteRepository() {
+        String configuration = new AmbariPackageMirror(8090, "http://public-repo-1.hortonworks.com").getConfiguration();
+
+        assertTrue(configuration.contains("listen 8090;"), configuration);
+        assertTrue(configuration.contains("proxy_pass http://public-repo-1.hortonworks.com;"), configuration);
+        assertTrue(configuration.contains("proxy_set_header Host public-repo-1.hortonworks.com;"), configuration);
+        // Concurrent requests for the same package must be fetched upstream only once
+        assertTrue(configuration.contains("proxy_cache_lock on;"), configuration);
+        assertTrue(configuration.contains("location /keyserver/ {"), configuration);
+    }
+
+    @Test
+    public void testKeyServerProxiedWithItsOwnHostAndUncached() {
+        String configuration = new AmbariPackageMirror(8090, "http://public-repo-1.hortonworks.com").getConfiguration();
+
+        String keyserver = configuration.substring(configuration.indexOf("location /keyserver/ {"));
+        keyserver = keyserver.substring(0, keyserver.indexOf('}'));
+        assertTrue(keyserver.contains("proxy_set_header Host keyserver.ubuntu.com;"), keyserver);
+        assertFalse(keyserver.contains("public-repo-1.hortonworks.com"), keyserver);
+        assertFalse(keyserver.contains("proxy_cache"), keyserver);
+        // Nothing at server level would be inherited by the key server location
+        String server = configuration.substring(configuration.indexOf("server {"), configuration.indexOf("location /keyserver/ {"));
+        assertFalse(server.contains("proxy_"), server);
+    }
+
+    @Test
+    public void testUpstreamPathRewrittenRatherThanProxied() {
+        String configuration = new AmbariPackageMirror(8090, "http://repo.corp:8081/hortonworks/").getConfiguration();
+
+        assertTrue(configuration.contains("rewrite ^(.*)$ /hortonworks$1 break;"), configuration);
+        assertTrue(configuration.contains("proxy_pass http://repo.corp:8081;"), configuration);
+        assertTrue(configuration.contains("proxy_set_header Host repo.corp:8081;"), configuration);
+        assertFalse(configuration.contains("proxy_pass http://repo.corp:8081/hortonworks"), configuration);
+    }
+
+    @Test
+    public void testLocalRepositoryServedDirectly() {
+        String configuration = new AmbariPackageMirror(8090, "file:///srv/hortonworks").getConfiguration();
+
+        assertTrue(configuration.contains("root /srv/hortonworks;"), configuration);
+        assertFalse(configuration.contains("proxy_pass http://public-repo"), configuration);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testUnsupportedUpstream() {
+        new AmbariPackageMirror(8090, "ftp://example.com/repo");
+    }
+}
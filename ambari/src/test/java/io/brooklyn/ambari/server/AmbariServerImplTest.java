@@ -23,14 +23,25 @@ import static org.apache.brooklyn.test.Asserts.assertThat;
 import static org.apache.brooklyn.util.collections.CollectionFunctionals.contains;
 import static org.apache.brooklyn.util.collections.CollectionFunctionals.sizeEquals;
 import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.fail;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 import org.testng.annotations.Test;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.gson.Gson;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 
+import retrofit.client.Header;
+import retrofit.client.Response;
+import retrofit.mime.TypedByteArray;
+
 public class AmbariServerImplTest {
 
     private AmbariServerImpl ambariServer = new AmbariServerImpl();
@@ -66,17 +77,59 @@ public class AmbariServerImplTest {
 
     @Test
     public void testClusterStateIsreturned() {
-        String clusterState = ambariServer.getRequestState().apply(getAsJsonObject(JSON_CLUSTER_STATE));
+        String clusterState = ambariServer.getRequestState().apply(getAsResponse(JSON_CLUSTER_STATE));
 
         assertEquals("IN_PROGRESS", clusterState);
     }
 
+    @Test
+    public void testStackRepositoryKeyIsSplitIntoOsAndName() {
+        assertEquals(ImmutableList.of("redhat6", "HDP-2.3"), AmbariServerImpl.parseStackRepositoryKey("redhat6/HDP-2.3"));
+        assertEquals(ImmutableList.of("ubuntu14", "HDP-UTILS-1.1.0.20"), AmbariServerImpl.parseStackRepositoryKey(" ubuntu14/HDP-UTILS-1.1.0.20 "));
+    }
+
+    @Test
+    public void testInvalidStackRepositoryKeysAreRejected() {
+        for (String key : new String[]{"redhat6", "/HDP-2.3", "redhat6/", "redhat6/HDP/2.3", ""}) {
+            try {
+                AmbariServerImpl.parseStackRepositoryKey(key);
+                fail("Expected IllegalArgumentException for " + key);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testHostSignaturesFollowRequestedHosts() {
+        JsonObject hosts = new JsonParser().parse("{\"items\":[" +
+                "{\"Hosts\":{\"host_name\":\"h1\",\"os_type\":\"centos6\",\"os_arch\":\"x86_64\",\"cpu_count\":4,\"total_mem\":16331712}}," +
+                "{\"Hosts\":{\"host_name\":\"h2\",\"os_type\":\"ubuntu14\",\"os_arch\":\"x86_64\",\"cpu_count\":8,\"total_mem\":32661512}}]}")
+                .getAsJsonObject();
+
+        assertEquals(ImmutableList.of("ubuntu14/x86_64/8 cpus/32661512 kB", "centos6/x86_64/4 cpus/16331712 kB", "unknown"),
+                AmbariServerImpl.getHostSignatures(hosts, ImmutableList.of("h2", "h1", "h3")));
+        assertEquals(ImmutableList.of("unknown"), AmbariServerImpl.getHostSignatures(new JsonObject(), ImmutableList.of("h1")));
+    }
+
+    @Test
+    public void testDesiredConfigsSentInOneUpdate() {
+        String body = new Gson().toJson(AmbariServerImpl.newDesiredConfigs(ImmutableMap.<String, Map<Object, Object>>of(
+                "hdfs-site", ImmutableMap.<Object, Object>of("dfs.replication", "2"),
+                "core-site", ImmutableMap.<Object, Object>of("fs.trash.interval", "360")), "version1"));
+
+        assertEquals("{\"Clusters\":{\"desired_configs\":[" +
+                "{\"type\":\"hdfs-site\",\"tag\":\"version1\",\"properties\":{\"dfs.replication\":\"2\"}}," +
+                "{\"type\":\"core-site\",\"tag\":\"version1\",\"properties\":{\"fs.trash.interval\":\"360\"}}]}}", body);
+    }
+
     private List<String> getHostsFromJson(String json) {
-        return ambariServer.getHosts().apply(getAsJsonObject(json));
+        return ambariServer.getHosts().apply(getAsResponse(json));
     }
 
-    private JsonObject getAsJsonObject(String jsonWithOneHost) {
-        return new JsonParser().parse(jsonWithOneHost).getAsJsonObject();
+    private Response getAsResponse(String json) {
+        return new Response("http://localhost:8080/api/v1/hosts", 200, "OK", Collections.<Header>emptyList(),
+                new TypedByteArray("application/json", json.getBytes(StandardCharsets.UTF_8)));
     }
 
     private static final String JSON_CLUSTER_STATE = "{\n" +
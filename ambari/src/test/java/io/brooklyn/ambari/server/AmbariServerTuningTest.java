@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.brooklyn.ambari.server;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.brooklyn.api.entity.Entity;
+import org.apache.brooklyn.api.entity.EntitySpec;
+import org.apache.brooklyn.core.test.BrooklynAppUnitTestSupport;
+import org.apache.brooklyn.entity.stock.BasicEntity;
+import org.apache.brooklyn.util.os.Os;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
+import com.google.common.io.Files;
+
+public class AmbariServerTuningTest extends BrooklynAppUnitTestSupport {
+
+    @Test
+    public void testRecommendedSettingsGrowWithAgents() {
+        AmbariServerTuning small = AmbariServerTuning.recommended(5);
+        AmbariServerTuning large = AmbariServerTuning.recommended(800);
+
+        assertEquals(small.getHeapSizeMb(), 2048);
+        assertEquals(small.getAgentThreadPoolSize(), 25);
+        assertEquals(small.getClientThreadPoolSize(), 25);
+        assertEquals(small.getDbConnectionPoolMaxSize(), 32);
+        assertEquals(small.getAlertExecutionThreads(), 2);
+        assertFalse(small.isAlertCacheEnabled());
+
+        assertEquals(large.getHeapSizeMb(), 16384);
+        assertEquals(large.getAgentThreadPoolSize(), 100);
+        assertEquals(large.getClientThreadPoolSize(), 65);
+        assertEquals(large.getDbConnectionPoolMaxSize(), 147);
+        assertEquals(large.getAlertExecutionThreads(), 8);
+        assertTrue(large.isAlertCacheEnabled());
+    }
+
+    @Test
+    public void testStockSettingsAreFloor() {
+        AmbariServerTuning small = AmbariServerTuning.recommended(5);
+
+        assertFalse(small.getProperties().containsKey("server.jdbc.connection-pool"), small.getProperties().toString());
+        assertFalse(small.getProperties().containsKey("server.jdbc.connection-pool.max-size"), small.getProperties().toString());
+        String heap = Iterables.getLast(small.getCommands(null));
+        assertTrue(heap.contains("-Xmx2048m"), heap);
+        assertTrue(heap.contains("-Xms512m"), heap);
+
+        AmbariServerTuning large = AmbariServerTuning.recommended(800);
+        assertEquals(large.getProperties().get("server.jdbc.connection-pool"), "c3p0");
+        assertEquals(large.getProperties().get("server.jdbc.connection-pool.max-size"), "147");
+    }
+
+    @Test
+    public void testPropertyValueIsEscaped() {
+        String command = AmbariServerTuning.setProperty("/tmp/ambari.properties", "server.jdbc.url",
+                "jdbc:mysql://db:3306/ambari?user=a&password=it's#1\\x");
+
+        assertTrue(command.contains("'s#^server\\.jdbc\\.url=.*#server.jdbc.url=jdbc:mysql://db:3306/ambari?user=a\\&password=it'\\''s\\#1\\\\x#'"), command);
+        assertTrue(command.contains("printf '%s\\n' 'server.jdbc.url=jdbc:mysql://db:3306/ambari?user=a&password=it'\\''s#1\\x'"), command);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testMultilinePropertyValueIsRejected() {
+        AmbariServerTuning.setProperty("/tmp/ambari.properties", "server.jdbc.url", "a\nb");
+    }
+
+    @Test
+    public void testConfigOverridesRecommendedSettings() {
+        Entity server = app.createAndManageChild(EntitySpec.create(BasicEntity.class)
+                .configure(AmbariServer.HEAP_SIZE_MB, 3000)
+                .configure(AmbariServer.ALERT_CACHE_ENABLED, false));
+
+        AmbariServerTuning tuning = AmbariServerTuning.of(server, 800);
+
+        assertEquals(tuning.getHeapSizeMb(), 3000);
+        assertFalse(tuning.isAlertCacheEnabled());
+        assertEquals(tuning.getAgentThreadPoolSize(), 100);
+    }
+
+    @Test(groups = "Integration")
+    public void testCommandsAreIdempotent() throws Exception {
+        File tempDir = Files.createTempDir();
+        try {
+            File properties = new File(tempDir, "ambari.properties");
+            File env = new File(tempDir, "ambari-env.sh");
+            Files.write("client.threadpool.size.max=25\nserver.os_type=centos6\n", properties, StandardCharsets.UTF_8);
+            Files.write("export AMBARI_JVM_ARGS=$AMBARI_JVM_ARGS' -Xms512m -Xmx2048m -XX:MaxPermSize=128m'\n", env, StandardCharsets.UTF_8);
+            String script = Joiner.on('\n').join(AmbariServerTuning.recommended(200).getCommands(
+                    ImmutableMap.of("server.os_type", "redhat6"), properties.getAbsolutePath(), env.getAbsolutePath()));
+
+            assertEquals(new ProcessBuilder("bash", "-c", script).start().waitFor(), 0);
+            String once = Files.toString(properties, StandardCharsets.UTF_8);
+            assertEquals(new ProcessBuilder("bash", "-c", script).start().waitFor(), 0);
+
+            assertEquals(Files.toString(properties, StandardCharsets.UTF_8), once);
+            assertTrue(once.startsWith("client.threadpool.size.max=25\nserver.os_type=redhat6\n"), once);
+            assertTrue(once.contains("\nagent.threadpool.size.max=40\n"), once);
+            assertTrue(once.contains("\nserver.jdbc.connection-pool.max-size=47\n"), once);
+            assertEquals(Files.toString(env, StandardCharsets.UTF_8),
+                    "export AMBARI_JVM_ARGS=$AMBARI_JVM_ARGS' -Xms2048m -Xmx8192m -XX:MaxPermSize=128m'\n");
+        } finally {
+            Os.deleteRecursively(tempDir);
+        }
+    }
+
+    @Test(groups = "Integration")
+    public void testCommandsWriteValuesAsIs() throws Exception {
+        File tempDir = Files.createTempDir();
+        try {
+            File properties = new File(tempDir, "ambari.properties");
+            File env = new File(tempDir, "ambari-env.sh");
+            Files.write("server.jdbc.url=jdbc:postgresql://old/ambari\n", properties, StandardCharsets.UTF_8);
+            Files.write("", env, StandardCharsets.UTF_8);
+            String url = "jdbc:mysql://db:3306/ambari?useSSL=true&password=it's#1\\x";
+            String script = Joiner.on('\n').join(AmbariServerTuning.recommended(5).getCommands(
+                    ImmutableMap.of("server.jdbc.url", url, "custom.secret", url), properties.getAbsolutePath(), env.getAbsolutePath()));
+
+            assertEquals(new ProcessBuilder("bash", "-c", script).start().waitFor(), 0);
+
+            String written = Files.toString(properties, StandardCharsets.UTF_8);
+            assertTrue(written.startsWith("server.jdbc.url=" + url + "\n"), written);
+            assertTrue(written.endsWith("\ncustom.secret=" + url + "\n"), written);
+        } finally {
+            Os.deleteRecursively(tempDir);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.brooklyn.ambari.server;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.brooklyn.api.entity.EntitySpec;
+import org.apache.brooklyn.api.sensor.EnricherSpec;
+import org.apache.brooklyn.core.test.BrooklynAppUnitTestSupport;
+import org.apache.brooklyn.core.test.entity.TestEntity;
+import org.apache.brooklyn.feed.function.FunctionFeed;
+import org.apache.brooklyn.test.EntityTestUtils;
+import org.apache.brooklyn.util.time.Duration;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+import io.brooklyn.ambari.rest.AmbariApiException;
+import retrofit.client.Header;
+import retrofit.client.Response;
+import retrofit.mime.TypedByteArray;
+
+public class RegisteredHostsDeltaEnricherTest extends BrooklynAppUnitTestSupport {
+
+    private TestEntity entity;
+
+    @BeforeMethod(alwaysRun = true)
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        entity = app.createAndManageChild(EntitySpec.create(TestEntity.class));
+        entity.addEnricher(EnricherSpec.create(RegisteredHostsDeltaEnricher.class));
+    }
+
+    @Test
+    public void testAddedHostsArePublished() {
+        entity.setAttribute(AmbariServer.REGISTERED_HOSTS, ImmutableList.of("host1", "host2"));
+
+        EntityTestUtils.assertAttributeEqualsEventually(entity, AmbariServer.REGISTERED_HOSTS_DELTA, delta(ImmutableList.of("host1", "host2"), ImmutableList.<String>of()));
+    }
+
+    @Test
+    public void testAddedAndRemovedHostsArePublished() {
+        entity.setAttribute(AmbariServer.REGISTERED_HOSTS, ImmutableList.of("host1", "host2"));
+        EntityTestUtils.assertAttributeEqualsEventually(entity, AmbariServer.REGISTERED_HOSTS_DELTA, delta(ImmutableList.of("host1", "host2"), ImmutableList.<String>of()));
+
+        entity.setAttribute(AmbariServer.REGISTERED_HOSTS, ImmutableList.of("host2", "host3"));
+        EntityTestUtils.assertAttributeEqualsEventually(entity, AmbariServer.REGISTERED_HOSTS_DELTA, delta(ImmutableList.of("host3"), ImmutableList.of("host1")));
+    }
+
+    @Test
+    public void testUnchangedMembershipIsNotPublished() {
+        entity.setAttribute(AmbariServer.REGISTERED_HOSTS, ImmutableList.<String>of());
+
+        EntityTestUtils.assertAttributeEqualsContinually(entity, AmbariServer.REGISTERED_HOSTS_DELTA, null);
+    }
+
+    @Test
+    public void testFailedPollPublishesNoDelta() {
+        final AtomicInteger polls = new AtomicInteger();
+        FunctionFeed feed = FunctionFeed.builder()
+                .entity(entity)
+                .period(Duration.millis(10))
+                .poll(new AmbariServerImpl().registeredHostsPoll(new Callable<Response>() {
+                    @Override
+                    public Response call() throws IOException {
+                        if (polls.incrementAndGet() > 1) {
+                            throw new AmbariApiException("Call rejected: the circuit breaker of the Ambari REST API is OPEN");
+                        }
+                        return new Response("http://localhost:8080/api/v1/hosts", 200, "OK", Collections.<Header>emptyList(), new TypedByteArray("application/json",
+                                "{\"items\":[{\"Hosts\":{\"host_name\":\"host1\"}}]}".getBytes(StandardCharsets.UTF_8)));
+                    }
+                }))
+                .build();
+        try {
+            Map<String, List<String>> added = delta(ImmutableList.of("host1"), ImmutableList.<String>of());
+            EntityTestUtils.assertAttributeEqualsEventually(entity, AmbariServer.REGISTERED_HOSTS_DELTA, added);
+
+            EntityTestUtils.assertAttributeEqualsContinually(entity, AmbariServer.REGISTERED_HOSTS_DELTA, added);
+            assertEquals(entity.getAttribute(AmbariServer.REGISTERED_HOSTS), ImmutableList.of("host1"));
+            assertTrue(polls.get() > 2, "polls=" + polls.get());
+        } finally {
+            feed.stop();
+        }
+    }
+
+    @Test
+    public void testComputeDeltaIgnoresOrder() {
+        Map<String, List<String>> delta = RegisteredHostsDeltaEnricher.computeDelta(ImmutableSet.of("host1", "host2"), ImmutableSet.of("host2", "host1"));
+
+        assertEquals(delta, delta(ImmutableList.<String>of(), ImmutableList.<String>of()));
+    }
+
+    private Map<String, List<String>> delta(List<String> added, List<String> removed) {
+        return ImmutableMap.<String, List<String>>of(
+                RegisteredHostsDeltaEnricher.ADDED, added,
+                RegisteredHostsDeltaEnricher.REMOVED, removed);
+    }
+}
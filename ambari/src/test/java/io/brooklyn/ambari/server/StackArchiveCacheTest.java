@@ -0,0 +1,219 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.brooklyn.ambari.server;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.brooklyn.util.core.ResourceUtils;
+import org.apache.brooklyn.util.os.Os;
+import org.apache.brooklyn.util.time.Duration;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class StackArchiveCacheTest {
+
+    private File tempDir;
+    private HttpServer server;
+    private ExecutorService executor;
+    private StackArchiveCache cache;
+
+    private volatile String content;
+    private AtomicInteger downloads;
+
+    @BeforeMethod(alwaysRun = true)
+    public void setUp() throws Exception {
+        tempDir = Files.createTempDir();
+        content = "stack-v1";
+        downloads = new AtomicInteger();
+        cache = new StackArchiveCache(new File(tempDir, "cache"), ResourceUtils.create(this));
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String etag = "\"" + content + "\"";
+                if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                    exchange.sendResponseHeaders(304, -1);
+                } else {
+                    byte[] body = content.getBytes(StandardCharsets.UTF_8);
+                    downloads.incrementAndGet();
+                    exchange.getResponseHeaders().add("ETag", etag);
+                    exchange.sendResponseHeaders(200, body.length);
+                    OutputStream out = exchange.getResponseBody();
+                    out.write(body);
+                    out.close();
+                }
+                exchange.close();
+            }
+        });
+        server.createContext("/moved/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                exchange.getResponseHeaders().add("Location", url(exchange.getRequestURI().getPath().substring("/moved".length())));
+                exchange.sendResponseHeaders(302, -1);
+                exchange.close();
+            }
+        });
+        server.createContext("/private/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                // admin:secret
+                if (!"Basic YWRtaW46c2VjcmV0".equals(exchange.getRequestHeaders().getFirst("Authorization"))) {
+                    exchange.getResponseHeaders().add("WWW-Authenticate", "Basic realm=\"stacks\"");
+                    exchange.sendResponseHeaders(401, -1);
+                } else {
+                    byte[] body = content.getBytes(StandardCharsets.UTF_8);
+                    exchange.sendResponseHeaders(200, body.length);
+                    OutputStream out = exchange.getResponseBody();
+                    out.write(body);
+                    out.close();
+                }
+                exchange.close();
+            }
+        });
+        server.createContext("/slow/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                exchange.sendResponseHeaders(200, 0);
+                try {
+                    Thread.sleep(2000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                exchange.close();
+            }
+        });
+        executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void tearDown() {
+        if (server != null) server.stop(0);
+        if (executor != null) executor.shutdownNow();
+        if (tempDir != null) Os.deleteRecursively(tempDir);
+    }
+
+    @Test
+    public void testUnmodifiedArchiveNotDownloadedAgain() throws Exception {
+        String url = url("/stacks/extra.tar.gz");
+
+        StackArchiveCache.Archive first = cache.fetch(url);
+        StackArchiveCache.Archive second = cache.fetch(url);
+
+        assertEquals(downloads.get(), 1);
+        assertEquals(second.getDigest(), first.getDigest());
+        assertEquals(first.getDigest(), Hashing.sha256().hashString("stack-v1", StandardCharsets.UTF_8).toString());
+        assertEquals(Files.toString(second.getFile(), StandardCharsets.UTF_8), "stack-v1");
+        assertEquals(second.getFilename(), "extra.tar.gz");
+    }
+
+    @Test
+    public void testModifiedArchiveDownloadedAgain() throws Exception {
+        String url = url("/stacks/extra.tar.gz");
+
+        StackArchiveCache.Archive first = cache.fetch(url);
+        content = "stack-v2";
+        StackArchiveCache.Archive second = cache.fetch(url);
+
+        assertEquals(downloads.get(), 2);
+        assertNotEquals(second.getDigest(), first.getDigest());
+        assertEquals(Files.toString(second.getFile(), StandardCharsets.UTF_8), "stack-v2");
+        assertTrue(first.getFile().isFile());
+    }
+
+    @Test
+    public void testSameContentStoredOnce() throws Exception {
+        StackArchiveCache.Archive first = cache.fetch(url("/a/extra.tar"));
+        StackArchiveCache.Archive second = cache.fetch(url("/b/extra.tar"));
+
+        assertEquals(second.getFile(), first.getFile());
+        assertEquals(new File(tempDir, "cache").listFiles().length, 3);
+    }
+
+    @Test
+    public void testLocalArchiveHashed() throws Exception {
+        File archive = new File(tempDir, "local.zip");
+        Files.write("local", archive, StandardCharsets.UTF_8);
+
+        StackArchiveCache.Archive cached = cache.fetch(archive.toURI().toString());
+
+        assertEquals(cached.getDigest(), Hashing.sha256().hashString("local", StandardCharsets.UTF_8).toString());
+        assertEquals(cached.getFilename(), "local.zip");
+    }
+
+    @Test
+    public void testRedirectedArchiveNotDownloadedAgain() throws Exception {
+        String url = url("/moved/stacks/extra.tar.gz");
+
+        StackArchiveCache.Archive first = cache.fetch(url);
+        StackArchiveCache.Archive second = cache.fetch(url);
+
+        assertEquals(downloads.get(), 1);
+        assertEquals(second.getDigest(), first.getDigest());
+        assertEquals(Files.toString(second.getFile(), StandardCharsets.UTF_8), "stack-v1");
+    }
+
+    @Test
+    public void testUrlCredentialsUsed() throws Exception {
+        String url = url("/private/extra.tar.gz").replace("http://", "http://admin:secret@");
+
+        StackArchiveCache.Archive cached = cache.fetch(url);
+
+        assertEquals(Files.toString(cached.getFile(), StandardCharsets.UTF_8), "stack-v1");
+    }
+
+    @Test
+    public void testStalledDownloadTimesOut() throws Exception {
+        cache = new StackArchiveCache(new File(tempDir, "cache"), ResourceUtils.create(this), Duration.ONE_SECOND, Duration.millis(200));
+
+        long start = System.nanoTime();
+        try {
+            cache.fetch(url("/slow/extra.tar.gz"));
+            fail("Expected the download to time out");
+        } catch (RuntimeException e) {
+            // expected
+        }
+        assertTrue(Duration.nanos(System.nanoTime() - start).isShorterThan(Duration.ONE_SECOND));
+    }
+
+    private String url(String path) {
+        return "http://localhost:" + server.getAddress().getPort() + path;
+    }
+}
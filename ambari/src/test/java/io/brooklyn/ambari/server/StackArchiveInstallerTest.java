@@ -0,0 +1,174 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.brooklyn.ambari.server;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.brooklyn.util.core.ResourceUtils;
+import org.apache.brooklyn.util.os.Os;
+import org.apache.brooklyn.util.ssh.BashCommands;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+
+public class StackArchiveInstallerTest {
+
+    private static final String MARKER_LOCATION = "/var/lib/ambari-server/.stack-archives/HDP-2.3";
+    private static final String STACK_LOCATION = "/var/lib/ambari-server/resources/stacks/HDP/2.3/services/";
+
+    private File tempDir;
+    private ExecutorService executor;
+    private RecordingServer server;
+    private StackArchiveInstaller installer;
+
+    @BeforeMethod(alwaysRun = true)
+    public void setUp() throws Exception {
+        tempDir = Files.createTempDir();
+        executor = Executors.newCachedThreadPool();
+        server = new RecordingServer();
+        installer = new StackArchiveInstaller(new StackArchiveCache(new File(tempDir, "cache"), ResourceUtils.create(this)),
+                server, executor, MARKER_LOCATION, STACK_LOCATION);
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void tearDown() {
+        if (executor != null) executor.shutdownNow();
+        if (tempDir != null) Os.deleteRecursively(tempDir);
+    }
+
+    @Test
+    public void testArchivesCopiedConcurrently() throws Exception {
+        // Each copy waits for all the others to start: they only complete if they run concurrently
+        server.copiesStarted = new CountDownLatch(3);
+
+        List<String> script = installer.prepare(ImmutableList.of(archive("a.zip", "a"), archive("b.tar.gz", "b"), archive("c.tar", "c")))
+                .get(30, TimeUnit.SECONDS);
+
+        assertEquals(server.copies.size(), 3);
+        assertEquals(script.size(), 5, script.toString());
+    }
+
+    @Test
+    public void testMarkersCheckedInSingleScript() throws Exception {
+        String unpacked = archive("a.zip", "a");
+        server.output = sha256("a") + "\n";
+
+        List<String> script = installer.prepare(ImmutableList.of(unpacked, archive("b.tar.gz", "b"), archive("c.tar", "c")))
+                .get(30, TimeUnit.SECONDS);
+
+        assertEquals(server.runs.size(), 1);
+        List<String> checks = server.runs.get(0);
+        assertEquals(checks.size(), 3);
+        assertEquals(checks.get(0), String.format("if test -f %s/%2$s; then echo %2$s; fi", MARKER_LOCATION, sha256("a")));
+        assertEquals(ImmutableSet.copyOf(server.copies), ImmutableSet.of("/tmp/" + sha256("b") + "-b.tar.gz", "/tmp/" + sha256("c") + "-c.tar"));
+        assertTrue(script.toString().contains("touch " + MARKER_LOCATION + "/" + sha256("b")), script.toString());
+        assertFalse(script.contains(BashCommands.INSTALL_UNZIP), script.toString());
+    }
+
+    @Test
+    public void testNothingToUnpack() throws Exception {
+        server.output = sha256("a") + "\n";
+
+        assertTrue(installer.prepare(ImmutableList.of(archive("a.zip", "a"))).get(30, TimeUnit.SECONDS).isEmpty());
+        assertTrue(installer.prepare(ImmutableList.<String>of()).get(30, TimeUnit.SECONDS).isEmpty());
+        assertTrue(server.copies.isEmpty());
+    }
+
+    @Test
+    public void testUnpackScriptRunsJobsInBackgroundAfterInstallingUnzip() {
+        List<String> script = StackArchiveInstaller.getUnpackScript(ImmutableList.of(
+                StackArchiveInstaller.getUnpackCommand("/tmp/a.zip", STACK_LOCATION),
+                StackArchiveInstaller.getUnpackCommand("/tmp/b.zip", STACK_LOCATION),
+                StackArchiveInstaller.getUnpackCommand("/tmp/c.tar.gz", STACK_LOCATION)), true);
+
+        assertEquals(script.size(), 5, script.toString());
+        assertEquals(script.get(0), BashCommands.INSTALL_UNZIP);
+        for (String job : script.subList(1, 4)) {
+            assertTrue(job.startsWith("( ") && job.endsWith(" ) &"), job);
+            assertFalse(job.contains(BashCommands.INSTALL_UNZIP), job);
+        }
+        assertEquals(script.get(4), "for job in $(jobs -p); do wait $job || exit 1; done");
+    }
+
+    @Test
+    public void testSingleArchiveUnpackedInForeground() {
+        String unpack = StackArchiveInstaller.getUnpackCommand("/tmp/a.tar", STACK_LOCATION);
+
+        assertEquals(StackArchiveInstaller.getUnpackScript(ImmutableList.of(unpack), false), ImmutableList.of(unpack));
+    }
+
+    @Test(groups = "Integration")
+    public void testUnpackScriptFailsIfAnyJobFails() throws Exception {
+        String script = Joiner.on('\n').join(StackArchiveInstaller.getUnpackScript(ImmutableList.of("sleep 0.2", "false", "true"), false));
+
+        assertEquals(new ProcessBuilder("bash", "-c", script).start().waitFor(), 1);
+    }
+
+    private String archive(String filename, String content) throws Exception {
+        File file = new File(tempDir, filename);
+        Files.write(content, file, StandardCharsets.UTF_8);
+        return file.toURI().toString();
+    }
+
+    private static String sha256(String content) {
+        return Hashing.sha256().hashString(content, StandardCharsets.UTF_8).toString();
+    }
+
+    private static class RecordingServer implements StackArchiveInstaller.Server {
+        private final List<List<String>> runs = Lists.newCopyOnWriteArrayList();
+        private final List<String> copies = Lists.newCopyOnWriteArrayList();
+        private volatile String output = "";
+        private volatile CountDownLatch copiesStarted = new CountDownLatch(0);
+
+        @Override
+        public String run(String summary, List<String> commands) {
+            runs.add(commands);
+            return output;
+        }
+
+        @Override
+        public void copyTo(File file, String destination) {
+            copiesStarted.countDown();
+            try {
+                assertTrue(copiesStarted.await(10, TimeUnit.SECONDS), "copies not run concurrently");
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            copies.add(destination);
+        }
+    }
+}